@@ -0,0 +1,87 @@
+package benchmarks;
+
+import app.DifferenceReport;
+import app.Helpers;
+import app.NodeMatchStrategy;
+import app.PartitionedXmlComparator;
+import app.StreamingXmlComparator;
+import app.XmlCompareOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение XML всеми режимами на сгенерированных парах ({@link XmlCorpus}).
+ * <p>
+ * Лимит отличий снят, чтобы на сильно отличающихся парах измерялась вся работа, а не досрочная остановка.
+ * По умолчанию размеры SMALL и MEDIUM. HUGE в DOM-режимах требует нескольких гигабайт кучи, а
+ * {@code domByNameAndAllAttributes} на перемешанном HUGE квадратичен, поэтому HUGE включается явно и
+ * обычно вместе с фильтром: {@code ./gradlew jmh -Pjmh.huge -Pjmh.includes=XmlCompareBenchmark.streaming}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+public class XmlCompareBenchmark {
+
+    @Param({"SMALL", "MEDIUM"})
+    public XmlCorpus.Size size;
+
+    @Param
+    public XmlCorpus.Shape shape;
+
+    @Param
+    public XmlCorpus.Changes changes;
+
+    @Param({"false", "true"})
+    public boolean shuffled;
+
+    private Path control;
+    private Path test;
+    private XmlCompareOptions options;
+
+    @Setup
+    public void setUp() throws IOException {
+        control = XmlCorpus.control(size, shape);
+        test = XmlCorpus.test(size, shape, changes, shuffled);
+        options = XmlCompareOptions.defaults().withMaxDifferences(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public DifferenceReport domByNameAndAllAttributes() throws IOException {
+        return Helpers.compareUnorderedXmlReport(control, test,
+                options.withStrategy(NodeMatchStrategy.BY_NAME_AND_ALL_ATTRIBUTES));
+    }
+
+    @Benchmark
+    public DifferenceReport domHashed() throws IOException {
+        return Helpers.compareUnorderedXmlReport(control, test, options.withStrategy(NodeMatchStrategy.HASHED));
+    }
+
+    @Benchmark
+    public DifferenceReport streaming() throws IOException {
+        return new StreamingXmlComparator().compare(
+                () -> Files.newInputStream(control),
+                () -> Files.newInputStream(test),
+                options.maxDifferences()
+        );
+    }
+
+    @Benchmark
+    public DifferenceReport partitioned() throws IOException {
+        return new PartitionedXmlComparator(1, "id").compare(
+                () -> Files.newInputStream(control),
+                () -> Files.newInputStream(test),
+                options.maxDifferences()
+        );
+    }
+}
@@ -0,0 +1,219 @@
+package benchmarks;
+
+import app.Mappers;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Сгенерированные пары XML для бенчмарков.
+ * <p>
+ * Документ — каталог из {@code <item>} с атрибутами и текстовыми детьми. В плоском варианте все записи
+ * лежат прямо в корне, в глубоком — в дереве вложенных {@code <group>} (по две группы на уровень,
+ * до 8 записей в листе; для HUGE это около 17 уровней). Test получается из Control детерминированными
+ * изменениями части записей и, при необходимости, перемешиванием соседей внутри каждого родителя.
+ * <p>
+ * Файлы создаются один раз и кэшируются в каталоге {@value #CORPUS_DIR_PROPERTY}
+ * (по умолчанию {@code java.io.tmpdir/xml-bench-corpus}).
+ */
+public final class XmlCorpus {
+
+    /**
+     * Каталог для сгенерированных файлов.
+     */
+    public static final String CORPUS_DIR_PROPERTY = "xml.bench.corpus";
+
+    private static final long SEED = 20240601L;
+    private static final int LEAF_SIZE = 8;
+
+    /**
+     * Число записей в документе.
+     */
+    public enum Size {
+        SMALL(1_000),
+        MEDIUM(50_000),
+        HUGE(1_000_000);
+
+        final int items;
+
+        Size(int items) {
+            this.items = items;
+        }
+    }
+
+    public enum Shape {
+        FLAT,
+        DEEP
+    }
+
+    /**
+     * Доля измененных записей Test.
+     */
+    public enum Changes {
+        MOSTLY_EQUAL(0.001),
+        HEAVY(0.3);
+
+        final double rate;
+
+        Changes(double rate) {
+            this.rate = rate;
+        }
+    }
+
+    private XmlCorpus() {
+    }
+
+    public static Path control(Size size, Shape shape) throws IOException {
+        String name = size + "-" + shape + "-control.xml";
+        return cached(name, out -> new Writer(size.items, null, false).write(out, shape));
+    }
+
+    public static Path test(Size size, Shape shape, Changes changes, boolean shuffled) throws IOException {
+        String name = size + "-" + shape + "-" + changes + (shuffled ? "-shuffled" : "") + "-test.xml";
+        return cached(name, out -> new Writer(size.items, changes, shuffled).write(out, shape));
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        void write(OutputStream out) throws XMLStreamException;
+    }
+
+    private static Path cached(String name, Content content) throws IOException {
+        Path dir = Path.of(System.getProperty(CORPUS_DIR_PROPERTY,
+                Path.of(System.getProperty("java.io.tmpdir"), "xml-bench-corpus").toString()));
+        Path file = dir.resolve(name);
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+
+        // Пишем во временный файл и переносим: параллельные форки не увидят недописанный документ
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, name, ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            content.write(out);
+        } catch (XMLStreamException e) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Не удалось сгенерировать " + name, e);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Генерация
+    // ----------------------------------------------------------------------------------
+
+    private static final class Writer {
+        private final int items;
+        private final Changes changes;
+        private final Random shuffle;
+        private XMLStreamWriter xml;
+
+        /**
+         * @param changes  Изменения Test или {@code null} для Control.
+         * @param shuffled Перемешивать ли соседей.
+         */
+        Writer(int items, Changes changes, boolean shuffled) {
+            this.items = items;
+            this.changes = changes;
+            this.shuffle = shuffled ? new Random(SEED) : null;
+        }
+
+        void write(OutputStream out, Shape shape) throws XMLStreamException {
+            xml = Mappers.STAX_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("catalog");
+            xml.writeAttribute("items", Integer.toString(items));
+            if (shape == Shape.FLAT) {
+                writeItems(0, items);
+            } else {
+                writeGroup(0, items);
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+
+        private void writeGroup(int from, int to) throws XMLStreamException {
+            if (to - from <= LEAF_SIZE) {
+                writeItems(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            boolean swap = shuffle != null && shuffle.nextBoolean();
+            writeGroupElement(swap ? middle : from, swap ? to : middle);
+            writeGroupElement(swap ? from : middle, swap ? middle : to);
+        }
+
+        private void writeGroupElement(int from, int to) throws XMLStreamException {
+            xml.writeStartElement("group");
+            xml.writeAttribute("range", from + "-" + to);
+            writeGroup(from, to);
+            xml.writeEndElement();
+        }
+
+        private void writeItems(int from, int to) throws XMLStreamException {
+            int[] order = new int[to - from];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = from + i;
+            }
+            if (shuffle != null) {
+                for (int i = order.length - 1; i > 0; i--) {
+                    int j = shuffle.nextInt(i + 1);
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                }
+            }
+            for (int id : order) {
+                writeItem(id);
+            }
+        }
+
+        private void writeItem(int id) throws XMLStreamException {
+            // Вид изменения: 0 — текст, 1 — атрибут, 2 — запись удалена, 3 — добавлена лишняя запись
+            int change = isChanged(id) ? id & 3 : -1;
+            if (change == 2) {
+                return;
+            }
+            writeItemElement(id, change);
+            if (change == 3) {
+                writeItemElement(items + id, -1);
+            }
+        }
+
+        private void writeItemElement(int id, int change) throws XMLStreamException {
+            xml.writeStartElement("item");
+            xml.writeAttribute("id", Integer.toString(id));
+            xml.writeAttribute("type", change == 1 ? "changed" : "t" + id % 7);
+            xml.writeAttribute("name", "item-" + Integer.toHexString(id * 0x9E3779B1));
+
+            xml.writeStartElement("price");
+            xml.writeCharacters(change == 0 ? "0.00" : (id % 1000) + "." + (id % 100));
+            xml.writeEndElement();
+
+            xml.writeStartElement("qty");
+            xml.writeCharacters(Integer.toString(id % 50));
+            xml.writeEndElement();
+
+            xml.writeEndElement();
+        }
+
+        private boolean isChanged(int id) {
+            if (changes == null) {
+                return false;
+            }
+            // Детерминированная "случайная" выборка записей по их номеру
+            long h = (id + SEED) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            return (h & 0xFFFFFF) < changes.rate * 0x1000000;
+        }
+    }
+}
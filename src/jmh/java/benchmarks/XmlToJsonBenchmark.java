@@ -0,0 +1,62 @@
+package benchmarks;
+
+import app.Mappers;
+import app.StreamingXmlToJsonConverter;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование XML в JSON: через дерево (как {@code Helpers.convertXmlFileToJson(String)})
+ * и потоковое ({@link StreamingXmlToJsonConverter}). JSON пишется в пустой поток,
+ * чтобы измерялось только преобразование. HUGE включается явно: {@code ./gradlew jmh -Pjmh.huge}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+public class XmlToJsonBenchmark {
+
+    @Param({"SMALL", "MEDIUM"})
+    public XmlCorpus.Size size;
+
+    @Param
+    public XmlCorpus.Shape shape;
+
+    @Param({"true", "false"})
+    public boolean pretty;
+
+    private Path xml;
+
+    @Setup
+    public void setUp() throws IOException {
+        xml = XmlCorpus.control(size, shape);
+    }
+
+    @Benchmark
+    public void tree() throws IOException {
+        JsonNode jsonNode;
+        try (InputStream in = Files.newInputStream(xml)) {
+            jsonNode = Mappers.XML_TREE_READER.readTree(in);
+        }
+        (pretty ? Mappers.PRETTY_JSON_WRITER : Mappers.COMPACT_JSON_WRITER)
+                .writeValue(OutputStream.nullOutputStream(), jsonNode);
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        new StreamingXmlToJsonConverter(pretty).convert(() -> Files.newInputStream(xml), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,134 @@
+package app;
+
+import com.codeborne.selenide.WebDriverRunner;
+import org.openqa.selenium.WebDriver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Кэш состояния входа по пользователям: после первого входа через UI снимается {@link BrowserState},
+ * а следующие входы того же пользователя (в любом потоке и браузере пула) подставляют снимок
+ * вместо заполнения формы.
+ * <p>
+ * Снимок живет {@value #TTL_KEY} секунд (по умолчанию 900). Если приложение его не приняло — сессия
+ * истекла или была закрыта на сервере, — снимок забывается, браузер очищается и возвращается на страницу
+ * входа, а {@link #restore(String)} возвращает {@code false}: вызывающий выполняет обычный вход.
+ * <p>
+ * Выход при работе с кэшем — {@link #logout()}: он очищает только браузер. Выход через меню приложения
+ * закрыл бы сессию на сервере, и сохраненный снимок стал бы бесполезен.
+ * <p>
+ * Кэш включается настройкой {@value #ENABLED_KEY}{@code =true} (по умолчанию выключен, чтобы тесты
+ * по-прежнему проходили выход через UI).
+ */
+public final class AuthStateCache {
+
+    public static final String ENABLED_KEY = "auth.cache";
+    public static final String TTL_KEY = "auth.cacheTtl";
+
+    private final Duration ttl;
+    private final BooleanSupplier loggedIn;
+    private final Map<String, BrowserState> states = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param ttl      Сколько снимок считается годным.
+     * @param loggedIn Проверка, что в браузере открыто приложение под вошедшим пользователем.
+     *                 Вызывается после подстановки снимка.
+     */
+    public AuthStateCache(Duration ttl, BooleanSupplier loggedIn) {
+        this.ttl = ttl;
+        this.loggedIn = loggedIn;
+    }
+
+    /**
+     * Кэш с TTL из {@link TestConfig}.
+     */
+    public static AuthStateCache fromConfig(BooleanSupplier loggedIn) {
+        return new AuthStateCache(Duration.ofSeconds(TestConfig.getLong(TTL_KEY, 900)), loggedIn);
+    }
+
+    public static boolean isEnabled() {
+        return TestConfig.getBoolean(ENABLED_KEY, false);
+    }
+
+    /**
+     * Пытается войти под пользователем, подставив сохраненный снимок в браузер текущего потока.
+     *
+     * @return {@code true}, если пользователь вошел; {@code false}, если снимка нет, он устарел
+     * или отвергнут приложением — тогда браузер снова на исходной странице и нужен обычный вход.
+     */
+    public boolean restore(String login) {
+        BrowserState state = states.get(login);
+        if (state == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        if (state.capturedAt().plus(ttl).isBefore(Instant.now())) {
+            states.remove(login, state);
+            misses.incrementAndGet();
+            return false;
+        }
+
+        WebDriver driver = WebDriverRunner.getWebDriver();
+        String startUrl = driver.getCurrentUrl();
+        state.restore(driver);
+        if (loggedIn.getAsBoolean()) {
+            hits.incrementAndGet();
+            return true;
+        }
+
+        // Приложение не приняло снимок: забываем его и возвращаем браузер к исходной странице
+        System.err.println("Сохраненный вход пользователя " + login + " отвергнут, выполняется обычный вход");
+        states.remove(login, state);
+        rejected.incrementAndGet();
+        BrowserState.clear(driver);
+        driver.get(startUrl);
+        return false;
+    }
+
+    /**
+     * Запоминает состояние браузера текущего потока как вход пользователя. Вызывается после успешного входа.
+     */
+    public void capture(String login) {
+        states.put(login, BrowserState.capture(WebDriverRunner.getWebDriver()));
+    }
+
+    /**
+     * Быстрый выход: очищает cookies и хранилища браузера и перезагружает страницу.
+     * Сессия на сервере остается открытой, поэтому снимок продолжает работать.
+     */
+    public void logout() {
+        WebDriver driver = WebDriverRunner.getWebDriver();
+        BrowserState.clear(driver);
+        driver.navigate().refresh();
+    }
+
+    /**
+     * Забывает снимок пользователя (например, после смены пароля в тесте).
+     */
+    public void invalidate(String login) {
+        states.remove(login);
+    }
+
+    public boolean contains(String login) {
+        return states.containsKey(login);
+    }
+
+    /**
+     * Счетчики: входов из снимка, входов без снимка (нет или устарел) и отвергнутых снимков.
+     */
+    public String summary() {
+        return "Кэш входа: из снимка " + hits.get() + ", без снимка " + misses.get() + ", отвергнуто " + rejected.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+}
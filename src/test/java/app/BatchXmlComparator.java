@@ -0,0 +1,334 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Параллельное сравнение множества пар control/test XML на ограниченном пуле потоков.
+ * <p>
+ * Пары берутся из двух каталогов (файлы сопоставляются по относительному пути, сжатые — без расширения
+ * сжатия) или из манифеста.
+ * Результаты отдаются обработчику по мере готовности, а в конце возвращается общий {@link BatchReport}.
+ * Для TestNG есть {@link #asDataProvider(List)}: каждая пара становится отдельным тестом.
+ */
+public class BatchXmlComparator {
+
+    /**
+     * Каталог с эталонными файлами.
+     */
+    public static final String CONTROL_DIR_PROPERTY = "xml.batch.control";
+
+    /**
+     * Каталог с проверяемыми файлами.
+     */
+    public static final String TEST_DIR_PROPERTY = "xml.batch.test";
+
+    /**
+     * Файл манифеста (имеет приоритет над каталогами).
+     */
+    public static final String MANIFEST_PROPERTY = "xml.batch.manifest";
+
+    /**
+     * Число потоков сравнения (по умолчанию — число ядер).
+     */
+    public static final String PARALLELISM_PROPERTY = "xml.batch.parallelism";
+
+    // Расширения сжатых XML; формат все равно определяется по содержимому
+    private static final List<String> COMPRESSED_SUFFIXES = List.of(".gz", ".gzip", ".zst", ".zstd");
+
+    /**
+     * Способ сравнения одной пары.
+     */
+    @FunctionalInterface
+    public interface PairComparator {
+        List<String> compare(XmlPair pair) throws Exception;
+    }
+
+    private final int parallelism;
+    private final PairComparator comparator;
+
+    /**
+     * Сравнение через {@link Helpers#compareUnorderedXml(Path, Path, NodeMatchStrategy)}
+     * с {@link NodeMatchStrategy#HASHED}; число потоков — из {@value #PARALLELISM_PROPERTY}.
+     */
+    public BatchXmlComparator() {
+        this(
+                Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                pair -> Helpers.compareUnorderedXml(pair.control(), pair.test(), NodeMatchStrategy.HASHED)
+        );
+    }
+
+    public BatchXmlComparator(int parallelism, PairComparator comparator) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Сравнивает все пары параллельно.
+     *
+     * @param pairs    Пары для сравнения.
+     * @param onResult Вызывается для каждой пары сразу после ее сравнения (в вызывающем потоке, по одному).
+     * @return Итоговый отчет.
+     */
+    public BatchReport compare(List<XmlPair> pairs, Consumer<PairResult> onResult) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new BatchThreadFactory());
+        try {
+            CompletionService<PairResult> completion = new ExecutorCompletionService<>(executor);
+            for (XmlPair pair : pairs) {
+                completion.submit(() -> comparePair(pair));
+            }
+
+            BatchReport report = new BatchReport();
+            for (int i = 0; i < pairs.size(); i++) {
+                PairResult result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    // comparePair перехватывает исключения, сюда попадают только Error
+                    throw new IllegalStateException("Сбой потока сравнения", e.getCause());
+                }
+                report.add(result);
+                onResult.accept(result);
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+            return report;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Сравнивает одну пару. Исключения сравнения попадают в результат, а не пробрасываются.
+     */
+    public PairResult comparePair(XmlPair pair) {
+        long start = System.nanoTime();
+        try {
+            List<String> differences = comparator.compare(pair);
+            return new PairResult(pair, differences, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            return new PairResult(pair, Collections.emptyList(), e, System.nanoTime() - start);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Источники пар
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Пары из двух каталогов: все XML из обоих деревьев, сопоставленные по относительному пути.
+     * Сжатые файлы ({@code *.xml.gz}, {@code *.xml.zst}, см. {@link Compression}) сопоставляются по имени
+     * без расширения сжатия: {@code a.xml.gz} в одном каталоге и {@code a.xml} в другом дают пару {@code a.xml}.
+     * Файл, которого нет в одном из каталогов, даст пару с ошибкой "Файл не найден".
+     *
+     * @throws IOException Если каталога нет или в нем у одного XML несколько файлов ({@code a.xml} и {@code a.xml.gz}).
+     */
+    public static List<XmlPair> pairsFromDirectories(Path controlDir, Path testDir) throws IOException {
+        Map<String, Path> controlFiles = collectXmlFiles(controlDir);
+        Map<String, Path> testFiles = collectXmlFiles(testDir);
+        SortedSet<String> names = new TreeSet<>(controlFiles.keySet());
+        names.addAll(testFiles.keySet());
+
+        List<XmlPair> pairs = new ArrayList<>(names.size());
+        for (String name : names) {
+            pairs.add(new XmlPair(name,
+                    controlFiles.getOrDefault(name, controlDir.resolve(name)),
+                    testFiles.getOrDefault(name, testDir.resolve(name))));
+        }
+        return pairs;
+    }
+
+    // Имя пары (относительный путь без расширения сжатия) -> файл
+    private static Map<String, Path> collectXmlFiles(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Каталог не найден: " + dir);
+        }
+        Map<String, Path> files = new HashMap<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                String name = xmlName(dir.relativize(file).toString().replace('\\', '/'));
+                if (name == null) {
+                    continue;
+                }
+                Path previous = files.put(name, file);
+                if (previous != null) {
+                    throw new IOException("Для " + name + " в " + dir + " несколько файлов: "
+                            + previous.getFileName() + " и " + file.getFileName());
+                }
+            }
+        }
+        return files;
+    }
+
+    // Путь XML без расширения сжатия или null, если это не XML
+    private static String xmlName(String path) {
+        String lower = path.toLowerCase(Locale.ROOT);
+        for (String suffix : COMPRESSED_SUFFIXES) {
+            if (lower.endsWith(".xml" + suffix)) {
+                return path.substring(0, path.length() - suffix.length());
+            }
+        }
+        return lower.endsWith(".xml") ? path : null;
+    }
+
+    /**
+     * Пары из манифеста: по строке {@code control;test} на пару, пути относительно каталога манифеста.
+     * Пустые строки и строки с {@code #} в начале пропускаются.
+     */
+    public static List<XmlPair> pairsFromManifest(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<XmlPair> pairs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(manifest);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(";");
+            if (parts.length != 2) {
+                throw new IOException("Неверная строка манифеста " + manifest + ":" + (i + 1) + ": " + line);
+            }
+            String control = parts[0].trim();
+            pairs.add(new XmlPair(control, base.resolve(control), base.resolve(parts[1].trim())));
+        }
+        return pairs;
+    }
+
+    /**
+     * Пары по системным свойствам: {@value #MANIFEST_PROPERTY} или пара каталогов
+     * {@value #CONTROL_DIR_PROPERTY}/{@value #TEST_DIR_PROPERTY}. Если ничего не задано — пустой список.
+     */
+    public static List<XmlPair> pairsFromSystemProperties() throws IOException {
+        String manifest = System.getProperty(MANIFEST_PROPERTY);
+        if (manifest != null && !manifest.isEmpty()) {
+            return pairsFromManifest(Path.of(manifest));
+        }
+        String controlDir = System.getProperty(CONTROL_DIR_PROPERTY);
+        String testDir = System.getProperty(TEST_DIR_PROPERTY);
+        if (controlDir != null && testDir != null) {
+            return pairsFromDirectories(Path.of(controlDir), Path.of(testDir));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Пары в формате TestNG {@code @DataProvider}: одна строка — один параметр {@link XmlPair}.
+     */
+    public static Object[][] asDataProvider(List<XmlPair> pairs) {
+        Object[][] data = new Object[pairs.size()][];
+        for (int i = 0; i < pairs.size(); i++) {
+            data[i] = new Object[]{pairs.get(i)};
+        }
+        return data;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Результаты
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Результат сравнения одной пары.
+     *
+     * @param differences  Найденные отличия.
+     * @param error        Ошибка чтения/разбора или {@code null}.
+     * @param elapsedNanos Время сравнения.
+     */
+    public record PairResult(XmlPair pair, List<String> differences, Exception error, long elapsedNanos) {
+
+        public boolean isPassed() {
+            return error == null && differences.isEmpty();
+        }
+    }
+
+    /**
+     * Итог пакетного сравнения. Хранит только неуспешные результаты.
+     */
+    public static class BatchReport {
+        private final List<PairResult> failures = new ArrayList<>();
+        private int total;
+        private int withDifferences;
+        private int errors;
+        private long elapsedNanos;
+
+        void add(PairResult result) {
+            total++;
+            if (result.error() != null) {
+                errors++;
+                failures.add(result);
+            } else if (!result.differences().isEmpty()) {
+                withDifferences++;
+                failures.add(result);
+            }
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getPassed() {
+            return total - withDifferences - errors;
+        }
+
+        public List<PairResult> getFailures() {
+            return failures;
+        }
+
+        public boolean isPassed() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * Краткий текстовый отчет: счетчики и список неуспешных пар.
+         */
+        public String summary() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(
+                    "Пар: %d, совпали: %d, с отличиями: %d, ошибок: %d, время: %d мс%n",
+                    total, getPassed(), withDifferences, errors, TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+            ));
+            for (PairResult failure : failures) {
+                if (failure.error() != null) {
+                    sb.append("- ").append(failure.pair()).append(": ОШИБКА ").append(failure.error().getMessage());
+                } else {
+                    sb.append("- ").append(failure.pair()).append(": отличий ").append(failure.differences().size());
+                }
+                sb.append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final class BatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "xml-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package app;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.ChromiumDriver;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимок клиентского состояния браузера для текущего сайта: cookies, localStorage и sessionStorage.
+ * <p>
+ * Снимается после входа пользователя ({@link #capture(WebDriver)}) и позже подставляется в другой
+ * (или тот же, но очищенный) браузер ({@link #restore(WebDriver)}) вместо повторного входа через UI.
+ *
+ * @param url            Адрес страницы, на которой был сделан снимок. После восстановления браузер переходит на нее.
+ * @param cookies        Cookies сайта.
+ * @param localStorage   Содержимое localStorage.
+ * @param sessionStorage Содержимое sessionStorage.
+ * @param capturedAt     Момент снимка.
+ */
+public record BrowserState(String url,
+                           List<Cookie> cookies,
+                           Map<String, String> localStorage,
+                           Map<String, String> sessionStorage,
+                           Instant capturedAt) {
+
+    private static final String READ_STORAGE_SCRIPT =
+            "var storage = window[arguments[0]], result = {};"
+                    + " for (var i = 0; i < storage.length; i++) { var key = storage.key(i); result[key] = storage.getItem(key); }"
+                    + " return result;";
+    private static final String WRITE_STORAGE_SCRIPT =
+            "var local = arguments[0], session = arguments[1];"
+                    + " for (var key in local) { window.localStorage.setItem(key, local[key]); }"
+                    + " for (var key in session) { window.sessionStorage.setItem(key, session[key]); }";
+    private static final String CLEAR_STORAGE_SCRIPT =
+            "try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}";
+
+    /**
+     * Снимает состояние сайта, открытого в браузере.
+     */
+    public static BrowserState capture(WebDriver driver) {
+        JavascriptExecutor js = (JavascriptExecutor) driver;
+        return new BrowserState(
+                driver.getCurrentUrl(),
+                List.copyOf(driver.manage().getCookies()),
+                readStorage(js, "localStorage"),
+                readStorage(js, "sessionStorage"),
+                Instant.now()
+        );
+    }
+
+    /**
+     * Подставляет снимок в браузер и открывает страницу, на которой он был снят.
+     * <p>
+     * Cookies и хранилища можно записать только для открытого сайта, поэтому браузер уже должен
+     * находиться на том же сайте (например, на странице входа после {@code open(baseUrl)}).
+     */
+    public void restore(WebDriver driver) {
+
+        // 1. Cookies: каждую отдельно, чтобы одна отвергнутая браузером не сорвала остальные
+        for (Cookie cookie : cookies) {
+            try {
+                driver.manage().addCookie(cookie);
+            } catch (RuntimeException e) {
+                System.err.println("Cookie '" + cookie.getName() + "' не восстановлена: " + e.getMessage());
+            }
+        }
+
+        // 2. Хранилища
+        ((JavascriptExecutor) driver).executeScript(WRITE_STORAGE_SCRIPT, localStorage, sessionStorage);
+
+        // 3. Страница, которую видел пользователь после входа
+        driver.get(url);
+    }
+
+    /**
+     * Удаляет cookies (у Chromium — всех сайтов) и хранилища текущего сайта.
+     * Страница при этом не перезагружается.
+     */
+    public static void clear(WebDriver driver) {
+        if (driver instanceof JavascriptExecutor) {
+            ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+        }
+        driver.manage().deleteAllCookies();
+        if (driver instanceof ChromiumDriver) {
+            ((ChromiumDriver) driver).executeCdpCommand("Network.clearBrowserCookies", Map.of());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> readStorage(JavascriptExecutor js, String storage) {
+        Object result = js.executeScript(READ_STORAGE_SCRIPT, storage);
+        Map<String, String> values = new LinkedHashMap<>();
+        if (result instanceof Map) {
+            ((Map<String, Object>) result).forEach((key, value) -> values.put(key, String.valueOf(value)));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+}
@@ -0,0 +1,853 @@
+package app;
+
+import org.openqa.selenium.Proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Локальный HTTP-прокси для UI-тестов: кэширует статику (JS, CSS, шрифты, картинки) на диске
+ * и блокирует сторонние хосты (счетчики, реклама).
+ * <p>
+ * Браузеры пула ходят через него ({@link DriverPool}), поэтому повторные {@code open(baseUrl)} берут статику
+ * из кэша, а не из сети. Кэшируются только ответы 200 на GET к статике без {@code Cache-Control: no-store/private}
+ * и {@code Vary: *}; общий размер кэша ограничен, давно не использованные файлы удаляются первыми (LRU).
+ * <p>
+ * Ответ из кэша отдается без сети, пока он свеж: срок берется из {@code Cache-Control: max-age/s-maxage},
+ * {@code Expires} или, если их нет, 10% возраста по {@code Last-Modified} (не больше суток); {@code no-cache}
+ * и ответ без этих заголовков устаревают сразу. Устаревший ответ перепроверяется условным запросом
+ * ({@code If-None-Match} / {@code If-Modified-Since}): на 304 отдается кэш с обновленным сроком, иначе — новый
+ * ответ, который и сохраняется. Для {@code Vary} запоминаются значения заголовков запроса: при других
+ * значениях кэш не используется. Кэш переживает перезапуск: файлы в каталоге {@value #CACHE_DIR_KEY}
+ * подхватываются при старте, и сроки свежести у них прежние.
+ * <p>
+ * HTTPS проходит через туннель ({@code CONNECT}) без кэширования — прокси не расшифровывает трафик,
+ * но блокировка хостов работает и для него. Для приложения на HTTPS кэш статики поэтому бесполезен:
+ * см. {@link #warnIfNotCacheable(String)}.
+ * <p>
+ * Настройки ({@link TestConfig}): {@value #ENABLED_KEY} (по умолчанию {@code false}),
+ * {@value #CACHE_DIR_KEY}, {@value #CACHE_MAX_MB_KEY} (по умолчанию 256) и {@value #BLOCK_HOSTS_KEY} —
+ * хосты через запятую, блокируются и их поддомены.
+ */
+public final class CachingProxy implements AutoCloseable {
+
+    public static final String ENABLED_KEY = "proxy.enabled";
+    public static final String CACHE_DIR_KEY = "proxy.cacheDir";
+    public static final String CACHE_MAX_MB_KEY = "proxy.cacheMaxMb";
+    public static final String BLOCK_HOSTS_KEY = "proxy.blockHosts";
+
+    private static final Set<String> STATIC_EXTENSIONS = Set.of(
+            "js", "mjs", "css", "woff", "woff2", "ttf", "otf", "eot",
+            "png", "jpg", "jpeg", "gif", "svg", "ico", "webp", "map"
+    );
+    // Заголовки одного соединения: их не передаем дальше (и HttpClient не дает их задать)
+    private static final Set<String> HOP_BY_HOP = Set.of(
+            "connection", "proxy-connection", "keep-alive", "transfer-encoding", "te", "trailer",
+            "upgrade", "proxy-authorization", "proxy-authenticate", "host", "content-length", "expect"
+    );
+
+    // Заголовки условного запроса браузера: при перепроверке кэша прокси задает их сам
+    private static final Set<String> CONDITIONAL = Set.of(
+            "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range"
+    );
+    // Предел эвристического срока свежести по Last-Modified
+    private static final long MAX_HEURISTIC_MS = Duration.ofDays(1).toMillis();
+    // Формат файла кэша: при несовпадении файл считается промахом и перезаписывается
+    private static final int CACHE_FORMAT = 0x50584332; // "PXC2"
+
+    private static CachingProxy shared;
+
+    private final Path cacheDir;
+    private final long maxCacheBytes;
+    private final Set<String> blockedHosts;
+    private final ServerSocket server;
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    // Индекс кэша в порядке доступа: ключ -> размер файла
+    private final LinkedHashMap<String, Long> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong tunnels = new AtomicLong();
+    private final AtomicLong bytesFromCache = new AtomicLong();
+
+    private CachingProxy(Path cacheDir, long maxCacheBytes, Set<String> blockedHosts) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxCacheBytes = maxCacheBytes;
+        this.blockedHosts = blockedHosts.stream()
+                .map(host -> host.trim().toLowerCase(Locale.ROOT))
+                .filter(host -> !host.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        Files.createDirectories(cacheDir);
+        loadCacheIndex();
+
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "caching-proxy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(executor)
+                .build();
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Запускает прокси на свободном порту {@code localhost}.
+     *
+     * @param cacheDir      Каталог кэша.
+     * @param maxCacheBytes Предельный размер кэша.
+     * @param blockedHosts  Хосты, запросы к которым (и к их поддоменам) отклоняются.
+     */
+    public static CachingProxy start(Path cacheDir, long maxCacheBytes, Set<String> blockedHosts) throws IOException {
+        CachingProxy proxy = new CachingProxy(cacheDir, maxCacheBytes, blockedHosts);
+        proxy.executor.execute(proxy::acceptLoop);
+        return proxy;
+    }
+
+    /**
+     * Общий прокси по настройкам из {@link TestConfig}; запускается при первом обращении.
+     */
+    public static synchronized CachingProxy shared() throws IOException {
+        if (shared == null) {
+            String hosts = TestConfig.get(BLOCK_HOSTS_KEY, "");
+            shared = start(
+                    Path.of(TestConfig.get(CACHE_DIR_KEY, "build/proxy-cache")),
+                    TestConfig.getLong(CACHE_MAX_MB_KEY, 256) * 1024 * 1024,
+                    Set.copyOf(Arrays.asList(hosts.split(",")))
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Общий прокси, если он уже запущен, иначе {@code null}.
+     */
+    public static synchronized CachingProxy sharedIfStarted() {
+        return shared;
+    }
+
+    /**
+     * Останавливает общий прокси и печатает его статистику.
+     */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            System.out.println(shared.summary());
+            shared.close();
+            shared = null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return TestConfig.getBoolean(ENABLED_KEY, false);
+    }
+
+    /**
+     * Предупреждает при старте, если приложение открывается по HTTPS: его статика идет через туннель
+     * и в кэш не попадает, от прокси остается только блокировка хостов.
+     *
+     * @return {@code false}, если кэш для {@code baseUrl} не работает.
+     */
+    public static boolean warnIfNotCacheable(String baseUrl) {
+        if (baseUrl == null || !baseUrl.trim().toLowerCase(Locale.ROOT).startsWith("https:")) {
+            return true;
+        }
+        System.err.println("Прокси не кэширует HTTPS (" + baseUrl + "): статика приложения пойдет из сети,"
+                + " работает только блокировка хостов (" + BLOCK_HOSTS_KEY + ")");
+        return false;
+    }
+
+    /**
+     * Адрес прокси для настроек браузера, например {@code localhost:51234}.
+     */
+    public String address() {
+        return "localhost:" + server.getLocalPort();
+    }
+
+    /**
+     * Настройка прокси для браузера: HTTP и HTTPS через этот прокси.
+     */
+    public Proxy seleniumProxy() {
+        return new Proxy().setHttpProxy(address()).setSslProxy(address());
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Сколько из {@link #hits()} отдано после подтверждения сервером (304).
+     */
+    public long revalidated() {
+        return revalidated.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long blocked() {
+        return blocked.get();
+    }
+
+    /**
+     * Доля запросов статики, отданных из кэша.
+     */
+    public double hitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public String summary() {
+        synchronized (cache) {
+            return String.format(Locale.ROOT,
+                    "Прокси: статика из кэша %d (подтверждено сервером %d), из сети %d (попаданий %.1f%%, %.1f МБ),"
+                            + " без кэша %d, туннелей %d, заблокировано %d; в кэше %d файлов, %.1f МБ",
+                    hits.get(), revalidated.get(), misses.get(), hitRate() * 100, bytesFromCache.get() / (1024.0 * 1024.0),
+                    passed.get(), tunnels.get(), blocked.get(), cache.size(), cacheBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Сокет уже закрыт
+        }
+        executor.shutdownNow();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Соединения
+    // ----------------------------------------------------------------------------------
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Сервер закрыт
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            // Соединение держим открытым, пока браузер шлет запросы (keep-alive)
+            Request request;
+            while ((request = Request.read(in)) != null) {
+                if ("CONNECT".equals(request.method)) {
+                    tunnel(request, socket, in, out);
+                    return;
+                }
+                handle(request, out);
+                out.flush();
+                if (request.closeAfter) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Браузер закрыл соединение
+        }
+    }
+
+    private void handle(Request request, OutputStream out) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(request.target);
+        } catch (IllegalArgumentException e) {
+            writeError(out, 400, "Некорректный адрес: " + request.target);
+            return;
+        }
+        if (uri.getHost() == null) {
+            writeError(out, 400, "Ожидался абсолютный адрес: " + request.target);
+            return;
+        }
+
+        // 1. Сторонние хосты — сразу отказ
+        if (isBlocked(uri.getHost())) {
+            blocked.incrementAndGet();
+            writeError(out, 403, "Хост заблокирован прокси: " + uri.getHost());
+            return;
+        }
+
+        // 2. Статика — из кэша, пока ответ свеж
+        boolean cacheable = "GET".equals(request.method) && isStatic(uri);
+        String key = cacheable ? key(request.target) : null;
+        CachedResponse cached = cacheable ? readCache(key, request) : null;
+        if (cached != null && cached.freshUntil > System.currentTimeMillis()) {
+            serveCached(out, cached);
+            return;
+        }
+
+        // 3. Запрос в сеть; устаревший ответ из кэша — условным запросом
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(toHttpRequest(request, uri, cached), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            writeError(out, 502, "Сервер недоступен: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeError(out, 503, "Прокси остановлен");
+            return;
+        }
+        List<String[]> headers = headers(response);
+        if (cached != null && response.statusCode() == 304) {
+            // Не изменился: заголовки 304 заменяют сохраненные, срок свежести считается заново
+            revalidated.incrementAndGet();
+            CachedResponse refreshed = cached.refresh(headers);
+            if (refreshed.freshUntil != cached.freshUntil) {
+                // При no-cache срок не меняется, и файл с телом не переписывается на каждый запрос
+                writeCache(key, refreshed);
+            }
+            serveCached(out, refreshed);
+            return;
+        }
+        (cacheable ? misses : passed).incrementAndGet();
+        write(out, response.statusCode(), headers, response.body());
+
+        // 4. Сохраняем статику в кэш
+        if (cacheable && response.statusCode() == 200 && isStorable(response)) {
+            writeCache(key, new CachedResponse(response.statusCode(), headers, response.body(),
+                    freshUntil(headers, System.currentTimeMillis()), varyValues(headers, request)));
+        }
+    }
+
+    private void serveCached(OutputStream out, CachedResponse cached) throws IOException {
+        hits.incrementAndGet();
+        bytesFromCache.addAndGet(cached.body.length);
+        write(out, cached.status, cached.headers, cached.body);
+    }
+
+    private static List<String[]> headers(HttpResponse<?> response) {
+        List<String[]> headers = new ArrayList<>();
+        response.headers().map().forEach((name, values) -> {
+            if (!HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT)) && !name.startsWith(":")) {
+                for (String value : values) {
+                    headers.add(new String[]{name, value});
+                }
+            }
+        });
+        return headers;
+    }
+
+    /**
+     * @param cached Устаревший ответ из кэша: условные заголовки браузера заменяются его валидаторами,
+     *               иначе 304 относился бы к копии браузера, а не к кэшу. {@code null} — запрос как есть.
+     */
+    private HttpRequest toHttpRequest(Request request, URI uri, CachedResponse cached) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(60))
+                .method(request.method, request.body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(request.body));
+        for (String[] header : request.headers) {
+            String name = header[0].toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP.contains(name) && (cached == null || !CONDITIONAL.contains(name))) {
+                try {
+                    builder.header(header[0], header[1]);
+                } catch (IllegalArgumentException e) {
+                    // Заголовок, который HttpClient задает сам (например, Date) — пропускаем
+                }
+            }
+        }
+        if (cached != null) {
+            String etag = header(cached.headers, "ETag");
+            String lastModified = header(cached.headers, "Last-Modified");
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * HTTPS: соединяемся с хостом и перекладываем байты в обе стороны, пока одна из сторон не закроется.
+     */
+    private void tunnel(Request request, Socket client, InputStream in, OutputStream out) throws IOException {
+        String target = request.target;
+        int colon = target.lastIndexOf(':');
+        String host = colon < 0 ? target : target.substring(0, colon);
+        int port = colon < 0 ? 443 : Integer.parseInt(target.substring(colon + 1));
+        if (isBlocked(host)) {
+            blocked.incrementAndGet();
+            writeError(out, 403, "Хост заблокирован прокси: " + host);
+            out.flush();
+            return;
+        }
+        tunnels.incrementAndGet();
+        try (Socket remote = new Socket()) {
+            remote.connect(new InetSocketAddress(host, port), 30_000);
+            out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            executor.execute(() -> {
+                try {
+                    remote.getInputStream().transferTo(client.getOutputStream());
+                } catch (IOException e) {
+                    // Одна из сторон закрыла соединение
+                } finally {
+                    closeQuietly(client);
+                }
+            });
+            in.transferTo(remote.getOutputStream());
+        } catch (IOException e) {
+            if (!client.isClosed()) {
+                writeError(out, 502, "Не удалось открыть туннель к " + target + ": " + e.getMessage());
+                out.flush();
+            }
+        }
+    }
+
+    private boolean isBlocked(String host) {
+        String name = host.toLowerCase(Locale.ROOT);
+        for (String blockedHost : blockedHosts) {
+            if (name.equals(blockedHost) || name.endsWith("." + blockedHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStatic(URI uri) {
+        String path = uri.getPath();
+        if (path == null) {
+            return false;
+        }
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') && STATIC_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isStorable(HttpResponse<?> response) {
+        String cacheControl = response.headers().firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+        return !cacheControl.contains("no-store") && !cacheControl.contains("private")
+                && response.headers().firstValue("Set-Cookie").isEmpty()
+                && !response.headers().firstValue("Vary").orElse("").contains("*");
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Свежесть (RFC 9111)
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * До какого момента (мс эпохи) ответ можно отдавать без перепроверки; 0 — перепроверять каждый раз.
+     */
+    private static long freshUntil(List<String[]> headers, long now) {
+        String cacheControl = header(headers, "Cache-Control");
+        cacheControl = cacheControl == null ? "" : cacheControl.toLowerCase(Locale.ROOT);
+        if (directive(cacheControl, "no-cache") != null) {
+            return 0;
+        }
+        String maxAge = directive(cacheControl, "s-maxage");
+        if (maxAge == null) {
+            maxAge = directive(cacheControl, "max-age");
+        }
+        if (maxAge != null) {
+            try {
+                return now + (Long.parseLong(maxAge) - seconds(header(headers, "Age"))) * 1000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        // Expires и Last-Modified отсчитываются от Date сервера, чтобы не зависеть от расхождения часов
+        long date = httpDate(header(headers, "Date"), now);
+        String expires = header(headers, "Expires");
+        if (expires != null) {
+            long expiresAt = httpDate(expires, -1);
+            return expiresAt < 0 ? 0 : now + expiresAt - date;
+        }
+        long lastModified = httpDate(header(headers, "Last-Modified"), -1);
+        if (lastModified >= 0 && lastModified < date) {
+            return now + Math.min((date - lastModified) / 10, MAX_HEURISTIC_MS);
+        }
+        return 0;
+    }
+
+    // Значение директивы Cache-Control: "" — директива без значения, null — директивы нет
+    private static String directive(String cacheControl, String name) {
+        for (String part : cacheControl.split(",")) {
+            String directive = part.trim();
+            if (directive.equals(name)) {
+                return "";
+            }
+            if (directive.startsWith(name + "=")) {
+                return directive.substring(name.length() + 1).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    private static long seconds(String value) {
+        try {
+            return value == null ? 0 : Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long httpDate(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Значения заголовков запроса, перечисленных в {@code Vary} ответа: имя, значение ("" — заголовка нет).
+     */
+    private static List<String[]> varyValues(List<String[]> responseHeaders, Request request) {
+        List<String[]> values = new ArrayList<>();
+        for (String[] header : responseHeaders) {
+            if (header[0].equalsIgnoreCase("Vary")) {
+                for (String name : header[1].split(",")) {
+                    if (!name.isBlank()) {
+                        String value = request.header(name.trim());
+                        values.add(new String[]{name.trim(), value == null ? "" : value});
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String header(List<String[]> headers, String name) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Кэш на диске
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * @param freshUntil Срок свежести, мс эпохи (см. {@link #freshUntil(List, long)}).
+     * @param vary       Значения заголовков запроса по {@code Vary}, при которых ответ получен.
+     */
+    private record CachedResponse(int status, List<String[]> headers, byte[] body, long freshUntil, List<String[]> vary) {
+
+        boolean matches(Request request) {
+            for (String[] header : vary) {
+                String value = request.header(header[0]);
+                if (!header[1].equals(value == null ? "" : value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Ответ после 304: заголовки из 304 заменяют одноименные сохраненные.
+         */
+        CachedResponse refresh(List<String[]> notModifiedHeaders) {
+            Set<String> replaced = notModifiedHeaders.stream()
+                    .map(header -> header[0].toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toSet());
+            List<String[]> merged = new ArrayList<>();
+            for (String[] header : headers) {
+                if (!replaced.contains(header[0].toLowerCase(Locale.ROOT))) {
+                    merged.add(header);
+                }
+            }
+            merged.addAll(notModifiedHeaders);
+            return new CachedResponse(status, merged, body, CachingProxy.freshUntil(merged, System.currentTimeMillis()), vary);
+        }
+    }
+
+    private void loadCacheIndex() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            List<Path> entries = files.filter(file -> file.getFileName().toString().endsWith(".bin"))
+                    .sorted(Comparator.comparingLong(CachingProxy::lastModified))
+                    .toList();
+            synchronized (cache) {
+                for (Path file : entries) {
+                    long size = Files.size(file);
+                    cache.put(file.getFileName().toString().replace(".bin", ""), size);
+                    cacheBytes += size;
+                }
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Ответ из кэша для запроса или {@code null}, если его нет или он получен при других значениях
+     * заголовков из {@code Vary}. Свежесть здесь не проверяется.
+     */
+    private CachedResponse readCache(String key, Request request) {
+        synchronized (cache) {
+            if (cache.get(key) == null) {
+                return null;
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(key))))) {
+            if (in.readInt() != CACHE_FORMAT) {
+                throw new IOException("Файл кэша другого формата: " + file(key));
+            }
+            long freshUntil = in.readLong();
+            List<String[]> vary = readHeaders(in);
+            int status = in.readInt();
+            List<String[]> headers = readHeaders(in);
+            CachedResponse cached = new CachedResponse(status, headers, in.readAllBytes(), freshUntil, vary);
+            return cached.matches(request) ? cached : null;
+        } catch (IOException e) {
+            // Файл удален вытеснением или поврежден — считаем промахом
+            forget(key);
+            return null;
+        }
+    }
+
+    private void writeCache(String key, CachedResponse response) {
+        try {
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(CACHE_FORMAT);
+                out.writeLong(response.freshUntil);
+                writeHeaders(out, response.vary);
+                out.writeInt(response.status);
+                writeHeaders(out, response.headers);
+                out.write(response.body);
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (cache) {
+                Long previous = cache.put(key, size);
+                cacheBytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            System.err.println("Ответ не сохранен в кэш прокси: " + e.getMessage());
+        }
+    }
+
+    private static List<String[]> readHeaders(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String[]> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            headers.add(new String[]{in.readUTF(), in.readUTF()});
+        }
+        return headers;
+    }
+
+    private static void writeHeaders(DataOutputStream out, List<String[]> headers) throws IOException {
+        out.writeInt(headers.size());
+        for (String[] header : headers) {
+            out.writeUTF(header[0]);
+            out.writeUTF(header[1]);
+        }
+    }
+
+    // Вызывается под блокировкой cache
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = cache.entrySet().iterator();
+        while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            cacheBytes -= entry.getValue();
+            eldest.remove();
+            try {
+                Files.deleteIfExists(file(entry.getKey()));
+            } catch (IOException e) {
+                // Файл занят чтением — удалится при следующем вытеснении или старте
+            }
+        }
+    }
+
+    private void forget(String key) {
+        synchronized (cache) {
+            Long size = cache.remove(key);
+            if (size != null) {
+                cacheBytes -= size;
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return cacheDir.resolve(key + ".bin");
+    }
+
+    private static String key(String url) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // HTTP/1.1
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Запрос браузера к прокси: {@code GET http://host/path HTTP/1.1} или {@code CONNECT host:443 HTTP/1.1}.
+     */
+    private static final class Request {
+        final String method;
+        final String target;
+        final List<String[]> headers;
+        final byte[] body;
+        final boolean closeAfter;
+
+        private Request(String method, String target, List<String[]> headers, byte[] body, boolean closeAfter) {
+            this.method = method;
+            this.target = target;
+            this.headers = headers;
+            this.body = body;
+            this.closeAfter = closeAfter;
+        }
+
+        /**
+         * Первое значение заголовка или {@code null}.
+         */
+        String header(String name) {
+            return CachingProxy.header(headers, name);
+        }
+
+        /**
+         * Следующий запрос из соединения или {@code null}, если браузер его закрыл.
+         */
+        static Request read(InputStream in) throws IOException {
+            String requestLine = readLine(in);
+            while (requestLine != null && requestLine.isEmpty()) {
+                requestLine = readLine(in);
+            }
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 3) {
+                throw new IOException("Некорректная строка запроса: " + requestLine);
+            }
+
+            List<String[]> headers = new ArrayList<>();
+            long contentLength = 0;
+            boolean close = parts[2].equals("HTTP/1.0");
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                headers.add(new String[]{name, value});
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Proxy-Connection") || name.equalsIgnoreCase("Connection")) {
+                    close = value.equalsIgnoreCase("close");
+                }
+            }
+            byte[] body = in.readNBytes((int) contentLength);
+            return new Request(parts[0], parts[1], headers, body, close);
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return line.toString(StandardCharsets.ISO_8859_1).stripTrailing();
+                }
+                line.write(b);
+            }
+            return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static void write(OutputStream out, int status, List<String[]> headers, byte[] body) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(" \r\n");
+        for (String[] header : headers) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+    }
+
+    private static void writeError(OutputStream out, int status, String message) throws IOException {
+        write(out, status, List.<String[]>of(new String[]{"Content-Type", "text/plain; charset=utf-8"}),
+                message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Уже закрыт
+        }
+    }
+}
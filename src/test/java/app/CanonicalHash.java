@@ -0,0 +1,90 @@
+package app;
+
+/**
+ * Канонический 64-битный хэш XML-поддерева, не зависящий от порядка атрибутов и дочерних элементов.
+ * <p>
+ * Хэш элемента строится из имени, множества атрибутов, нормализованного текста и хэшей детей.
+ * Атрибуты и дети складываются коммутативно, поэтому перестановка соседей не меняет результат,
+ * а равные поддеревья в двух документах дают одинаковый хэш.
+ */
+public final class CanonicalHash {
+
+    /**
+     * Разделитель текстовых узлов одного элемента в строке текста: символ U+0000 не может встретиться в XML.
+     */
+    public static final char TEXT_NODE_SEPARATOR = '\0';
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long ELEMENT_SALT = 0x9E3779B97F4A7C15L;
+    private static final long TEXT_SALT = 0xC2B2AE3D27D4EB4FL;
+    private static final long CHILD_SALT = 0x165667B19E3779F9L;
+
+    private CanonicalHash() {
+    }
+
+    /**
+     * Хэш строки (FNV-1a по UTF-16 символам с финальным перемешиванием). {@code null} и "" дают 0.
+     */
+    public static long of(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        long h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Вклад одного атрибута. Вклады атрибутов элемента нужно складывать.
+     */
+    public static long attribute(String name, String value) {
+        return mix(of(name) * 31 + of(value));
+    }
+
+    /**
+     * Вклад одного дочернего узла с хэшем {@code childHash}. Вклады детей нужно складывать.
+     */
+    public static long child(long childHash) {
+        return mix(childHash + CHILD_SALT);
+    }
+
+    /**
+     * Хэш текстового узла.
+     */
+    public static long text(String value) {
+        return mix(of(value) ^ TEXT_SALT);
+    }
+
+    /**
+     * Итоговый хэш элемента.
+     *
+     * @param name          Имя элемента.
+     * @param attributesSum Сумма {@link #attribute(String, String)} по всем атрибутам.
+     * @param text          Нормализованные собственные текстовые узлы элемента по порядку, через
+     *                      {@link #TEXT_NODE_SEPARATOR} (или {@code null}).
+     * @param childrenSum   Сумма {@link #child(long)} по всем дочерним элементам.
+     */
+    public static long element(String name, long attributesSum, String text, long childrenSum) {
+        long h = mix(of(name) + ELEMENT_SALT);
+        h = mix(h ^ attributesSum);
+        h = mix(h + of(text) * 31);
+        return mix(h ^ childrenSum);
+    }
+
+    /**
+     * Финальное перемешивание MurmurHash3 (fmix64).
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
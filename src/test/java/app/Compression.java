@@ -0,0 +1,288 @@
+package app;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Прозрачное чтение сжатых XML: формат определяется по первым байтам (magic), а не по расширению,
+ * поэтому {@code control.xml.gz}, переименованный в {@code control.xml}, тоже читается. Несжатые
+ * данные проходят как есть, без копирования.
+ * <p>
+ * Поддерживаются gzip (в том числе из нескольких членов, как пишут {@code pigz} и дописывание
+ * {@code cat a.gz b.gz}) и zstd (несколько кадров подряд тоже). Распаковка идет в отдельном потоке
+ * на {@value #CHUNK_SIZE} байт вперед парсера, так что чтение с диска, распаковка и разбор идут
+ * одновременно. Очередь готовых блоков — {@value #QUEUE_CHUNKS_PROPERTY} (по умолчанию 16),
+ * отключить опережающую распаковку — {@code -D}{@value #PIPELINE_PROPERTY}{@code =false}.
+ * <p>
+ * Настройки читаются из системных свойств при каждом открытии, а не из {@link TestConfig}: сам конфиг
+ * читается через {@link Resources#openStream(String)}.
+ */
+public final class Compression {
+
+    public static final String PIPELINE_PROPERTY = "xml.compressed.pipeline";
+    public static final String QUEUE_CHUNKS_PROPERTY = "xml.compressed.queueChunks";
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final ExecutorService INFLATERS = Executors.newCachedThreadPool(new InflaterThreadFactory());
+
+    /**
+     * Формат данных по первым байтам.
+     */
+    public enum Format {
+        NONE,
+        GZIP(0x1F, 0x8B),
+        ZSTD(0x28, 0xB5, 0x2F, 0xFD);
+
+        private final int[] magic;
+
+        Format(int... magic) {
+            this.magic = magic;
+        }
+
+        private boolean matches(byte[] head, int length) {
+            if (magic.length == 0 || length < magic.length) {
+                return false;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if ((head[i] & 0xFF) != magic[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private Compression() {
+    }
+
+    /**
+     * Открывает файл на диске; сжатый файл распаковывается на лету.
+     */
+    public static InputStream open(Path file) throws IOException {
+        return decode(Files.newInputStream(file));
+    }
+
+    /**
+     * Поток распакованных данных поверх {@code raw}. Несжатые данные возвращаются без изменений.
+     * Закрытие результата закрывает {@code raw}.
+     */
+    public static InputStream decode(InputStream raw) throws IOException {
+        MemberAwareInputStream in = new MemberAwareInputStream(raw);
+        InputStream decoded;
+        try {
+            switch (in.detect()) {
+                case GZIP:
+                    decoded = new GZIPInputStream(in, CHUNK_SIZE);
+                    break;
+                case ZSTD:
+                    decoded = new ZstdInputStream(in);
+                    break;
+                default:
+                    return in;
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        if (!Boolean.parseBoolean(System.getProperty(PIPELINE_PROPERTY, "true"))) {
+            return decoded;
+        }
+        return new PipelinedInputStream(decoded, Math.max(1, Integer.getInteger(QUEUE_CHUNKS_PROPERTY, 16)));
+    }
+
+    /**
+     * Формат данных потока. Поток после вызова читается с начала, как будто ничего не было прочитано.
+     */
+    public static Format detect(PushbackInputStream in) throws IOException {
+        byte[] head = new byte[4];
+        int length = in.readNBytes(head, 0, head.length);
+        in.unread(head, 0, length);
+        for (Format format : Format.values()) {
+            if (format.matches(head, length)) {
+                return format;
+            }
+        }
+        return Format.NONE;
+    }
+
+    /**
+     * Поток, возвращающий прочитанные байты обратно.
+     * <p>
+     * {@link GZIPInputStream} переходит к следующему члену gzip, только если после трейлера
+     * {@code available() > 0}. Потоки из JAR и сети часто отвечают 0, даже когда данные есть, и
+     * файл из нескольких членов молча обрезается после первого. Здесь {@code available()} при
+     * нуле заглядывает на байт вперед.
+     */
+    private static final class MemberAwareInputStream extends PushbackInputStream {
+
+        MemberAwareInputStream(InputStream in) {
+            super(in, 4);
+        }
+
+        Format detect() throws IOException {
+            return Compression.detect(this);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int available = super.available();
+            if (available > 0) {
+                return available;
+            }
+            int next = read();
+            if (next < 0) {
+                return 0;
+            }
+            unread(next);
+            return 1;
+        }
+    }
+
+    /**
+     * Читает {@code source} в отдельном потоке блоками по {@value #CHUNK_SIZE} байт в ограниченную очередь,
+     * из которой читает парсер. Ошибка распаковки передается читателю при следующем чтении.
+     * Буферы прочитанных блоков используются повторно.
+     */
+    private static final class PipelinedInputStream extends InputStream {
+
+        private static final Chunk END = new Chunk(new byte[0], -1);
+
+        private final InputStream source;
+        private final BlockingQueue<Chunk> ready;
+        private final BlockingQueue<byte[]> free;
+        private volatile boolean closed;
+        private volatile IOException error;
+        private Chunk current;
+        private int position;
+
+        PipelinedInputStream(InputStream source, int queueChunks) {
+            this.source = source;
+            this.ready = new ArrayBlockingQueue<>(queueChunks + 1);
+            this.free = new ArrayBlockingQueue<>(queueChunks + 2);
+            INFLATERS.execute(this::produce);
+        }
+
+        private void produce() {
+            try (InputStream in = source) {
+                while (!closed) {
+                    byte[] buffer = free.poll();
+                    if (buffer == null) {
+                        buffer = new byte[CHUNK_SIZE];
+                    }
+                    int length = in.readNBytes(buffer, 0, CHUNK_SIZE);
+                    if (length > 0 && !put(new Chunk(buffer, length))) {
+                        return;
+                    }
+                    if (length < CHUNK_SIZE) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            put(END);
+        }
+
+        // Ждем места в очереди, но не дольше, чем читатель держит поток открытым
+        private boolean put(Chunk chunk) {
+            try {
+                while (!closed) {
+                    if (ready.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        // Текущий блок с непрочитанными байтами или END
+        private Chunk chunk() throws IOException {
+            if (closed) {
+                throw new IOException("Поток закрыт");
+            }
+            if (current != null && (current == END || position < current.length())) {
+                return current;
+            }
+            if (current != null) {
+                free.offer(current.data());
+            }
+            try {
+                current = ready.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Чтение распакованных данных прервано");
+            }
+            position = 0;
+            if (current == END && error != null) {
+                throw new IOException("Ошибка распаковки: " + error.getMessage(), error);
+            }
+            return current;
+        }
+
+        @Override
+        public int read() throws IOException {
+            Chunk chunk = chunk();
+            return chunk == END ? -1 : chunk.data()[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            Chunk chunk = chunk();
+            if (chunk == END) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length() - position);
+            System.arraycopy(chunk.data(), position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null || current == END ? 0 : current.length() - position;
+        }
+
+        @Override
+        public void close() {
+            // Поток распаковки заметит флаг при следующей записи в очередь и закроет источник сам
+            closed = true;
+            ready.clear();
+        }
+
+        private record Chunk(byte[] data, int length) {
+        }
+    }
+
+    private static final class InflaterThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "xml-inflate-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
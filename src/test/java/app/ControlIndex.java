@@ -0,0 +1,591 @@
+package app;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Постоянный индекс эталонного (control) документа для {@link StreamingXmlComparator}.
+ * <p>
+ * Эталоны меняются редко, а разбираются при каждом запуске. Индекс один раз сохраняет результат разбора
+ * в компактный двоичный файл {@code <каталог>/<sha256 содержимого>.xidx}:
+ * <ul>
+ *     <li>канонические хэши ({@link CanonicalHash}) всех поддеревьев и хэш корня;</li>
+ *     <li>дерево в прямом порядке: имя, атрибуты и текст каждого элемента, плюс хэш и длина поддерева
+ *     в байтах, чтобы равное поддерево можно было пропустить, не читая его.</li>
+ * </ul>
+ * Пока содержимое эталона не изменилось, сравнение читает индекс вместо разбора XML, а при равенстве
+ * хэшей корней не трогает дерево вовсе. При изменении эталона меняется ключ, и индекс строится заново.
+ * Каталог задается {@value #DIR_PROPERTY} (по умолчанию {@code build/xml-index}).
+ */
+public final class ControlIndex {
+
+    /**
+     * Каталог для файлов индекса.
+     */
+    public static final String DIR_PROPERTY = "xml.index.dir";
+
+    private static final int MAGIC = 0x58494458; // "XIDX"
+    // 2: текстовые узлы элемента разделены CanonicalHash.TEXT_NODE_SEPARATOR, а не слиты
+    private static final int VERSION = 2;
+    // magic, версия, хэш корня, смещения имен и хэшей, число хэшей
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+
+    static final byte START = 1;
+    static final byte END = 2;
+
+    private final Path file;
+    private final long rootHash;
+    private final List<String> names;
+    private final long hashesOffset;
+    private final long hashCount;
+
+    private ControlIndex(Path file, long rootHash, List<String> names, long hashesOffset, long hashCount) {
+        this.file = file;
+        this.rootHash = rootHash;
+        this.names = names;
+        this.hashesOffset = hashesOffset;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Индекс документа из каталога по умолчанию; строится, если его еще нет.
+     */
+    public static ControlIndex of(XmlSource control) throws IOException {
+        return of(control, Path.of(System.getProperty(DIR_PROPERTY, "build/xml-index")));
+    }
+
+    /**
+     * Индекс документа из каталога {@code cacheDir}; строится, если его еще нет.
+     * Ключ — SHA-256 содержимого, поэтому документ каждый раз читается как байты (но не разбирается).
+     */
+    public static ControlIndex of(XmlSource control, Path cacheDir) throws IOException {
+        String key = sha256(control);
+        Path file = cacheDir.resolve(key + ".xidx");
+        if (Files.isRegularFile(file)) {
+            try {
+                return open(file);
+            } catch (IOException e) {
+                // Файл поврежден или записан другой версией — строим заново
+            }
+        }
+
+        // Пишем во временный файл и переносим: параллельные тесты не увидят недописанный индекс
+        Files.createDirectories(cacheDir);
+        Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+        try {
+            write(control, tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return open(file);
+    }
+
+    /**
+     * Открывает готовый файл индекса.
+     *
+     * @throws IOException Если файл не является индексом этой версии.
+     */
+    public static ControlIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            IndexInput in = new IndexInput(channel, 0);
+            if (channel.size() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Неподдерживаемый формат индекса: " + file);
+            }
+            long rootHash = in.readLong();
+            long namesOffset = in.readLong();
+            long hashesOffset = in.readLong();
+            long hashCount = in.readLong();
+
+            in.seek(namesOffset);
+            int count = in.readVarInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(in.readString());
+            }
+            return new ControlIndex(file, rootHash, Collections.unmodifiableList(names), hashesOffset, hashCount);
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Канонический хэш всего документа.
+     */
+    public long rootHash() {
+        return rootHash;
+    }
+
+    /**
+     * Передает хэши всех поддеревьев (в порядке закрытия элементов).
+     */
+    void forEachHash(LongConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            IndexInput in = new IndexInput(channel, hashesOffset);
+            for (long i = 0; i < hashCount; i++) {
+                consumer.accept(in.readLong());
+            }
+        }
+    }
+
+    /**
+     * Курсор по дереву документа.
+     */
+    Cursor tree() throws IOException {
+        return new Cursor(FileChannel.open(file, StandardOpenOption.READ), hashesOffset);
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Построение
+    // ----------------------------------------------------------------------------------
+
+    private static String sha256(XmlSource source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = source.open()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void write(XmlSource source, Path file) throws IOException {
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        long[] hashes = new long[1024];
+        int hashCount = 0;
+        long rootHash = 0;
+
+        try (InputStream in = source.open();
+             IndexOutput out = new IndexOutput(FileChannel.open(file, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+
+            // 1. Заголовок; хэш корня и смещения заполняются в конце
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < 4; i++) {
+                out.writeLong(0);
+            }
+
+            // 2. Дерево: START(имя, хэш, длина, атрибуты) ... дети ... END(текст)
+            Deque<Frame> stack = new ArrayDeque<>();
+            XMLStreamReader reader = Mappers.STAX_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            Frame parent = stack.peek();
+                            if (parent != null) {
+                                parent.text.endNode();
+                            }
+                            Frame frame = new Frame(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                            out.writeByte(START);
+                            out.writeVarInt(id(frame.name, nameIds, names));
+                            frame.hashPosition = out.position();
+                            out.writeLong(0);
+                            out.writeLong(0);
+                            out.writeVarInt(reader.getAttributeCount());
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                String attrName = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                                String value = reader.getAttributeValue(i);
+                                frame.attributesSum += CanonicalHash.attribute(attrName, value);
+                                out.writeVarInt(id(attrName, nameIds, names));
+                                out.writeString(value);
+                            }
+                            stack.push(frame);
+                            break;
+                        }
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA: {
+                            Frame current = stack.peek();
+                            if (current != null && !reader.isWhiteSpace()) {
+                                current.text.append(reader.getText());
+                            }
+                            break;
+                        }
+                        case XMLStreamConstants.END_ELEMENT: {
+                            Frame frame = stack.pop();
+                            String text = frame.text.finish();
+                            out.writeByte(END);
+                            out.writeString(text);
+
+                            long hash = CanonicalHash.element(frame.name, frame.attributesSum, text, frame.childrenSum);
+                            long bodyStart = frame.hashPosition + 16;
+                            out.patchLong(frame.hashPosition, hash);
+                            out.patchLong(frame.hashPosition + 8, out.position() - bodyStart);
+
+                            if (hashCount == hashes.length) {
+                                hashes = Arrays.copyOf(hashes, hashCount * 2);
+                            }
+                            hashes[hashCount++] = hash;
+
+                            Frame parent = stack.peek();
+                            if (parent == null) {
+                                rootHash = hash;
+                            } else {
+                                parent.childrenSum += CanonicalHash.child(hash);
+                            }
+                            break;
+                        }
+                        default:
+                            // Комментарии, инструкции обработки и пр. не сравниваются
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            if (hashCount == 0) {
+                throw new IOException("В документе нет корневого элемента");
+            }
+
+            // 3. Хэши поддеревьев и таблица имен
+            long hashesOffset = out.position();
+            for (int i = 0; i < hashCount; i++) {
+                out.writeLong(hashes[i]);
+            }
+            long namesOffset = out.position();
+            out.writeVarInt(names.size());
+            for (String name : names) {
+                out.writeString(name);
+            }
+
+            out.patchLong(8, rootHash);
+            out.patchLong(16, namesOffset);
+            out.patchLong(24, hashesOffset);
+            out.patchLong(32, hashCount);
+        } catch (XMLStreamException e) {
+            throw new IOException("Ошибка разбора XML: " + e.getMessage(), e);
+        }
+    }
+
+    private static int id(String name, Map<String, Integer> nameIds, List<String> names) {
+        return nameIds.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static final class Frame {
+        final String name;
+        long hashPosition;
+        long attributesSum;
+        long childrenSum;
+        final TextNodes text = new TextNodes();
+
+        Frame(String name) {
+            this.name = name;
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Чтение дерева
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Последовательное чтение дерева. После {@link #START} нужно вызвать либо
+     * {@link #readAttributes(BiConsumer)}, либо {@link #skipSubtree()}.
+     */
+    final class Cursor implements Closeable {
+        static final int EOF = -1;
+
+        private final FileChannel channel;
+        private final IndexInput in;
+        private final long end;
+        private int nameId;
+        private long hash;
+        private long length;
+        private String text;
+
+        private Cursor(FileChannel channel, long end) {
+            this.channel = channel;
+            this.in = new IndexInput(channel, HEADER_SIZE);
+            this.end = end;
+        }
+
+        /**
+         * @return {@link #START}, {@link #END} или {@link #EOF}.
+         */
+        int next() throws IOException {
+            if (in.position() >= end) {
+                return EOF;
+            }
+            byte event = in.readByte();
+            if (event == START) {
+                nameId = in.readVarInt();
+                hash = in.readLong();
+                length = in.readLong();
+            } else if (event == END) {
+                text = in.readString();
+            } else {
+                throw new IOException("Индекс поврежден: " + file);
+            }
+            return event;
+        }
+
+        String name() {
+            return names.get(nameId);
+        }
+
+        long hash() {
+            return hash;
+        }
+
+        /**
+         * Текстовые узлы элемента после {@link #END} (см. {@link TextNodes}).
+         */
+        String text() {
+            return text;
+        }
+
+        void readAttributes(BiConsumer<String, String> consumer) throws IOException {
+            int count = in.readVarInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(names.get(in.readVarInt()), in.readString());
+            }
+        }
+
+        /**
+         * Пропускает атрибуты, детей и {@link #END} текущего элемента.
+         */
+        void skipSubtree() throws IOException {
+            in.skip(length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Двоичный ввод-вывод
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Буферизованная запись с возможностью дописать значение по уже пройденной позиции.
+     */
+    private static final class IndexOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long flushed;
+
+        IndexOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void writeByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        // Длина + 1, чтобы отличать null (0) от пустой строки (1)
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            if (bytes.length <= buffer.remaining()) {
+                buffer.put(bytes);
+                return;
+            }
+            flush();
+            if (bytes.length <= buffer.capacity()) {
+                buffer.put(bytes);
+                return;
+            }
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                flushed += channel.write(large);
+            }
+        }
+
+        /**
+         * Записывает {@code value} по позиции {@code position}, уже пройденной при записи.
+         */
+        void patchLong(long position, long value) throws IOException {
+            if (position >= flushed) {
+                buffer.putLong((int) (position - flushed), value);
+                return;
+            }
+            // Значение писалось целиком через ensure(8), поэтому оно либо в буфере, либо целиком в файле
+            ByteBuffer bytes = ByteBuffer.allocate(8).putLong(0, value);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, position + bytes.position());
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Буферизованное чтение с произвольным переходом по файлу.
+     */
+    private static final class IndexInput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        // Позиция в файле первого байта буфера
+        private long bufferStart;
+
+        IndexInput(FileChannel channel, long position) {
+            this.channel = channel;
+            seek(position);
+        }
+
+        long position() {
+            return bufferStart + buffer.position();
+        }
+
+        void seek(long position) {
+            bufferStart = position;
+            buffer.clear().limit(0);
+        }
+
+        void skip(long bytes) {
+            if (bytes <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) bytes);
+            } else {
+                seek(position() + bytes);
+            }
+        }
+
+        byte readByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            return buffer.getLong();
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            for (int offset = 0; offset < length; ) {
+                int chunk = Math.min(length - offset, buffer.capacity());
+                require(chunk);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Гарантирует, что в буфере есть не меньше bytes непрочитанных байтов
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            bufferStart += buffer.position();
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer, bufferStart + buffer.position()) < 0) {
+                    throw new EOFException("Индекс поврежден: неожиданный конец файла");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -1,12 +1,53 @@
 package app;
 
+import org.w3c.dom.Node;
 import org.xmlunit.diff.Comparison;
 import org.xmlunit.diff.ComparisonResult;
+import org.xmlunit.diff.ComparisonType;
 import org.xmlunit.diff.DifferenceEvaluator;
 
+/**
+ * {@link DifferenceEvaluator}, который применяет правила {@link XmlRules} к значениям: отличие атрибута
+ * или текста, равных по правилу (регистр, пробелы, формат даты, погрешность числа), становится
+ * {@link ComparisonResult#EQUAL}. Ставится в цепочке перед сборщиком отличий.
+ * <p>
+ * Игнорируемые узлы и атрибуты сюда не доходят: их отбрасывают фильтры {@code DiffBuilder}
+ * (см. {@link Helpers#compareUnorderedXmlReport(String, String, XmlCompareOptions)}).
+ */
 public class DefaultDifferenceEvaluator implements DifferenceEvaluator {
+
+    private final XmlRules rules;
+
+    /**
+     * Правила из настройки {@value XmlRules#FILE_KEY}.
+     */
+    public DefaultDifferenceEvaluator() {
+        this(XmlRules.fromConfig());
+    }
+
+    public DefaultDifferenceEvaluator(XmlRules rules) {
+        this.rules = rules;
+    }
+
     @Override
     public ComparisonResult evaluate(Comparison comparison, ComparisonResult outcome) {
-        return null;
+        if (outcome == ComparisonResult.EQUAL || rules.isEmpty()) {
+            return outcome;
+        }
+        ComparisonType type = comparison.getType();
+        if (type != ComparisonType.ATTR_VALUE && type != ComparisonType.TEXT_VALUE) {
+            return outcome;
+        }
+        Node target = comparison.getTestDetails().getTarget();
+        XmlRules.ValueRule rule = rules.rule(target != null ? target : comparison.getControlDetails().getTarget());
+        if (rule != null && rule.equivalent(valueOf(comparison.getControlDetails().getValue()),
+                valueOf(comparison.getTestDetails().getValue()))) {
+            return ComparisonResult.EQUAL;
+        }
+        return outcome;
+    }
+
+    private static String valueOf(Object value) {
+        return value == null ? null : String.valueOf(value);
     }
 }
@@ -0,0 +1,203 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат сравнения: отличия в виде {@link XmlDifference} с ограничением на их число.
+ * <p>
+ * После {@code maxDifferences} отличий новые не сохраняются, а сравнение останавливается
+ * (см. {@link XmlCompareOptions#maxDifferences()}). Объект не потокобезопасен: параллельные
+ * сравнения собирают свои отчеты и объединяют их через {@link #addAll(DifferenceReport)}.
+ * <p>
+ * Отчет с {@link DifferenceSink} не хранит отличия: каждое сразу уходит в приемник, а в памяти
+ * остаются только число отличий и группы ({@link #groups()}) с одним примером на группу.
+ */
+public class DifferenceReport {
+
+    private final int maxDifferences;
+    private final DifferenceSink sink;
+    private final List<XmlDifference> differences = new ArrayList<>();
+    private final Map<String, GroupCounter> groups = new LinkedHashMap<>();
+    private int count;
+    private boolean limitReached;
+
+    public DifferenceReport(int maxDifferences) {
+        this(maxDifferences, null);
+    }
+
+    /**
+     * @param maxDifferences Лимит отличий.
+     * @param sink           Куда записывать отличия вместо списка в памяти или {@code null}.
+     */
+    public DifferenceReport(int maxDifferences, DifferenceSink sink) {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("Лимит отличий должен быть положительным: " + maxDifferences);
+        }
+        this.maxDifferences = maxDifferences;
+        this.sink = sink;
+    }
+
+    /**
+     * Добавляет отличие.
+     *
+     * @return {@code false}, если лимит уже исчерпан и отличие отброшено.
+     */
+    public boolean add(XmlDifference difference) {
+        if (count >= maxDifferences) {
+            limitReached = true;
+            return false;
+        }
+        if (sink != null) {
+            sink.accept(difference);
+        } else {
+            differences.add(difference);
+        }
+        count++;
+        groups.computeIfAbsent(difference.kind() + " " + difference.pattern(), key -> new GroupCounter(difference)).count++;
+        return true;
+    }
+
+    /**
+     * Добавляет отличия другого отчета в пределах своего лимита.
+     *
+     * @throws IllegalArgumentException Если у {@code other} есть приемник: его отличия уже записаны и не хранятся.
+     */
+    public void addAll(DifferenceReport other) {
+        if (other.sink != null) {
+            throw new IllegalArgumentException("Отчет с приемником отличий нельзя добавить в другой отчет");
+        }
+        for (XmlDifference difference : other.differences) {
+            if (!add(difference)) {
+                break;
+            }
+        }
+        limitReached |= other.limitReached;
+    }
+
+    // Сравнение остановлено снаружи, например лимит уже набран параллельными задачами
+    void markLimitReached() {
+        limitReached = true;
+    }
+
+    /**
+     * Отличия в памяти; у отчета с приемником — пустой список.
+     */
+    public List<XmlDifference> getDifferences() {
+        return Collections.unmodifiableList(differences);
+    }
+
+    /**
+     * Число отличий, в том числе записанных в приемник.
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Приемник отличий или {@code null}, если отличия хранятся в памяти.
+     */
+    public DifferenceSink getSink() {
+        return sink;
+    }
+
+    public int getMaxDifferences() {
+        return maxDifferences;
+    }
+
+    /**
+     * Лимит исчерпан: после {@code maxDifferences} отличий найдено еще одно, оно отброшено,
+     * и сравнение остановлено досрочно. Если отличий ровно {@code maxDifferences}, отчет полный.
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    /**
+     * Отличия, сгруппированные по типу и шаблону пути ({@link XmlDifference#pattern()}),
+     * от самых частых к редким.
+     */
+    public List<Group> groups() {
+        List<Group> result = new ArrayList<>(groups.size());
+        for (GroupCounter group : groups.values()) {
+            result.add(new Group(group.example.kind(), group.example.pattern(), group.count, group.example));
+        }
+        result.sort(Comparator.comparingInt(Group::count).reversed());
+        return result;
+    }
+
+    /**
+     * Тексты всех отличий в памяти (у отчета с приемником их нет), по строке на отличие.
+     * Предупреждение об исчерпанном лимите сюда не входит: см. {@link #isLimitReached()} и {@link #summary()}.
+     */
+    public List<String> format() {
+        List<String> lines = new ArrayList<>(differences.size());
+        for (XmlDifference difference : differences) {
+            lines.add(difference.format());
+        }
+        return lines;
+    }
+
+    /**
+     * Краткий отчет по группам: число повторов, шаблон пути и пример.
+     */
+    public String summary() {
+        return summary(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Краткий отчет по {@code maxGroups} самым частым группам. Если отличия записаны в приемник,
+     * в конце — путь к полному отчету.
+     */
+    public String summary(int maxGroups) {
+        List<Group> groups = groups();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Отличий: %d, групп: %d%n", count, groups.size()));
+        for (Group group : groups.subList(0, Math.min(maxGroups, groups.size()))) {
+            sb.append(String.format("- %d x %s %s%n  например: %s%n",
+                    group.count(), group.kind(), group.pattern(), group.example().format()));
+        }
+        if (groups.size() > maxGroups) {
+            sb.append(String.format("... и еще групп: %d%n", groups.size() - maxGroups));
+        }
+        if (limitReached) {
+            sb.append(limitMessage()).append(System.lineSeparator());
+        }
+        if (sink != null) {
+            sb.append("Все отличия: ").append(sink.location().toAbsolutePath().toUri()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private String limitMessage() {
+        return String.format("Сравнение остановлено: достигнут лимит в %d отличий (%s)",
+                maxDifferences, XmlCompareOptions.MAX_DIFFERENCES_PROPERTY);
+    }
+
+    /**
+     * Группа однотипных отличий.
+     *
+     * @param pattern Путь без номеров шагов.
+     * @param count   Число отличий в группе.
+     * @param example Первое отличие группы.
+     */
+    public record Group(XmlDifference.Kind kind, String pattern, int count, XmlDifference example) {
+    }
+
+    private static final class GroupCounter {
+        private final XmlDifference example;
+        private int count;
+
+        GroupCounter(XmlDifference example) {
+            this.example = example;
+        }
+    }
+}
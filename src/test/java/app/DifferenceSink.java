@@ -0,0 +1,75 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Приемник отличий: сравнение передает в него каждое отличие сразу, как только нашло его,
+ * а не копит весь список в памяти (см. {@link XmlCompareOptions#withSink(DifferenceSink)}).
+ * <p>
+ * Реализации пишут отличия на диск буферизованно и держат в памяти только счетчики, поэтому
+ * миллионы отличий не расходуют память: {@link NdjsonDifferenceSink} (строка JSON на отличие),
+ * {@link JUnitXmlDifferenceSink} (отчет JUnit для CI) и {@link HtmlDifferenceSink} (страницы HTML).
+ * <p>
+ * {@link #accept(XmlDifference)} вызывается из обхода XMLUnit, который не пропускает проверяемые
+ * исключения, поэтому ошибки записи выбрасываются как {@link java.io.UncheckedIOException}.
+ * Объект не потокобезопасен.
+ */
+public interface DifferenceSink extends Closeable {
+
+    /**
+     * Формат отчета: {@code ndjson} (по умолчанию), {@code junit} или {@code html}.
+     */
+    String FORMAT_KEY = "xml.report.format";
+
+    /**
+     * Каталог отчетов (по умолчанию {@code build/xml-diff}).
+     */
+    String DIR_KEY = "xml.report.dir";
+
+    /**
+     * Записывает отличие.
+     */
+    void accept(XmlDifference difference);
+
+    /**
+     * Сколько отличий записано.
+     */
+    long count();
+
+    /**
+     * Файл, который стоит открыть первым: сам отчет или оглавление страниц.
+     */
+    Path location();
+
+    /**
+     * Дописывает отчет и закрывает файлы. Отчет готов только после закрытия.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Приемник в формате {@code format} с отчетом {@code <dir>/<name>.<расширение>}
+     * (для HTML — каталог {@code <dir>/<name>}).
+     */
+    static DifferenceSink open(Path dir, String name, String format) throws IOException {
+        return switch (format.trim().toLowerCase(Locale.ROOT)) {
+            case "ndjson" -> new NdjsonDifferenceSink(dir.resolve(name + ".ndjson"));
+            case "junit" -> new JUnitXmlDifferenceSink(dir.resolve(name + ".xml"), name);
+            case "html" -> new HtmlDifferenceSink(dir.resolve(name), HtmlDifferenceSink.DEFAULT_PAGE_SIZE);
+            default -> throw new IllegalArgumentException(
+                    "Неизвестный формат отчета '" + format + "' (" + FORMAT_KEY + "): нужен ndjson, junit или html");
+        };
+    }
+
+    /**
+     * Приемник по настройкам {@value #DIR_KEY} и {@value #FORMAT_KEY}.
+     *
+     * @param name Имя отчета, обычно имя теста.
+     */
+    static DifferenceSink fromConfig(String name) throws IOException {
+        return open(Path.of(TestConfig.get(DIR_KEY, "build/xml-diff")), name, TestConfig.get(FORMAT_KEY, "ndjson"));
+    }
+}
@@ -0,0 +1,218 @@
+package app;
+
+import com.codeborne.selenide.CheckResult;
+import com.codeborne.selenide.Condition;
+import com.codeborne.selenide.Configuration;
+import com.codeborne.selenide.Driver;
+import com.codeborne.selenide.WebDriverRunner;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static com.codeborne.selenide.Selenide.$x;
+
+/**
+ * Ожидание элементов по событиям DOM вместо опроса.
+ * <p>
+ * {@code $x(...).shouldBe(Condition.exist)} опрашивает страницу через WebDriver каждые
+ * {@code Configuration.pollingInterval} мс. Здесь все ожидания шага передаются в страницу одним
+ * асинхронным скриптом: он сразу проверяет их, а если не выполнены — ставит {@code MutationObserver}
+ * и отвечает, как только после изменения DOM выполнены все. Итог — один вызов WebDriver на шаг
+ * и реакция без задержки опроса.
+ * <p>
+ * Переход на другую страницу прерывает скрипт; тогда ожидание повторяется уже на новой странице.
+ * Остальные ошибки скрипта (неверный XPath, закрытая сессия, недоступный браузер) пробрасываются сразу.
+ * <pre>{@code
+ * DomWait.await(present(loginL), present(passwordL), present(loginBtnL));
+ * $x("/html").should(DomWait.satisfied(absent(menuL)));
+ * }</pre>
+ */
+public final class DomWait {
+
+    // Асинхронные скрипты ограничены script timeout драйвера (по умолчанию 30 с), поэтому ждем порциями
+    private static final long MAX_SLICE_MILLIS = 20_000;
+
+    // Тексты ошибок, с которыми браузеры прерывают асинхронный скрипт при уходе со страницы
+    // (Chrome: "document unloaded while waiting for result", Firefox: "Document was unloaded")
+    private static final List<String> NAVIGATION_ERRORS = List.of(
+            "document unloaded", "document was unloaded", "execution context was destroyed");
+
+    private static final String WAIT_SCRIPT = String.join("\n",
+            "var expectations = arguments[0], timeoutMs = arguments[1], done = arguments[arguments.length - 1];",
+            "function find(xpath) {",
+            "  return document.evaluate(xpath, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;",
+            "}",
+            "function failed() {",
+            "  var result = [];",
+            "  for (var i = 0; i < expectations.length; i++) {",
+            "    var node = find(expectations[i][0]), state = expectations[i][1];",
+            "    var ok = state === 'PRESENT' ? !!node",
+            "        : state === 'ABSENT' ? !node",
+            "        : !!node && !!(node.offsetWidth || node.offsetHeight || node.getClientRects().length);",
+            "    if (!ok) { result.push(i); }",
+            "  }",
+            "  return result;",
+            "}",
+            "var pending = failed();",
+            "if (!pending.length || timeoutMs <= 0) { done(pending); return; }",
+            "var finished = false, scheduled = false, timer;",
+            // Пачку изменений DOM проверяем один раз, а не на каждую запись
+            "var observer = new MutationObserver(function () {",
+            "  if (scheduled) { return; }",
+            "  scheduled = true;",
+            "  setTimeout(function () { scheduled = false; var left = failed(); if (!left.length) { finish(left); } }, 0);",
+            "});",
+            "function finish(result) {",
+            "  if (finished) { return; }",
+            "  finished = true; observer.disconnect(); clearTimeout(timer); done(result);",
+            "}",
+            "observer.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});",
+            "timer = setTimeout(function () { finish(failed()); }, timeoutMs);"
+    );
+
+    private DomWait() {
+    }
+
+    /**
+     * Что ждем от элемента.
+     */
+    public enum State {
+        /** Элемент есть в DOM. */
+        PRESENT,
+        /** Элемента нет в DOM. */
+        ABSENT,
+        /** Элемент есть и занимает место на странице. */
+        VISIBLE
+    }
+
+    /**
+     * Ожидание для одного XPath.
+     */
+    public record Expectation(String xpath, State state) {
+
+        @Override
+        public String toString() {
+            return state + " " + xpath;
+        }
+    }
+
+    public static Expectation present(String xpath) {
+        return new Expectation(xpath, State.PRESENT);
+    }
+
+    public static Expectation absent(String xpath) {
+        return new Expectation(xpath, State.ABSENT);
+    }
+
+    public static Expectation visible(String xpath) {
+        return new Expectation(xpath, State.VISIBLE);
+    }
+
+    /**
+     * Ждет выполнения всех ожиданий не дольше {@code Configuration.timeout}.
+     *
+     * @throws AssertionError Если за это время ожидания не выполнены (как у {@code should}).
+     */
+    public static void await(Expectation... expectations) {
+        $x("/html").should(satisfied(expectations));
+    }
+
+    /**
+     * Выполнены ли все ожидания в течение {@code timeout}. Не бросает исключение.
+     */
+    public static boolean within(Duration timeout, Expectation... expectations) {
+        return pending(WebDriverRunner.getWebDriver(), timeout, expectations).isEmpty();
+    }
+
+    /**
+     * Условие Selenide для корня документа ({@code $x("/html")}): выполнено, когда выполнены все ожидания.
+     * Одна проверка условия ждет изменений DOM до {@code Configuration.timeout}, поэтому цикл опроса
+     * Selenide обычно делает одну итерацию.
+     */
+    public static Condition satisfied(Expectation... expectations) {
+        String name = "dom " + Arrays.toString(expectations);
+        return new Condition(name) {
+            @Override
+            public CheckResult check(Driver driver, WebElement element) {
+                List<Expectation> pending = pending(driver.getWebDriver(), Duration.ofMillis(Configuration.timeout), expectations);
+                return new CheckResult(pending.isEmpty(), pending.isEmpty() ? "все выполнены" : "не выполнены: " + pending);
+            }
+        };
+    }
+
+    /**
+     * Ожидания, не выполненные за {@code timeout}; пустой список — все выполнены.
+     *
+     * @throws WebDriverException Если скрипт упал не из-за перехода на другую страницу и не по script timeout.
+     */
+    static List<Expectation> pending(WebDriver driver, Duration timeout, Expectation... expectations) {
+        List<List<String>> arguments = Arrays.stream(expectations)
+                .map(expectation -> List.of(expectation.xpath(), expectation.state().name()))
+                .collect(Collectors.toList());
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        List<Expectation> pending = Arrays.asList(expectations);
+        try (Metrics.Timer ignored = Metrics.start("ui.domWait")) {
+            while (true) {
+                long left = Math.max(0, (deadline - System.nanoTime()) / 1_000_000);
+                try {
+                    Object result = ((JavascriptExecutor) driver).executeAsyncScript(WAIT_SCRIPT, arguments, Math.min(left, MAX_SLICE_MILLIS));
+                    pending = failed(expectations, result);
+                } catch (ScriptTimeoutException e) {
+                    // Script timeout драйвера меньше порции — просто проверяем еще раз до своего срока
+                } catch (JavascriptException e) {
+                    if (!isInterruptedByNavigation(e)) {
+                        throw e;
+                    }
+                    // Скрипт прерван переходом на другую страницу — проверяем заново, когда она загрузится
+                    pause();
+                }
+                if (pending.isEmpty() || System.nanoTime() >= deadline) {
+                    return pending;
+                }
+            }
+        }
+    }
+
+    private static List<Expectation> failed(Expectation[] expectations, Object result) {
+        if (!(result instanceof List<?> indexes)) {
+            return Arrays.asList(expectations);
+        }
+        List<Expectation> failed = new ArrayList<>();
+        for (Object index : indexes) {
+            failed.add(expectations[((Number) index).intValue()]);
+        }
+        return failed;
+    }
+
+    /**
+     * Прерван ли асинхронный скрипт уходом со страницы (такое ожидание повторяется на новой странице).
+     * Решение — по тексту ошибки браузера, без системной информации Selenium.
+     */
+    public static boolean isInterruptedByNavigation(JavascriptException e) {
+        String message = e.getRawMessage();
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        return NAVIGATION_ERRORS.stream().anyMatch(lower::contains);
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(Math.max(50, Configuration.pollingInterval));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
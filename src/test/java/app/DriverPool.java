@@ -0,0 +1,280 @@
+package app;
+
+import com.codeborne.selenide.WebDriverRunner;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Пул "прогретых" браузеров для параллельных UI-тестов.
+ * <p>
+ * Перед тестом поток TestNG берет браузер из пула ({@link #acquire()}), и браузер привязывается к потоку
+ * через {@link WebDriverRunner#setWebDriver(WebDriver)}, поэтому {@code open()}, {@code $()} и т.д.
+ * в этом потоке работают с ним. После теста ({@link #release()}) состояние сбрасывается — лишние окна,
+ * cookies, localStorage/sessionStorage текущего сайта, адрес — и браузер возвращается в пул без перезапуска.
+ * Одновременно выдается не больше {@code pool.size} браузеров; остальные потоки ждут.
+ * <p>
+ * Браузеры пула не должны закрываться тестами ({@code Selenide.closeWebDriver()}): их закрывает
+ * {@link #shutdown()}.
+ * <p>
+ * Настройки ({@link TestConfig}): {@value #POOL_SIZE_KEY} (по умолчанию 1), {@value #HEADLESS_KEY},
+ * {@value #ACQUIRE_TIMEOUT_KEY} (секунды, по умолчанию 300), {@code browser} (chrome/firefox)
+ * и {@code browserSize}. Если запущен {@link CachingProxy}, браузеры ходят через него.
+ */
+public final class DriverPool {
+
+    public static final String POOL_SIZE_KEY = "pool.size";
+    public static final String HEADLESS_KEY = "headless";
+    public static final String ACQUIRE_TIMEOUT_KEY = "pool.acquireTimeout";
+
+    private static DriverPool instance;
+
+    private final int size;
+    private final long acquireTimeoutSeconds;
+    private final Supplier<WebDriver> factory;
+    private final Semaphore leases;
+    private final BlockingQueue<WebDriver> idle = new LinkedBlockingQueue<>();
+    private final Set<WebDriver> all = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<WebDriver> current = new ThreadLocal<>();
+
+    /**
+     * @param size                  Сколько браузеров держать.
+     * @param acquireTimeoutSeconds Сколько ждать свободного браузера.
+     * @param factory               Создание нового браузера.
+     */
+    public DriverPool(int size, long acquireTimeoutSeconds, Supplier<WebDriver> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Размер пула должен быть положительным: " + size);
+        }
+        this.size = size;
+        this.acquireTimeoutSeconds = acquireTimeoutSeconds;
+        this.factory = factory;
+        this.leases = new Semaphore(size, true);
+    }
+
+    /**
+     * Общий пул, настроенный из {@link TestConfig}. Создается при первом обращении.
+     */
+    public static synchronized DriverPool getInstance() {
+        if (instance == null) {
+            instance = new DriverPool(
+                    TestConfig.getInt(POOL_SIZE_KEY, 1),
+                    TestConfig.getLong(ACQUIRE_TIMEOUT_KEY, 300),
+                    DriverPool::createConfiguredDriver
+            );
+            // Браузеры не должны пережить JVM, даже если @AfterSuite не выполнился
+            Runtime.getRuntime().addShutdownHook(new Thread(DriverPool::shutdownInstance, "driver-pool-shutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * Закрывает общий пул, если он был создан.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Заранее запускает все браузеры пула параллельно, чтобы первые тесты не ждали запуска по очереди.
+     * Успешно запущенные браузеры остаются в пуле, даже если другие запустить не удалось.
+     *
+     * @throws IllegalStateException Если хотя бы один браузер не запустился: причина — первая ошибка,
+     *                               остальные добавлены как suppressed.
+     */
+    public void warmUp() {
+        int missing = size - all.size();
+        if (missing <= 0) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(missing,
+                task -> new Thread(task, "driver-pool-warmup-" + counter.getAndIncrement()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(missing);
+            for (int i = 0; i < missing; i++) {
+                futures.add(executor.submit(() -> idle.offer(create())));
+            }
+            IllegalStateException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IllegalStateException("Не удалось запустить браузер пула: " + e.getCause().getMessage(), e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Берет браузер из пула и привязывает его к текущему потоку. Повторный вызов без
+     * {@link #release()} возвращает тот же браузер.
+     *
+     * @throws IllegalStateException Если свободный браузер не появился за {@value #ACQUIRE_TIMEOUT_KEY} секунд.
+     */
+    public WebDriver acquire() {
+        WebDriver driver = current.get();
+        if (driver != null) {
+            return driver;
+        }
+        try {
+            if (!leases.tryAcquire(acquireTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Нет свободного браузера в пуле за " + acquireTimeoutSeconds + " с");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание браузера прервано", e);
+        }
+        try {
+            driver = idle.poll();
+            if (driver == null) {
+                driver = create();
+            }
+        } catch (RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+        current.set(driver);
+        WebDriverRunner.setWebDriver(driver);
+        return driver;
+    }
+
+    /**
+     * Сбрасывает состояние браузера текущего потока и возвращает его в пул.
+     * Если браузер не отвечает, он закрывается, а вместо него позже будет запущен новый.
+     */
+    public void release() {
+        WebDriver driver = current.get();
+        if (driver == null) {
+            return;
+        }
+        current.remove();
+        try {
+            reset(driver);
+            idle.offer(driver);
+        } catch (RuntimeException e) {
+            System.err.println("Браузер не удалось очистить, он будет перезапущен: " + e.getMessage());
+            quit(driver);
+        } finally {
+            leases.release();
+        }
+    }
+
+    /**
+     * Закрывает все браузеры пула.
+     */
+    public void shutdown() {
+        idle.clear();
+        for (WebDriver driver : all) {
+            quit(driver);
+        }
+    }
+
+    private WebDriver create() {
+        WebDriver driver = factory.get();
+        all.add(driver);
+        return driver;
+    }
+
+    private void quit(WebDriver driver) {
+        all.remove(driver);
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка при закрытии браузера: " + e.getMessage());
+        }
+    }
+
+    private static void reset(WebDriver driver) {
+
+        // 1. Закрываем окна и вкладки, открытые тестом
+        List<String> handles = new ArrayList<>(driver.getWindowHandles());
+        for (int i = 1; i < handles.size(); i++) {
+            driver.switchTo().window(handles.get(i));
+            driver.close();
+        }
+        driver.switchTo().window(handles.get(0));
+
+        // 2. Хранилища текущего сайта и cookies (у Chromium — всех сайтов)
+        BrowserState.clear(driver);
+
+        // 3. Пустая страница, чтобы следующий тест начинал с чистого адреса
+        driver.get("about:blank");
+    }
+
+    /**
+     * Браузер по настройкам {@code browser}, {@code browserSize} и {@value #HEADLESS_KEY}.
+     */
+    private static WebDriver createConfiguredDriver() {
+        String browser = TestConfig.get("browser", "chrome");
+        boolean headless = TestConfig.getBoolean(HEADLESS_KEY, false);
+
+        // Локальный прокси со статикой (если запущен). Запросы к localhost браузеры по умолчанию
+        // шлют мимо прокси, поэтому для заглушки приложения это отключаем
+        CachingProxy proxy = CachingProxy.sharedIfStarted();
+
+        WebDriver driver;
+        if ("chrome".equalsIgnoreCase(browser)) {
+            ChromeOptions options = new ChromeOptions();
+            if (headless) {
+                options.addArguments("--headless=new");
+            }
+            if (proxy != null) {
+                options.setProxy(proxy.seleniumProxy());
+                options.addArguments("--proxy-bypass-list=<-loopback>");
+            }
+            driver = new ChromeDriver(options);
+        } else if ("firefox".equalsIgnoreCase(browser)) {
+            FirefoxOptions options = new FirefoxOptions();
+            if (headless) {
+                options.addArguments("-headless");
+            }
+            if (proxy != null) {
+                options.setProxy(proxy.seleniumProxy());
+                options.addPreference("network.proxy.allow_hijacking_localhost", true);
+            }
+            driver = new FirefoxDriver(options);
+        } else {
+            throw new IllegalArgumentException("Браузер не поддерживается пулом: " + browser);
+        }
+
+        String browserSize = TestConfig.get("browserSize");
+        if (browserSize != null && browserSize.contains("x")) {
+            String[] size = browserSize.split("x");
+            driver.manage().window().setSize(new Dimension(Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim())));
+        }
+        return driver;
+    }
+}
@@ -0,0 +1,207 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Длительности тестов из прошлых прогонов: ключ — тест (или строка data provider'а), значение —
+ * сглаженное время в миллисекундах. Хранится в файле {@value #FILE_KEY}
+ * (по умолчанию {@code build/test-history.properties}).
+ * <p>
+ * За прогон время одного ключа суммируется (все вызовы {@code invocationCount}), а при сохранении
+ * усредняется с прошлым значением, чтобы один медленный прогон не ломал расписание. Сохранение
+ * сливает замеры с файлом под блокировкой: параллельные JVM разных шардов не затирают чужие ключи.
+ * <p>
+ * Файл {@value #FILE_KEY} меняется по ходу прогона: шард, закончивший раньше, сохраняет его до старта
+ * другого. Поэтому раскладка по шардам берет оценки из снимка ({@value #SNAPSHOT_KEY},
+ * {@link #snapshotFromConfig()}) — копии истории, которую никто не пишет во время прогона.
+ */
+public final class DurationHistory {
+
+    public static final String FILE_KEY = "schedule.history";
+    public static final String SNAPSHOT_KEY = "schedule.snapshot";
+
+    // Вес нового замера при сглаживании
+    private static final double SMOOTHING = 0.5;
+
+    // null у снимка: он только читается
+    private final Path file;
+    private final Map<String, Double> known;
+    private final Map<String, LongAdder> measured = new ConcurrentHashMap<>();
+
+    private DurationHistory(Path file, Map<String, Double> known) {
+        this.file = file;
+        this.known = known;
+    }
+
+    /**
+     * История из файла {@code file}; если файла нет — пустая.
+     */
+    public static DurationHistory load(Path file) throws IOException {
+        return new DurationHistory(file, read(file));
+    }
+
+    /**
+     * Снимок истории из файла {@code file} только для чтения: {@link #save()} у него запрещен.
+     */
+    public static DurationHistory snapshot(Path file) throws IOException {
+        return new DurationHistory(null, read(file));
+    }
+
+    /**
+     * История из файла по настройке {@value #FILE_KEY}. Ошибка чтения не должна ронять прогон,
+     * поэтому в этом случае история пустая.
+     */
+    public static DurationHistory fromConfig() {
+        Path file = historyFile();
+        try {
+            return load(file);
+        } catch (IOException e) {
+            System.err.println("История длительностей тестов не прочитана: " + e.getMessage());
+            return new DurationHistory(file, Map.of());
+        }
+    }
+
+    /**
+     * Снимок по настройке {@value #SNAPSHOT_KEY} или {@code null}, если снимок не задан, не прочитан
+     * или это сам файл {@value #FILE_KEY}, который шарды пишут во время прогона.
+     */
+    public static DurationHistory snapshotFromConfig() {
+        String value = TestConfig.get(SNAPSHOT_KEY, "");
+        if (value.isEmpty()) {
+            return null;
+        }
+        Path snapshot = Path.of(value);
+        if (snapshot.toAbsolutePath().normalize().equals(historyFile().toAbsolutePath().normalize())) {
+            System.err.println("Снимок истории " + snapshot + " совпадает с " + FILE_KEY
+                    + " и меняется во время прогона: шарды делятся по хэшу имени теста");
+            return null;
+        }
+        if (!Files.isRegularFile(snapshot)) {
+            System.err.println("Снимок истории " + snapshot + " не найден: шарды делятся по хэшу имени теста");
+            return null;
+        }
+        try {
+            return snapshot(snapshot);
+        } catch (IOException e) {
+            System.err.println("Снимок истории " + snapshot + " не прочитан: " + e.getMessage()
+                    + ". Шарды делятся по хэшу имени теста");
+            return null;
+        }
+    }
+
+    private static Path historyFile() {
+        return Path.of(TestConfig.get(FILE_KEY, "build/test-history.properties"));
+    }
+
+    /**
+     * Ключ теста: полное имя метода.
+     */
+    public static String key(Class<?> testClass, String method) {
+        return testClass.getName() + "." + method;
+    }
+
+    /**
+     * Ключ строки data provider'а: ключ метода и параметры строки.
+     */
+    public static String rowKey(String methodKey, Object[] parameters) {
+        return methodKey + Arrays.stream(parameters).map(String::valueOf).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    /**
+     * Время ключа по прошлым прогонам (мс) или {@code null}, если ключ еще не встречался.
+     */
+    public Double estimate(String key) {
+        return known.get(key);
+    }
+
+    /**
+     * Среднее время по всем известным ключам с префиксом (мс) — оценка для новых тестов.
+     */
+    public double average(String prefix, double defaultMillis) {
+        return known.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .mapToDouble(Map.Entry::getValue)
+                .average()
+                .orElse(defaultMillis);
+    }
+
+    /**
+     * Добавляет замер к ключу текущего прогона.
+     */
+    public void record(String key, long millis) {
+        measured.computeIfAbsent(key, k -> new LongAdder()).add(Math.max(0, millis));
+    }
+
+    /**
+     * Сливает замеры прогона с файлом истории.
+     *
+     * @throws IllegalStateException Если это снимок ({@link #snapshot(Path)}).
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("Снимок истории длительностей только для чтения");
+        }
+        if (measured.isEmpty()) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        try (FileChannel lockChannel = FileChannel.open(parent.resolve(file.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+
+            // 1. Перечитываем файл: другой шард мог записать его после нашего старта
+            Map<String, Double> merged = read(file);
+
+            // 2. Сглаживаем замеры этого прогона с прошлыми значениями
+            measured.forEach((key, total) -> {
+                double millis = total.sum();
+                Double previous = merged.get(key);
+                merged.put(key, previous == null ? millis : previous * (1 - SMOOTHING) + millis * SMOOTHING);
+            });
+
+            // 3. Пишем через временный файл, чтобы читатели не увидели недописанную историю
+            Properties properties = new Properties();
+            merged.forEach((key, millis) -> properties.setProperty(key, String.valueOf(Math.round(millis))));
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "app.DurationHistory, ms");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        measured.clear();
+    }
+
+    private static Map<String, Double> read(Path file) throws IOException {
+        Map<String, Double> values = new ConcurrentHashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return values;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                values.put(key, Double.parseDouble(properties.getProperty(key)));
+            } catch (NumberFormatException e) {
+                // Испорченная строка — тест просто считается новым
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,310 @@
+package app;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Планировщик тестов по истории длительностей ({@link DurationHistory}).
+ * <p>
+ * Как {@link IMethodInterceptor} ставит самые долгие тесты первыми, чтобы при параллельном запуске
+ * медленные тесты не оказались в хвосте прогона. Как слушатель — записывает время каждого теста
+ * (и каждой строки data provider'а) и после набора сохраняет историю.
+ * <p>
+ * С настройкой {@value #SHARD_KEY}{@code =i/n} (i от 1 до n) прогон делится на n шардов для разных
+ * JVM или машин: тесты раскладываются жадно, самый долгий — в наименее загруженный шард (LPT),
+ * и выполняются только тесты шарда i. Методы с data provider'ом есть в каждом шарде,
+ * а делятся их строки — через {@link #rowsForShard(Class, String, List)}.
+ * <p>
+ * Шарды не пересекаются и вместе покрывают все тесты, только если все JVM раскладывают по одним
+ * оценкам. Файл истории для этого не годится: его дописывают шарды, закончившие раньше. Поэтому
+ * раскладка берет оценки из снимка истории ({@value DurationHistory#SNAPSHOT_KEY}), который во время
+ * прогона никто не пишет (например, история прошлого прогона, скопированная на все машины). Без снимка
+ * тесты делятся по стабильному хэшу имени: равномерно по числу, но без учета длительностей.
+ * <p>
+ * Подключается через {@code META-INF/services/org.testng.ITestNGListener};
+ * отключается настройкой {@value #ENABLED_KEY}{@code =false}.
+ */
+public class DurationScheduler implements IMethodInterceptor, ITestListener, ISuiteListener {
+
+    public static final String SHARD_KEY = "shard";
+    public static final String ENABLED_KEY = "schedule.enabled";
+
+    // Оценка для тестов без истории, если истории нет совсем
+    private static final double DEFAULT_MILLIS = 1000;
+
+    private static DurationHistory history;
+    private static DurationHistory snapshot;
+    private static boolean snapshotLoaded;
+
+    /**
+     * Номер шарда и число шардов.
+     *
+     * @param index От 1 до {@code count}.
+     */
+    public record Shard(int index, int count) {
+
+        public static final Shard ALL = new Shard(1, 1);
+
+        public Shard {
+            if (count < 1 || index < 1 || index > count) {
+                throw new IllegalArgumentException("Некорректный шард " + index + "/" + count + ": нужен формат i/n, 1 <= i <= n");
+            }
+        }
+
+        /**
+         * Шард из строки {@code i/n}; пустая строка — все тесты.
+         */
+        public static Shard parse(String value) {
+            if (value == null || value.isBlank()) {
+                return ALL;
+            }
+            String[] parts = value.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Некорректный шард '" + value + "': нужен формат i/n");
+            }
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+
+        public static Shard fromConfig() {
+            return parse(TestConfig.get(SHARD_KEY));
+        }
+    }
+
+    /**
+     * Общая история прогона: читается один раз на JVM.
+     */
+    public static synchronized DurationHistory history() {
+        if (history == null) {
+            history = DurationHistory.fromConfig();
+        }
+        return history;
+    }
+
+    /**
+     * Снимок истории для раскладки по шардам ({@link DurationHistory#snapshotFromConfig()}): читается
+     * один раз на JVM; {@code null} — делить по хэшу.
+     */
+    public static synchronized DurationHistory snapshot() {
+        if (!snapshotLoaded) {
+            snapshot = DurationHistory.snapshotFromConfig();
+            snapshotLoaded = true;
+        }
+        return snapshot;
+    }
+
+    public static boolean isEnabled() {
+        return TestConfig.getBoolean(ENABLED_KEY, true);
+    }
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        Shard shard = Shard.fromConfig();
+        if (!isEnabled() || (methods.size() < 2 && shard.count() == 1)) {
+            return methods;
+        }
+        // Делим по снимку, общему для всех шардов; без шардов и без снимка — порядок по своей истории
+        DurationHistory snapshot = shard.count() > 1 ? snapshot() : null;
+        DurationHistory history = snapshot != null ? snapshot : history();
+
+        // 1. Оценки по истории; для новых тестов — среднее по известным тестам этого набора
+        double knownTotal = 0;
+        int knownCount = 0;
+        for (IMethodInstance instance : methods) {
+            Double estimate = history.estimate(key(instance.getMethod()));
+            if (estimate != null) {
+                knownTotal += estimate;
+                knownCount++;
+            }
+        }
+        double unknown = knownCount == 0 ? DEFAULT_MILLIS : knownTotal / knownCount;
+        List<Weighted<IMethodInstance>> weighted = new ArrayList<>();
+        for (IMethodInstance instance : methods) {
+            ITestNGMethod method = instance.getMethod();
+            Double estimate = history.estimate(key(method));
+            double millis = estimate != null ? estimate : unknown * Math.max(1, method.getInvocationCount());
+            weighted.add(new Weighted<>(instance, key(method), millis));
+        }
+
+        // 2. Шард: строки data provider'а делятся внутри метода, поэтому такие методы остаются во всех шардах
+        List<Weighted<IMethodInstance>> own;
+        if (shard.count() == 1) {
+            own = weighted;
+        } else {
+            List<Weighted<IMethodInstance>> regular = new ArrayList<>();
+            List<Weighted<IMethodInstance>> dataDriven = new ArrayList<>();
+            for (Weighted<IMethodInstance> item : weighted) {
+                (isDataDriven(item.item().getMethod()) ? dataDriven : regular).add(item);
+            }
+            double[] initialLoad = new double[shard.count()];
+            for (Weighted<IMethodInstance> item : dataDriven) {
+                for (int i = 0; i < initialLoad.length; i++) {
+                    initialLoad[i] += item.millis() / shard.count();
+                }
+            }
+            own = snapshot != null ? assign(regular, shard, initialLoad) : byHash(regular, shard);
+            own.addAll(dataDriven);
+        }
+
+        // 3. Самые долгие — первыми
+        own.sort(LONGEST_FIRST);
+        List<IMethodInstance> result = new ArrayList<>(own.size());
+        for (Weighted<IMethodInstance> item : own) {
+            result.add(item.item());
+        }
+        if (shard.count() > 1) {
+            System.out.println("Шард " + shard.index() + "/" + shard.count() + ": " + result.size()
+                    + " из " + methods.size() + " тестов (" + context.getName() + ")");
+        }
+        return result;
+    }
+
+    /**
+     * Строки data provider'а для текущего шарда ({@value #SHARD_KEY}), самые долгие по истории — первыми.
+     * Ключ строки в истории — метод теста и строковое представление параметра.
+     *
+     * @param testClass Класс теста.
+     * @param method    Имя тестового метода, который получает эти строки.
+     * @param rows      Все строки; каждая — единственный параметр теста.
+     */
+    public static <T> List<T> rowsForShard(Class<?> testClass, String method, List<T> rows) {
+        if (!isEnabled()) {
+            return rows;
+        }
+        Shard shard = Shard.fromConfig();
+        return rowsForShard(testClass, method, rows, shard, shard.count() > 1 ? snapshot() : history());
+    }
+
+    /**
+     * Строки data provider'а для шарда {@code shard}, самые долгие по {@code history} — первыми.
+     * Результат зависит только от строк, шарда и {@code history}: при одной и той же истории шарды
+     * не пересекаются и вместе покрывают все строки.
+     *
+     * @param history Оценки для раскладки LPT; {@code null} — делить по хэшу ключа строки
+     *                (порядок внутри шарда — по истории {@link #history()}).
+     */
+    public static <T> List<T> rowsForShard(Class<?> testClass, String method, List<T> rows, Shard shard,
+                                           DurationHistory history) {
+        boolean hashSplit = history == null;
+        if (hashSplit) {
+            history = history();
+        }
+        String methodKey = DurationHistory.key(testClass, method);
+        double unknown = history.average(methodKey + "[", DEFAULT_MILLIS);
+
+        List<Weighted<T>> weighted = new ArrayList<>();
+        for (T row : rows) {
+            String rowKey = DurationHistory.rowKey(methodKey, new Object[]{row});
+            Double estimate = history.estimate(rowKey);
+            weighted.add(new Weighted<>(row, rowKey, estimate != null ? estimate : unknown));
+        }
+        List<Weighted<T>> own = hashSplit ? byHash(weighted, shard) : assign(weighted, shard, new double[shard.count()]);
+        own.sort(LONGEST_FIRST);
+        return own.stream().map(Weighted::item).toList();
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        record(result);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        record(result);
+    }
+
+    @Override
+    public void onFinish(ISuite suite) {
+        try {
+            history().save();
+        } catch (IOException e) {
+            System.err.println("История длительностей тестов не сохранена: " + e.getMessage());
+        }
+    }
+
+    private static void record(ITestResult result) {
+        long millis = result.getEndMillis() - result.getStartMillis();
+        String methodKey = key(result.getMethod());
+        history().record(methodKey, millis);
+        Object[] parameters = result.getParameters();
+        if (parameters != null && parameters.length > 0) {
+            history().record(DurationHistory.rowKey(methodKey, parameters), millis);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Раскладка
+    // ----------------------------------------------------------------------------------
+
+    private record Weighted<T>(T item, String key, double millis) {
+    }
+
+    private static final Comparator<Weighted<?>> LONGEST_FIRST = Comparator
+            .comparingDouble((Weighted<?> weighted) -> weighted.millis()).reversed()
+            .thenComparing(Weighted::key);
+
+    /**
+     * LPT: элементы по убыванию времени, каждый — в наименее загруженный шард (при равенстве — в меньший номер).
+     * Возвращает элементы шарда {@code shard}.
+     */
+    private static <T> List<Weighted<T>> assign(List<Weighted<T>> items, Shard shard, double[] initialLoad) {
+        List<Weighted<T>> sorted = new ArrayList<>(items);
+        sorted.sort(LONGEST_FIRST);
+        if (shard.count() == 1) {
+            return sorted;
+        }
+
+        PriorityQueue<double[]> loads = new PriorityQueue<>(
+                Comparator.<double[]>comparingDouble(load -> load[0]).thenComparingDouble(load -> load[1]));
+        for (int i = 0; i < shard.count(); i++) {
+            loads.add(new double[]{initialLoad[i], i});
+        }
+        List<Weighted<T>> own = new ArrayList<>();
+        for (Weighted<T> item : sorted) {
+            double[] lightest = loads.poll();
+            if ((int) lightest[1] == shard.index() - 1) {
+                own.add(item);
+            }
+            lightest[0] += item.millis();
+            loads.add(lightest);
+        }
+        return own;
+    }
+
+    /**
+     * Элементы шарда {@code shard} по хэшу ключа: {@link String#hashCode()} одинаков во всех JVM,
+     * поэтому раскладка не зависит от истории.
+     */
+    private static <T> List<Weighted<T>> byHash(List<Weighted<T>> items, Shard shard) {
+        List<Weighted<T>> own = new ArrayList<>();
+        for (Weighted<T> item : items) {
+            if (Math.floorMod(item.key().hashCode(), shard.count()) == shard.index() - 1) {
+                own.add(item);
+            }
+        }
+        return own;
+    }
+
+    private static String key(ITestNGMethod method) {
+        return DurationHistory.key(method.getRealClass(), method.getMethodName());
+    }
+
+    private static boolean isDataDriven(ITestNGMethod method) {
+        Method javaMethod = method.getConstructorOrMethod().getMethod();
+        Test test = javaMethod == null ? null : javaMethod.getAnnotation(Test.class);
+        return test != null && !test.dataProvider().isEmpty();
+    }
+}
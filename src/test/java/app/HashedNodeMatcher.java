@@ -0,0 +1,144 @@
+package app;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xmlunit.diff.DefaultNodeMatcher;
+import org.xmlunit.diff.ElementSelectors;
+import org.xmlunit.diff.NodeMatcher;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NodeMatcher}, сопоставляющий соседние узлы через хэш-таблицу канонических хэшей поддеревьев
+ * ({@link CanonicalHash}) вместо попарного перебора.
+ * <p>
+ * Равные поддеревья находятся за O(n) на родителя. Только оставшиеся без пары узлы передаются
+ * запасному сопоставителю (по умолчанию {@code DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes)}),
+ * а квадратичный перебор идет лишь по отличающимся узлам.
+ * <p>
+ * Сопоставление эквивалентно обычному режиму (равные документы равны, отличающиеся — отличаются),
+ * но пары могут быть другими: равные поддеревья связываются первыми, и при повторяющихся соседях
+ * запасной сопоставитель получает другой остаток. Поэтому список отличий может отличаться от
+ * {@code DefaultNodeMatcher} составом пар и путями.
+ * <p>
+ * Хэши кэшируются по узлу, поэтому экземпляр рассчитан на одно сравнение.
+ */
+public class HashedNodeMatcher implements NodeMatcher {
+
+    private final NodeMatcher fallback;
+    private final Map<Node, Long> hashes = new IdentityHashMap<>();
+
+    public HashedNodeMatcher() {
+        this(new DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes));
+    }
+
+    /**
+     * @param fallback Сопоставитель для узлов, не нашедших пару по хэшу.
+     */
+    public HashedNodeMatcher(NodeMatcher fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Iterable<Map.Entry<Node, Node>> match(Iterable<Node> controlNodes, Iterable<Node> testNodes) {
+        List<Map.Entry<Node, Node>> matches = new ArrayList<>();
+
+        // 1. Раскладываем Control по хэшам
+        Map<Long, Deque<Node>> controlByHash = new HashMap<>();
+        List<Node> controls = new ArrayList<>();
+        for (Node control : controlNodes) {
+            controls.add(control);
+            controlByHash.computeIfAbsent(hash(control), h -> new ArrayDeque<>()).add(control);
+        }
+
+        // 2. Ищем для каждого узла Test равное поддерево
+        Map<Node, Boolean> matchedControls = new IdentityHashMap<>();
+        List<Node> unmatchedTests = new ArrayList<>();
+        for (Node test : testNodes) {
+            Deque<Node> candidates = controlByHash.get(hash(test));
+            Node control = candidates == null ? null : candidates.poll();
+            if (control != null) {
+                matchedControls.put(control, Boolean.TRUE);
+                matches.add(new AbstractMap.SimpleImmutableEntry<>(control, test));
+            } else {
+                unmatchedTests.add(test);
+            }
+        }
+
+        // 3. Остаток — запасному сопоставителю
+        if (!unmatchedTests.isEmpty() && matchedControls.size() < controls.size()) {
+            List<Node> unmatchedControls = new ArrayList<>();
+            for (Node control : controls) {
+                if (!matchedControls.containsKey(control)) {
+                    unmatchedControls.add(control);
+                }
+            }
+            for (Map.Entry<Node, Node> entry : fallback.match(unmatchedControls, unmatchedTests)) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Канонический хэш поддерева. Правила те же, что у {@link StreamingXmlComparator}: текст элемента —
+     * склейка обрезанных текстовых узлов, дети — только элементы, порядок не важен.
+     */
+    private long hash(Node node) {
+        Long cached = hashes.get(node);
+        if (cached != null) {
+            return cached;
+        }
+
+        long hash;
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE: {
+                long attributesSum = 0;
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attr = attributes.item(i);
+                    attributesSum += CanonicalHash.attribute(attr.getNodeName(), attr.getNodeValue());
+                }
+
+                StringBuilder text = null;
+                long childrenSum = 0;
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    short type = child.getNodeType();
+                    if (type == Node.ELEMENT_NODE) {
+                        childrenSum += CanonicalHash.child(hash(child));
+                    } else if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                        String value = child.getNodeValue().trim();
+                        if (!value.isEmpty()) {
+                            if (text == null) {
+                                text = new StringBuilder();
+                            } else {
+                                text.append(CanonicalHash.TEXT_NODE_SEPARATOR);
+                            }
+                            text.append(value);
+                        }
+                    }
+                }
+                hash = CanonicalHash.element(node.getNodeName(), attributesSum,
+                        text == null ? null : text.toString(), childrenSum);
+                break;
+            }
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                hash = CanonicalHash.text(node.getNodeValue().trim());
+                break;
+            default:
+                hash = CanonicalHash.mix(node.getNodeType() + CanonicalHash.text(node.getNodeValue()));
+                break;
+        }
+
+        hashes.put(node, hash);
+        return hash;
+    }
+}
@@ -1,26 +1,24 @@
 package app;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import org.w3c.dom.Node;
 import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.builder.Input;
 import org.xmlunit.diff.*;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class Helpers {
 
     /**
      * Читает XML-файл из тестовых ресурсов, преобразует его в JSON и возвращает результат в виде строки.
+     * Ресурс может быть сжат gzip или zstd: формат определяется по первым байтам.
      *
      * @param resourcePath Путь к файлу в ресурсах (например, "xml/data.xml").
      * @return JSON-строка, форматированная для удобного чтения.
@@ -28,88 +26,329 @@ public class Helpers {
      */
     public static String convertXmlFileToJson(String resourcePath) throws IOException {
 
-        // 1. Находим файл в ресурсах с помощью ClassLoader
-        // Это надежный способ, который работает независимо от того, как запущен тест (IDE, Gradle и т.д.)
-        ClassLoader classLoader = Helpers.class.getClassLoader();
-        URL resourceUrl = classLoader.getResource(resourcePath);
+        // 1-2. Открываем ресурс как поток байтов (работает и из JAR, крупные файлы отображаются в память)
+        // и читаем его общим маппером в универсальный узел JSON (JsonNode)
+        JsonNode jsonNode;
+        try (Metrics.Timer ignored = Metrics.start("xml.parse");
+             InputStream in = Resources.openStream(resourcePath)) {
+            jsonNode = Mappers.XML_TREE_READER.readTree(in);
+        }
 
-        if (resourceUrl == null) {
-            throw new IOException("Файл не найден в ресурсах: " + resourcePath);
+        // 3. Преобразуем JsonNode обратно в форматированную JSON-строку
+        // Общий writer с форматированием (как writerWithDefaultPrettyPrinter())
+        try (Metrics.Timer ignored = Metrics.start("xml.toJson")) {
+            return Mappers.PRETTY_JSON_WRITER.writeValueAsString(jsonNode);
         }
+    }
 
-        File xmlFile = new File(resourceUrl.getFile());
+    /**
+     * Потоковый вариант {@link #convertXmlFileToJson(String)}: JSON пишется прямо в {@code out}
+     * без промежуточного дерева и строки. Формат результата тот же. Поток {@code out} не закрывается.
+     *
+     * @param resourcePath Путь к файлу в ресурсах (например, "xml/data.xml").
+     * @param out          Куда писать JSON (UTF-8).
+     * @throws IOException Если файл не найден или произошла ошибка при чтении/преобразовании.
+     */
+    public static void convertXmlFileToJson(String resourcePath, OutputStream out) throws IOException {
+        try (Metrics.Timer ignored = Metrics.start("xml.toJson.stream")) {
+            new StreamingXmlToJsonConverter(true).convert(Resources.source(resourcePath), out);
+        }
+    }
 
-        // 2. Создаем маппер для XML
-        XmlMapper xmlMapper = new XmlMapper();
+    /**
+     * Потоковый вариант {@link #convertXmlFileToJson(String)}, записывающий JSON в файл {@code target}.
+     */
+    public static void convertXmlFileToJson(String resourcePath, Path target) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            convertXmlFileToJson(resourcePath, out);
+        }
+    }
 
-        // Читаем XML-файл и преобразуем его в универсальный узел JSON (JsonNode)
-        JsonNode jsonNode = xmlMapper.readTree(xmlFile);
+    public static List<String> compareUnorderedXml(String controlXmlPath, String testXmlPath) throws IOException {
+        return compareUnorderedXml(controlXmlPath, testXmlPath, NodeMatchStrategy.BY_NAME_AND_ALL_ATTRIBUTES);
+    }
 
-        // 3. Создаем стандартный маппер для JSON
-        ObjectMapper jsonMapper = new ObjectMapper();
+    /**
+     * Сравнивает два XML из ресурсов без учета порядка элементов.
+     * Ресурсы могут быть сжаты gzip или zstd и распаковываются на лету ({@link Compression}).
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @param strategy       Способ сопоставления соседних узлов. Для родителей с большим числом
+     *                       однотипных детей используйте {@link NodeMatchStrategy#HASHED}.
+     * @return Список описаний отличий (не больше лимита {@value XmlCompareOptions#MAX_DIFFERENCES_PROPERTY}).
+     */
+    public static List<String> compareUnorderedXml(String controlXmlPath, String testXmlPath, NodeMatchStrategy strategy) throws IOException {
+        return compareUnorderedXmlReport(controlXmlPath, testXmlPath, XmlCompareOptions.defaults().withStrategy(strategy))
+                .format();
+    }
 
-        // Преобразуем JsonNode обратно в форматированную JSON-строку
-        // writerWithDefaultPrettyPrinter() делает JSON красиво отформатированным
-        return jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonNode);
+    /**
+     * Сравнивает два XML из ресурсов без учета порядка элементов и возвращает отличия в структурном виде.
+     * Сравнение останавливается, как только собрано {@link XmlCompareOptions#maxDifferences()} отличий.
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @param options        Настройки сравнения.
+     * @return Отчет с отличиями; тексты сообщений собираются только при выводе.
+     */
+    public static DifferenceReport compareUnorderedXmlReport(String controlXmlPath, String testXmlPath,
+                                                             XmlCompareOptions options) throws IOException {
+
+        // 1. Открываем оба файла как потоки байтов: парсер DOM читает их напрямую, без промежуточных строк
+        try (InputStream controlXml = Resources.openStream(controlXmlPath);
+             InputStream testXml = Resources.openStream(testXmlPath)) {
+            return diff(controlXml, testXml, options, new CustomDifferenceCollector(options.newReport()));
+        }
+    }
+
+    /**
+     * Сравнивает два XML-файла на диске без учета порядка элементов.
+     *
+     * @param controlXml Эталонный файл.
+     * @param testXml    Проверяемый файл.
+     * @param strategy   Способ сопоставления соседних узлов.
+     * @return Список описаний отличий.
+     * @throws IOException Если один из файлов не найден.
+     */
+    public static List<String> compareUnorderedXml(Path controlXml, Path testXml, NodeMatchStrategy strategy) throws IOException {
+        return compareUnorderedXmlReport(controlXml, testXml, XmlCompareOptions.defaults().withStrategy(strategy))
+                .format();
     }
 
-    public static List<String> compareUnorderedXml(String controlXmlPath, String testXmlPath) throws IOException, URISyntaxException {
+    /**
+     * Сравнивает два XML-файла на диске (см. {@link #compareUnorderedXmlReport(String, String, XmlCompareOptions)}).
+     */
+    public static DifferenceReport compareUnorderedXmlReport(Path controlXml, Path testXml,
+                                                             XmlCompareOptions options) throws IOException {
+        requireFile(controlXml);
+        requireFile(testXml);
+        try (InputStream control = Compression.open(controlXml);
+             InputStream test = Compression.open(testXml)) {
+            return diff(control, test, options, new CustomDifferenceCollector(options.newReport()));
+        }
+    }
 
-        // 1. Читаем оба файла полностью в строки
-        String controlXmlContent = getResourceContentAsString(controlXmlPath);
-        String testXmlContent = getResourceContentAsString(testXmlPath);
+    // Общая часть сравнения: control и test — любой источник, который понимает DiffBuilder (поток, файл и т.д.).
+    // Коллектор задается снаружи, например с пересчетом XPath для фрагментов документа
+    static DifferenceReport diff(Object control, Object test, XmlCompareOptions options, CustomDifferenceCollector collector) {
 
-        CustomDifferenceCollector collector = new CustomDifferenceCollector();
+        // 2. Разбираем оба документа заранее, а не внутри DiffBuilder, чтобы время разбора и сравнения замерялось отдельно
+        Node controlNode;
+        Node testNode;
+        try (Metrics.Timer ignored = Metrics.start("xml.parse")) {
+            controlNode = toNode(control);
+            testNode = toNode(test);
+        }
 
-        // 2. Настройка DiffBuilder для сравнения строк:
-        Diff diff = DiffBuilder
-                .compare(controlXmlContent) // <-- Передаем строку
-                .withTest(testXmlContent)   // <-- Передаем строку
-                // Игнорируем порядок элементов, сопоставляя их по имени и атрибутам
-                .withNodeMatcher(new DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes))
+        // 3. Настройка DiffBuilder:
+        XmlRules rules = options.rules();
+        DiffBuilder builder = DiffBuilder
+                .compare(controlNode)
+                .withTest(testNode)
+                // Игнорируем порядок элементов, сопоставляя их выбранной стратегией
+                .withNodeMatcher(options.strategy().createMatcher(rules))
                 //.withNodeMatcher(new DefaultNodeMatcher(ElementSelectors.byNameAndAttributes("name")))
-                // Применяем цепочку DifferenceEvaluator'ов
-                .withDifferenceEvaluator(
-                        collector // Используем только ваш CustomDifferenceCollector
-                )
-                .ignoreWhitespace() // Игнорируем пробелы
-                .build();
+                // Применяем цепочку DifferenceEvaluator'ов: сначала правила значений, затем сборщик отличий
+                .withDifferenceEvaluator(DifferenceEvaluators.chain(
+                        new DefaultDifferenceEvaluator(rules),
+                        collector
+                ))
+                // Останавливаем обход, как только лимит отличий исчерпан
+                .withComparisonController(difference -> collector.getReport().isLimitReached())
+                .ignoreWhitespace(); // Игнорируем пробелы
+        if (!rules.isEmpty()) {
+            // Игнорируемые узлы и атрибуты не сравниваются вовсе, а не отсеиваются после сравнения
+            builder = builder
+                    .withNodeFilter(node -> NodeFilters.Default.test(node) && !rules.ignores(node))
+                    .withAttributeFilter(attr -> !rules.ignores(attr));
+        }
 
-        // 3. Выполняем сравнение для активации коллектора
-        diff.getDifferences().forEach(d -> {});
+        // 4. Сравнение: build() обходит оба дерева, и коллектор получает отличия по ходу
+        try (Metrics.Timer ignored = Metrics.start("xml.diff")) {
+            builder.build();
+        }
+
+        return collector.getReport();
+    }
 
-        return collector.getDifferences();
+    private static Node toNode(Object xml) {
+        // Документы уже в DOM, поэтому DiffBuilder сам ничего не разбирает и фабрика DOM ему не нужна
+        return xml instanceof Node ? (Node) xml : Mappers.parseDocument(Input.from(xml).build());
     }
 
-    // Вспомогательный метод для получения xml из ресурсов
-        private static String getResourceContentAsString(String resourcePath) throws IOException, URISyntaxException {
-        ClassLoader classLoader = Helpers.class.getClassLoader();
-        java.net.URL resourceUrl = classLoader.getResource(resourcePath);
+    /**
+     * Потоковый вариант {@link #compareUnorderedXml(String, String)} для очень больших файлов.
+     * Документы не строятся в DOM: память линейна по числу элементов, но в разы меньше DOM
+     * (см. {@link StreamingXmlComparator}). Правила сравнения — из {@value XmlRules#FILE_KEY}.
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @return Список отличий в том же формате, что и у {@link #compareUnorderedXml(String, String)}.
+     * @throws IOException Если файл не найден или не является корректным XML.
+     */
+    public static List<String> compareUnorderedXmlStreaming(String controlXmlPath, String testXmlPath) throws IOException {
+        return new StreamingXmlComparator(XmlRules.fromConfig()).compare(
+                Resources.source(controlXmlPath),
+                Resources.source(testXmlPath)
+        );
+    }
 
-        if (resourceUrl == null) {
-            throw new IOException("Файл не найден в ресурсах: " + resourcePath);
+    /**
+     * Потоковое сравнение (см. {@link #compareUnorderedXmlStreaming(String, String)}) с отчетом:
+     * с {@link XmlCompareOptions#withSink(DifferenceSink)} отличия пишутся на диск по мере нахождения.
+     * Стратегия сопоставления из настроек здесь не используется.
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @param options        Лимит отличий, приемник и правила.
+     * @return Отчет с отличиями.
+     */
+    public static DifferenceReport compareUnorderedXmlStreamingReport(String controlXmlPath, String testXmlPath,
+                                                                      XmlCompareOptions options) throws IOException {
+        return new StreamingXmlComparator(options.rules()).compare(
+                Resources.source(controlXmlPath),
+                Resources.source(testXmlPath),
+                options.newReport()
+        );
+    }
+
+    /**
+     * Потоковое сравнение двух XML-файлов на диске (см. {@link #compareUnorderedXmlStreaming(String, String)}).
+     */
+    public static List<String> compareUnorderedXmlStreaming(Path controlXml, Path testXml) throws IOException {
+        requireFile(controlXml);
+        requireFile(testXml);
+        return new StreamingXmlComparator(XmlRules.fromConfig()).compare(
+                () -> Compression.open(controlXml),
+                () -> Compression.open(testXml)
+        );
+    }
+
+    /**
+     * Потоковое сравнение с эталоном через постоянный индекс ({@link ControlIndex}): пока файл эталона
+     * не меняется, он не разбирается повторно. Формат результата тот же, что у
+     * {@link #compareUnorderedXmlStreaming(String, String)}. Индекс хранит хэши без правил, поэтому
+     * с правилами {@value XmlRules#FILE_KEY} сравнение идет обычным потоковым способом.
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @return Список отличий.
+     * @throws IOException Если файл не найден, не является корректным XML или индекс нельзя записать.
+     */
+    public static List<String> compareUnorderedXmlIndexed(String controlXmlPath, String testXmlPath) throws IOException {
+        if (!XmlRules.fromConfig().isEmpty()) {
+            return compareUnorderedXmlStreaming(controlXmlPath, testXmlPath);
         }
+        return new StreamingXmlComparator().compare(
+                ControlIndex.of(Resources.source(controlXmlPath)),
+                Resources.source(testXmlPath),
+                XmlCompareOptions.defaults().maxDifferences()
+        ).format();
+    }
 
-        // 🛑 ИСПОЛЬЗУЕМ java.nio.file для надежного чтения файла
-        // Примечание: Это требует преобразования URL в Path, что иногда может
-        // давать сбои в специфических средах (например, внутри JAR-файлов),
-        // но должно надежно работать в IDE.
-        java.nio.file.Path path = java.nio.file.Paths.get(resourceUrl.toURI());
+    /**
+     * Сравнивает два JSON из ресурсов без учета порядка полей и элементов массивов
+     * (см. {@link JsonTreeComparator}).
+     *
+     * @param controlJsonPath Путь к эталонному файлу в ресурсах.
+     * @param testJsonPath    Путь к проверяемому файлу в ресурсах.
+     * @return Список отличий в том же формате, что и у {@link #compareUnorderedXml(String, String)}.
+     */
+    public static List<String> compareUnorderedJson(String controlJsonPath, String testJsonPath) throws IOException {
+        return compareUnorderedJsonReport(Resources.source(controlJsonPath), Resources.source(testJsonPath),
+                XmlCompareOptions.defaults()).format();
+    }
+
+    /**
+     * Сравнивает два JSON без учета порядка (см. {@link #compareUnorderedJson(String, String)}).
+     * Из настроек используются лимит отличий и приемник.
+     */
+    public static DifferenceReport compareUnorderedJsonReport(XmlSource controlJson, XmlSource testJson,
+                                                              XmlCompareOptions options) throws IOException {
+        return new JsonTreeComparator().compare(
+                JsonTreeComparator.readJson(controlJson),
+                JsonTreeComparator.readJson(testJson),
+                options.newReport()
+        );
+    }
 
-        // Читаем все байты и преобразуем их в строку с кодировкой UTF-8
-        byte[] fileBytes = java.nio.file.Files.readAllBytes(path);
-        return new String(fileBytes, java.nio.charset.StandardCharsets.UTF_8);
+    /**
+     * Сравнивает XML-эталон с JSON: XML потоково преобразуется в дерево JSON тем же способом,
+     * что и в {@link #convertXmlFileToJson(String, OutputStream)}, и сравнивается без учета порядка
+     * и типов скаляров ({@link JsonTreeComparator#crossFormat()}).
+     *
+     * @param controlXmlPath Путь к эталонному XML в ресурсах.
+     * @param testJsonPath   Путь к проверяемому JSON в ресурсах.
+     * @return Список отличий; пути — по полям JSON, без имени корневого элемента XML.
+     */
+    public static List<String> compareXmlToJson(String controlXmlPath, String testJsonPath) throws IOException {
+        return compareXmlToJsonReport(Resources.source(controlXmlPath), Resources.source(testJsonPath),
+                XmlCompareOptions.defaults()).format();
+    }
+
+    /**
+     * Сравнивает XML-эталон с JSON (см. {@link #compareXmlToJson(String, String)}).
+     * Из настроек используются лимит отличий и приемник.
+     */
+    public static DifferenceReport compareXmlToJsonReport(XmlSource controlXml, XmlSource testJson,
+                                                          XmlCompareOptions options) throws IOException {
+        return JsonTreeComparator.crossFormat().compare(
+                JsonTreeComparator.readXml(controlXml),
+                JsonTreeComparator.readJson(testJson),
+                options.newReport()
+        );
+    }
+
+    /**
+     * Параллельное сравнение большого документа по фрагментам (см. {@link PartitionedXmlComparator}).
+     *
+     * @param controlXmlPath Путь к эталонному файлу в ресурсах.
+     * @param testXmlPath    Путь к проверяемому файлу в ресурсах.
+     * @param splitDepth     Глубина разреза: 1 — дети корня.
+     * @param keyAttribute   Атрибут для сопоставления фрагментов или {@code null}.
+     * @return Список отличий с XPath исходных документов.
+     */
+    public static List<String> compareUnorderedXmlParallel(String controlXmlPath, String testXmlPath,
+                                                           int splitDepth, String keyAttribute) throws IOException {
+        return new PartitionedXmlComparator(splitDepth, keyAttribute).compare(
+                Resources.source(controlXmlPath),
+                Resources.source(testXmlPath)
+        );
+    }
+
+    private static void requireFile(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("Файл не найден: " + path);
+        }
     }
 
     // ----------------------------------------------------------------------------------
     // Внутренний класс для детального сбора и форматирования различий
     // ----------------------------------------------------------------------------------
 
-    private static class CustomDifferenceCollector implements DifferenceEvaluator {
-        private final List<String> differences = new ArrayList<>();
+    static class CustomDifferenceCollector implements DifferenceEvaluator {
+        private final DifferenceReport report;
+        private final UnaryOperator<String> controlXPaths;
+        private final UnaryOperator<String> testXPaths;
+
+        CustomDifferenceCollector(DifferenceReport report) {
+            this(report, UnaryOperator.identity(), UnaryOperator.identity());
+        }
+
+        /**
+         * @param report        Куда складывать отличия.
+         * @param controlXPaths Пересчет XPath узлов Control перед выводом.
+         * @param testXPaths    Пересчет XPath узлов Test перед выводом.
+         */
+        CustomDifferenceCollector(DifferenceReport report, UnaryOperator<String> controlXPaths, UnaryOperator<String> testXPaths) {
+            this.report = report;
+            this.controlXPaths = controlXPaths;
+            this.testXPaths = testXPaths;
+        }
 
-        public List<String> getDifferences() {
-            return differences;
+        public DifferenceReport getReport() {
+            return report;
         }
 
         @Override
@@ -131,148 +370,61 @@ public class Helpers {
                 return outcome;
             }
 
-            String controlPath = comparison.getControlDetails().getXPath();
-            String testPath = comparison.getTestDetails().getXPath();
-            String differenceDescription = "";
+            String controlPath = controlXPaths.apply(comparison.getControlDetails().getXPath());
+            String testPath = testXPaths.apply(comparison.getTestDetails().getXPath());
+            XmlDifference difference;
 
-            // --- ИСПРАВЛЕННАЯ ЛОГИКА ПРОВЕРКИ АТРИБУТОВ ---
-            // Проверяем, относится ли сравнение к атрибуту (по типу узла, который отличается)
+            // Сохраняем только тип, пути и значения — текст сообщения собирается при выводе (XmlDifference.format)
+            // Проверяем, относится ли сравнение к атрибуту (по типу узла, который отличается).
+            // Сюда же попадает ATTR_VALUE: его цель — всегда узел атрибута
             Node controlTarget = comparison.getControlDetails().getTarget();
 
             if (controlTarget != null && controlTarget.getNodeType() == Node.ATTRIBUTE_NODE) {
                 // Отличие атрибута
-                String attrName = controlTarget.getNodeName();
-                differenceDescription = String.format(
-                        "Отличие АТРИБУТА: Путь: %s, Атрибут: '%s', Ожидалось: '%s', Найдено: '%s'",
-                        testPath,
-                        attrName,
-                        comparison.getControlDetails().getValue(),
-                        comparison.getTestDetails().getValue()
-                );
-            } else if (type == ComparisonType.ATTR_VALUE) {
-
-                // --- Сборка полного элемента для Control (Ожидалось) ---
-                Node controlNode = comparison.getControlDetails().getTarget();
-                Node controlElement = controlNode != null ? controlNode.getParentNode() : null;
-                String controlElementFull = formatElementAsString(controlElement);
-
-                // --- Сборка полного элемента для Test (Найдено) ---
-                Node testNode = comparison.getTestDetails().getTarget();
-                Node testElement = testNode != null ? testNode.getParentNode() : null;
-                String testElementFull = formatElementAsString(testElement);
-
-                String attrName = comparison.getControlDetails().getTarget().getNodeName();
-
-                differenceDescription = String.format(
-                        "Отличие ЗНАЧЕНИЯ АТРИБУТА: Путь: %s\n" +
-                                "Атрибут: '%s', Ожидалось: '%s', Найдено: '%s'\n" +
-                                "Ожидаемый элемент: <%s>\n" +
-                                "Найденный элемент: <%s>",
+                difference = XmlDifference.attribute(
+                        controlPath,
                         testPath,
-                        attrName,
-                        comparison.getControlDetails().getValue(),
-                        comparison.getTestDetails().getValue(),
-                        controlElementFull,
-                        testElementFull
+                        controlTarget.getNodeName(),
+                        valueOf(comparison.getControlDetails().getValue()),
+                        valueOf(comparison.getTestDetails().getValue())
                 );
             } else if (type == ComparisonType.TEXT_VALUE) {
                 // Отличие текстового значения элемента
-                differenceDescription = String.format(
-                        "Отличие ЗНАЧЕНИЯ: Путь: %s, Ожидалось: '%s', Найдено: '%s'",
+                difference = XmlDifference.textValue(
+                        controlPath,
                         testPath,
-                        comparison.getControlDetails().getValue(),
-                        comparison.getTestDetails().getValue()
+                        valueOf(comparison.getControlDetails().getValue()),
+                        valueOf(comparison.getTestDetails().getValue())
                 );
             } else if (type == ComparisonType.CHILD_LOOKUP) {
 
-                String pathControl = comparison.getControlDetails().getXPath();
-                String pathTest = comparison.getTestDetails().getXPath();
-
-                // --- 🛑 ИСПРАВЛЕНИЕ: Пытаемся найти наиболее похожий узел для конкретики ---
-
                 Node controlElement = comparison.getControlDetails().getTarget();
                 Node testElement = comparison.getTestDetails().getTarget();
 
-                // Если мы видим, что пути похожи, но сопоставление сломалось,
-                // это намекает на отличие содержимого/атрибутов, а не полное отсутствие.
-
                 if (controlElement != null && testElement != null) {
-                    // Используем DOM, чтобы быстро сравнить атрибуты и понять, в чем разница.
-                    // Если их имена тегов совпадают, но один атрибут отличается,
-                    // мы можем вывести конкретное сообщение.
-
-                    // ВНИМАНИЕ: Здесь нужно применить сложную логику, которая требует
-                    // доступа к DOM-структуре и ручного сравнения атрибутов.
-
-                    // Однако, самый простой и надежный способ — это использовать
-                    // более мягкий NodeMatcher, чтобы дать XMLUnit возможность сделать это за нас.
-
-                    // Поскольку мы не можем легко повторить логику XMLUnit по поиску
-                    // похожего узла, мы должны использовать тот факт, что в вашем случае
-                    // это всегда отличие атрибута!
-
-
                     // Если узел сломался, но он существует в обоих путях (что странно для CHILD_LOOKUP),
                     // то мы предполагаем, что отличие в атрибуте или значении.
-                    differenceDescription = String.format(
-                            "Отличие ЗНАЧЕНИЯ/АТРИБУТА (Сломано сопоставление): Путь: %s\n" +
-                                    "Проверьте, не отличаются ли атрибуты, которые ломают сопоставитель (value)",
-                            pathControl != null ? pathControl : pathTest
-                    );
-
-                } else if (pathControl != null && pathTest == null) {
+                    difference = new XmlDifference(XmlDifference.Kind.BROKEN_MATCH, controlPath, testPath, null, null, null);
+                } else if (controlPath != null && testPath == null) {
                     // Узел отсутствует в Test
-                    differenceDescription = String.format(
-                            "Отличие СТРУКТУРЫ (УЗЕЛ ОТСУТСТВУЕТ в Test): Путь Control: %s",
-                            pathControl
-                    );
-                } else if (pathControl == null && pathTest != null) {
+                    difference = XmlDifference.missing(controlPath);
+                } else if (controlPath == null && testPath != null) {
                     // Узел лишний в Test
-                    differenceDescription = String.format(
-                            "Отличие СТРУКТУРЫ (ЛИШНИЙ УЗЕЛ в Test): Путь Test: %s",
-                            pathTest
-                    );
+                    difference = XmlDifference.extra(testPath);
                 } else {
-                    differenceDescription = String.format(
-                            "Отличие СТРУКТУРЫ (Не удалось сопоставить): Control: %s, Test: %s",
-                            pathControl,
-                            pathTest
-                    );
+                    difference = new XmlDifference(XmlDifference.Kind.UNMATCHED, controlPath, testPath, null, null, null);
                 }
             } else {
-                // Этот else ловит все остальные отличия (например, CHILD_NODELIST_LENGTH)
-                differenceDescription = String.format(
-                        "Отличие СТРУКТУРЫ (%s): Путь Control: %s, Путь Test: %s",
-                        type.getDescription(),
-                        controlPath,
-                        testPath
-                );
+                // Этот else ловит все остальные отличия (например, имя элемента или пространство имен)
+                difference = new XmlDifference(XmlDifference.Kind.OTHER, controlPath, testPath, type.getDescription(), null, null);
             }
 
-            differences.add(differenceDescription);
+            report.add(difference);
             return outcome;
         }
 
-        // Новый вспомогательный метод (добавить в класс Helpers или CustomDifferenceCollector)
-        private static String formatElementAsString(Node elementNode) {
-            if (elementNode == null || elementNode.getNodeType() != Node.ELEMENT_NODE) {
-                return "N/A";
-            }
-
-            StringBuilder sb = new StringBuilder(elementNode.getNodeName());
-
-            // Получаем список атрибутов
-            org.w3c.dom.NamedNodeMap attributes = elementNode.getAttributes();
-            if (attributes != null) {
-                for (int i = 0; i < attributes.getLength(); i++) {
-                    Node attr = attributes.item(i);
-                    sb.append(" ").append(attr.getNodeName())
-                            .append("=\"").append(attr.getNodeValue()).append("\"");
-                }
-            }
-            return sb.toString();
+        private static String valueOf(Object value) {
+            return value == null ? null : String.valueOf(value);
         }
     }
 }
-
-
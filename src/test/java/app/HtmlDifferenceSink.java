@@ -0,0 +1,134 @@
+package app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Отличия в виде HTML-страниц по {@code pageSize} строк ({@code page-00001.html}, ...) и оглавления
+ * {@code index.html} с числом отличий по типам и ссылками на страницы. Одна страница с миллионом строк
+ * не открывается в браузере, а страницы по несколько тысяч — открываются сразу.
+ * <p>
+ * В памяти только открытая страница и счетчики по типам; оглавление пишется при закрытии.
+ */
+public final class HtmlDifferenceSink implements DifferenceSink {
+
+    public static final int DEFAULT_PAGE_SIZE = 5_000;
+
+    private static final String STYLE = "<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+            + "td,th{border:1px solid #ccc;padding:2px 6px;vertical-align:top;text-align:left}"
+            + "td.path{font-family:monospace}</style>";
+
+    private final Path dir;
+    private final int pageSize;
+    private final Map<XmlDifference.Kind, Long> kinds = new EnumMap<>(XmlDifference.Kind.class);
+    private Writer page;
+    private int pages;
+    private long count;
+
+    /**
+     * @param dir      Каталог отчета; создается, если его нет.
+     * @param pageSize Строк на странице.
+     */
+    public HtmlDifferenceSink(Path dir, int pageSize) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным: " + pageSize);
+        }
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void accept(XmlDifference difference) {
+        try {
+            // Новая страница — только когда есть что на нее писать, поэтому у последней нет ссылки "дальше"
+            if (count % pageSize == 0) {
+                if (page != null) {
+                    closePage(true);
+                }
+                openPage();
+            }
+            count++;
+            kinds.merge(difference.kind(), 1L, Long::sum);
+            page.write("<tr><td>" + count + "</td><td>" + difference.kind() + "</td><td class=\"path\">"
+                    + escape(difference.path()) + "</td><td>" + escape(difference.name()) + "</td><td>"
+                    + escape(difference.expected()) + "</td><td>" + escape(difference.found()) + "</td></tr>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Отличие не записано в " + dir, e);
+        }
+    }
+
+    private void openPage() throws IOException {
+        pages++;
+        page = Files.newBufferedWriter(dir.resolve(pageName(pages)), StandardCharsets.UTF_8);
+        page.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Отличия, страница " + pages
+                + "</title>" + STYLE + "</head><body>\n" + navigation(false) + "<table>\n"
+                + "<tr><th>#</th><th>Тип</th><th>Путь</th><th>Атрибут</th><th>Ожидалось</th><th>Найдено</th></tr>\n");
+    }
+
+    private void closePage(boolean hasNext) throws IOException {
+        try (Writer ignored = page) {
+            page.write("</table>\n" + navigation(hasNext) + "</body></html>\n");
+        }
+        page = null;
+    }
+
+    private String navigation(boolean hasNext) {
+        StringBuilder sb = new StringBuilder("<p><a href=\"index.html\">Оглавление</a>");
+        if (pages > 1) {
+            sb.append(" | <a href=\"").append(pageName(pages - 1)).append("\">&larr; назад</a>");
+        }
+        if (hasNext) {
+            sb.append(" | <a href=\"").append(pageName(pages + 1)).append("\">дальше &rarr;</a>");
+        }
+        return sb.append("</p>\n").toString();
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public Path location() {
+        return dir.resolve("index.html");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (page != null) {
+            closePage(false);
+        }
+        try (Writer index = Files.newBufferedWriter(location(), StandardCharsets.UTF_8)) {
+            index.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Отличия</title>" + STYLE
+                    + "</head><body>\n<h1>Отличий: " + count + "</h1>\n<table>\n<tr><th>Тип</th><th>Число</th></tr>\n");
+            for (Map.Entry<XmlDifference.Kind, Long> kind : kinds.entrySet()) {
+                index.write("<tr><td>" + kind.getKey() + "</td><td>" + kind.getValue() + "</td></tr>\n");
+            }
+            index.write("</table>\n<p>\n");
+            for (int i = 1; i <= pages; i++) {
+                long from = (long) (i - 1) * pageSize + 1;
+                long to = Math.min(count, (long) i * pageSize);
+                index.write("<a href=\"" + pageName(i) + "\">" + from + "&ndash;" + to + "</a><br>\n");
+            }
+            index.write("</p>\n</body></html>\n");
+        }
+    }
+
+    private static String pageName(int number) {
+        return String.format("page-%05d.html", number);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
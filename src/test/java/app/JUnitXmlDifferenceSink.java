@@ -0,0 +1,136 @@
+package app;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Отличия в формате отчета JUnit: набор {@code <testsuite>}, в нем по {@code <testcase>} с
+ * {@code <failure>} на каждое отличие. CI (Jenkins, GitLab, TeamCity) показывает такие отчеты
+ * как упавшие тесты: класс — {@code <набор>.<тип отличия>}, имя — путь отличия.
+ * <p>
+ * Число тестов стоит в атрибутах {@code <testsuite>} в начале файла, а известно только в конце.
+ * Чтобы не держать отличия в памяти, заголовок пишется с числами фиксированной ширины, а при
+ * закрытии они перезаписываются на месте.
+ */
+public final class JUnitXmlDifferenceSink implements DifferenceSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String COUNT_PLACEHOLDER = "0".repeat(10);
+    // Woodstox: не проверять, что у документа один корень
+    private static final String VALIDATE_STRUCTURE = "com.ctc.wstx.outputValidateStructure";
+    // <testsuite> пишется мимо StAX, поэтому для writer'а каждый <testcase> — еще один корень
+    private static final XMLOutputFactory OUTPUT_FACTORY = createOutputFactory();
+
+    private final Path file;
+    private final String suite;
+    private final OutputStream out;
+    private final XMLStreamWriter writer;
+    private final long testsOffset;
+    private final long failuresOffset;
+    private long count;
+
+    /**
+     * @param file  Файл отчета.
+     * @param suite Имя набора, обычно имя теста, который сравнивал документы.
+     */
+    public JUnitXmlDifferenceSink(Path file, String suite) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.file = file;
+        this.suite = suite;
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+
+        // 1. Заголовок пишем сами и запоминаем, где стоят числа
+        String beforeTests = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuite name=\"" + escape(suite) + "\" tests=\"";
+        String beforeFailures = COUNT_PLACEHOLDER + "\" failures=\"";
+        String rest = COUNT_PLACEHOLDER + "\" errors=\"0\" skipped=\"0\">\n";
+        byte[] head = beforeTests.getBytes(StandardCharsets.UTF_8);
+        this.testsOffset = head.length;
+        this.failuresOffset = testsOffset + beforeFailures.length();
+        out.write(head);
+        out.write((beforeFailures + rest).getBytes(StandardCharsets.UTF_8));
+
+        // 2. Тесты — через StAX, он сам экранирует пути и значения
+        try {
+            this.writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new IOException("Не удалось открыть отчет " + file, e);
+        }
+    }
+
+    @Override
+    public void accept(XmlDifference difference) {
+        try {
+            String path = difference.path();
+            writer.writeCharacters("  ");
+            writer.writeStartElement("testcase");
+            writer.writeAttribute("classname", suite + "." + difference.kind().name());
+            writer.writeAttribute("name", path == null ? difference.kind().name() : path);
+            writer.writeAttribute("time", "0");
+            writer.writeStartElement("failure");
+            writer.writeAttribute("type", difference.kind().name());
+            writer.writeAttribute("message", difference.pattern());
+            writer.writeCharacters(difference.format());
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            count++;
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException("Отличие не записано в " + file, e));
+        }
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public Path location() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        // 1. Дописываем хвост. Без writer.close(): он закрывает документ, а корень <testsuite> открыт мимо writer'а
+        try {
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Не удалось дописать отчет " + file, e);
+        } finally {
+            try (OutputStream ignored = out) {
+                out.write("</testsuite>\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        // 2. Настоящее число тестов — поверх заглушек в заголовке
+        byte[] number = String.format("%010d", count).getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(number), testsOffset);
+            channel.write(ByteBuffer.wrap(number), failuresOffset);
+        }
+    }
+
+    private static XMLOutputFactory createOutputFactory() {
+        XMLOutputFactory factory = XMLOutputFactory.newFactory();
+        if (factory.isPropertySupported(VALIDATE_STRUCTURE)) {
+            factory.setProperty(VALIDATE_STRUCTURE, false);
+        }
+        return factory;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,346 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Сравнение деревьев JSON ({@link JsonNode}) без учета порядка полей объектов и элементов массивов.
+ * <p>
+ * Элементы массива сопоставляются так же, как дети в {@link StreamingXmlComparator}: сначала равные
+ * по каноническому хэшу поддерева ({@link CanonicalHash}, не зависит от порядка) — за O(n) на массив,
+ * затем объекты с одинаковыми скалярными полями (аналог сопоставления по имени и всем атрибутам),
+ * затем узлы одного вида, чтобы показать конкретное отличие значения. Остальные — отсутствующие и лишние.
+ * <p>
+ * Отличия — {@link XmlDifference} в том же виде, что у {@link Helpers#compareUnorderedXml(String, String)}.
+ * Пути в стиле XPath: {@code /order/item[2]/price}, номер — позиция в массиве с 1, поле {@code ""}
+ * (текст смешанного элемента XML) — {@code text()}.
+ * <p>
+ * Режим {@link #crossFormat()} сравнивает JSON, полученный из XML ({@link StreamingXmlToJsonConverter}),
+ * с обычным JSON. В XML нет типов, поэтому скаляры сравниваются по тексту ({@code 5} = {@code "5"},
+ * {@code true} = {@code "true"}, {@code null} = {@code ""}), а одиночное значение равно массиву из
+ * одного элемента: одиночный элемент XML не становится массивом. Текст, похожий на число, сравнивается
+ * как число ({@code 5.5} = {@code "5.50"} = {@code "5.5e0"}) и в хэшах, и в ключах сопоставления, поэтому
+ * такие значения находят пару и в перемешанных массивах.
+ */
+public class JsonTreeComparator {
+
+    private static final long VALUE_SALT = 0x632BE59BD9B4E019L;
+    // То, что BigDecimal разбирает как число
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private final boolean crossFormat;
+
+    /**
+     * Строгое сравнение JSON с JSON: типы скаляров учитываются.
+     */
+    public JsonTreeComparator() {
+        this(false);
+    }
+
+    private JsonTreeComparator(boolean crossFormat) {
+        this.crossFormat = crossFormat;
+    }
+
+    /**
+     * Сравнение JSON из XML с обычным JSON.
+     */
+    public static JsonTreeComparator crossFormat() {
+        return new JsonTreeComparator(true);
+    }
+
+    /**
+     * Описания отличий с лимитом из {@link XmlCompareOptions#defaults()}.
+     */
+    public List<String> compare(JsonNode control, JsonNode test) {
+        return compare(control, test, XmlCompareOptions.defaults().newReport()).format();
+    }
+
+    /**
+     * Сравнивает деревья и складывает отличия в {@code differences}; сравнение прекращается, как только
+     * лимит отчета исчерпан.
+     *
+     * @return Тот же {@code differences}.
+     */
+    public DifferenceReport compare(JsonNode control, JsonNode test, DifferenceReport differences) {
+        try (Metrics.Timer ignored = Metrics.start("json.diff")) {
+            new Run(differences).compare(control, test, "", "");
+        }
+        return differences;
+    }
+
+    /**
+     * Читает JSON в дерево.
+     */
+    public static JsonNode readJson(XmlSource json) throws IOException {
+        try (Metrics.Timer ignored = Metrics.start("json.parse");
+             InputStream in = json.open()) {
+            return Mappers.JSON_TREE_READER.readTree(in);
+        }
+    }
+
+    /**
+     * Читает XML в дерево JSON того же вида, что у {@link Helpers#convertXmlFileToJson(String)}.
+     * XML разбирается потоково, без DOM: токены конвертера идут в {@link TokenBuffer}, а из него — в дерево,
+     * без промежуточного текста JSON.
+     */
+    public static JsonNode readXml(XmlSource xml) throws IOException {
+        try (Metrics.Timer ignored = Metrics.start("xml.toJson.stream");
+             TokenBuffer buffer = new TokenBuffer(Mappers.JSON_MAPPER, false)) {
+            new StreamingXmlToJsonConverter(false).convert(xml, buffer);
+            try (JsonParser parser = buffer.asParser()) {
+                return Mappers.JSON_MAPPER.readTree(parser);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Сравнение
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Одно сравнение: хэши поддеревьев кэшируются по узлу.
+     */
+    private final class Run {
+        private final DifferenceReport differences;
+        private final Map<JsonNode, Long> hashes = new IdentityHashMap<>();
+
+        Run(DifferenceReport differences) {
+            this.differences = differences;
+        }
+
+        void compare(JsonNode control, JsonNode test, String controlPath, String testPath) {
+            if (differences.isLimitReached()) {
+                return;
+            }
+            if (control.isArray() || test.isArray()) {
+                if ((control.isArray() && test.isArray()) || crossFormat) {
+                    compareArrays(elements(control), elements(test), controlPath, testPath);
+                } else {
+                    typeDifference(control, test, controlPath, testPath);
+                }
+            } else if (control.isObject() && test.isObject()) {
+                compareObjects(control, test, controlPath, testPath);
+            } else if (isScalar(control) && isScalar(test) && (crossFormat || control.getNodeType() == test.getNodeType())) {
+                if (!scalarEquals(control, test)) {
+                    differences.add(XmlDifference.textValue(controlPath, testPath, scalarText(control), scalarText(test)));
+                }
+            } else {
+                typeDifference(control, test, controlPath, testPath);
+            }
+        }
+
+        private void compareObjects(JsonNode control, JsonNode test, String controlPath, String testPath) {
+            Iterator<Map.Entry<String, JsonNode>> fields = control.fields();
+            while (fields.hasNext() && !differences.isLimitReached()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode testValue = test.get(field.getKey());
+                String step = step(field.getKey());
+                if (testValue == null) {
+                    differences.add(XmlDifference.missing(controlPath + step));
+                } else {
+                    compare(field.getValue(), testValue, controlPath + step, testPath + step);
+                }
+            }
+            Iterator<String> testFields = test.fieldNames();
+            while (testFields.hasNext() && !differences.isLimitReached()) {
+                String name = testFields.next();
+                if (!control.has(name)) {
+                    differences.add(XmlDifference.extra(testPath + step(name)));
+                }
+            }
+        }
+
+        private void compareArrays(List<JsonNode> control, List<JsonNode> test, String controlPath, String testPath) {
+            boolean[] controlMatched = new boolean[control.size()];
+            boolean[] testMatched = new boolean[test.size()];
+
+            // 1. Равные поддеревья — по хэшу
+            Map<Long, Deque<Integer>> controlByHash = new HashMap<>();
+            for (int i = 0; i < control.size(); i++) {
+                controlByHash.computeIfAbsent(hash(control.get(i)), h -> new ArrayDeque<>()).add(i);
+            }
+            for (int i = 0; i < test.size(); i++) {
+                Deque<Integer> candidates = controlByHash.get(hash(test.get(i)));
+                if (candidates != null && !candidates.isEmpty()) {
+                    controlMatched[candidates.poll()] = true;
+                    testMatched[i] = true;
+                }
+            }
+
+            // 2. Объекты с одинаковыми скалярными полями, 3. затем узлы одного вида
+            pair(control, test, controlMatched, testMatched, this::matchKey, controlPath, testPath);
+            pair(control, test, controlMatched, testMatched, this::kind, controlPath, testPath);
+
+            // 4. Все, что осталось, — отсутствующие и лишние элементы
+            for (int i = 0; i < control.size(); i++) {
+                if (!controlMatched[i] && !differences.add(XmlDifference.missing(controlPath + "[" + (i + 1) + "]"))) {
+                    return;
+                }
+            }
+            for (int i = 0; i < test.size(); i++) {
+                if (!testMatched[i] && !differences.add(XmlDifference.extra(testPath + "[" + (i + 1) + "]"))) {
+                    return;
+                }
+            }
+        }
+
+        private void pair(List<JsonNode> control, List<JsonNode> test, boolean[] controlMatched, boolean[] testMatched,
+                          Function<JsonNode, String> key, String controlPath, String testPath) {
+            Map<String, Deque<Integer>> controlByKey = new HashMap<>();
+            for (int i = 0; i < control.size(); i++) {
+                String k = controlMatched[i] ? null : key.apply(control.get(i));
+                if (k != null) {
+                    controlByKey.computeIfAbsent(k, x -> new ArrayDeque<>()).add(i);
+                }
+            }
+            if (controlByKey.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < test.size() && !differences.isLimitReached(); i++) {
+                String k = testMatched[i] ? null : key.apply(test.get(i));
+                Deque<Integer> candidates = k == null ? null : controlByKey.get(k);
+                if (candidates != null && !candidates.isEmpty()) {
+                    int c = candidates.poll();
+                    controlMatched[c] = true;
+                    testMatched[i] = true;
+                    compare(control.get(c), test.get(i), controlPath + "[" + (c + 1) + "]", testPath + "[" + (i + 1) + "]");
+                }
+            }
+        }
+
+        private void typeDifference(JsonNode control, JsonNode test, String controlPath, String testPath) {
+            differences.add(new XmlDifference(XmlDifference.Kind.OTHER, controlPath, testPath,
+                    "тип узла " + control.getNodeType() + " / " + test.getNodeType(), null, null));
+        }
+
+        /**
+         * Канонический хэш поддерева: поля и элементы массивов складываются, поэтому порядок не важен.
+         */
+        long hash(JsonNode node) {
+            Long cached = hashes.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            long h;
+            if (node.isObject()) {
+                long fieldsSum = 0;
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    fieldsSum += CanonicalHash.child(CanonicalHash.mix(CanonicalHash.of(field.getKey()) * 31 + hash(field.getValue())));
+                }
+                h = CanonicalHash.element("{}", 0, null, fieldsSum);
+            } else if (node.isArray()) {
+                if (crossFormat && node.size() == 1) {
+                    // Одиночное значение равно массиву из одного элемента
+                    h = hash(node.get(0));
+                } else {
+                    long elementsSum = 0;
+                    for (JsonNode element : node) {
+                        elementsSum += CanonicalHash.child(hash(element));
+                    }
+                    h = CanonicalHash.element("[]", 0, null, elementsSum);
+                }
+            } else if (crossFormat) {
+                h = CanonicalHash.text(canonicalText(node));
+            } else {
+                h = CanonicalHash.mix(CanonicalHash.text(canonicalText(node)) + VALUE_SALT * (node.getNodeType().ordinal() + 1));
+            }
+            hashes.put(node, h);
+            return h;
+        }
+
+        // Ключ "по всем скалярным полям" — только для объектов
+        private String matchKey(JsonNode node) {
+            if (!node.isObject()) {
+                return null;
+            }
+            Map<String, String> scalars = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (isScalar(field.getValue())) {
+                    scalars.put(field.getKey(), canonicalText(field.getValue()));
+                }
+            }
+            return scalars.toString();
+        }
+
+        private String kind(JsonNode node) {
+            if (node.isObject()) {
+                return "object";
+            }
+            if (node.isArray()) {
+                return "array";
+            }
+            return crossFormat ? "value" : node.getNodeType().name();
+        }
+    }
+
+    private List<JsonNode> elements(JsonNode node) {
+        if (!node.isArray()) {
+            return List.of(node);
+        }
+        List<JsonNode> elements = new ArrayList<>(node.size());
+        node.forEach(elements::add);
+        return elements;
+    }
+
+    private boolean scalarEquals(JsonNode control, JsonNode test) {
+        return canonicalText(control).equals(canonicalText(test));
+    }
+
+    /**
+     * Текст скаляра для сравнения, хэша и ключа сопоставления: числа — без незначащих нулей, чтобы 1.50
+     * и 1.5 давали один хэш. В {@link #crossFormat()} так же приводится текст, похожий на число: число
+     * из JSON и текст из XML должны совпасть до того, как узлы будут сопоставлены.
+     */
+    private String canonicalText(JsonNode node) {
+        if (node.isNumber()) {
+            return canonicalNumber(node.decimalValue());
+        }
+        String text = scalarText(node);
+        if (crossFormat && NUMBER.matcher(text).matches()) {
+            try {
+                return canonicalNumber(new BigDecimal(text));
+            } catch (NumberFormatException e) {
+                // Порядок вне диапазона int — остается текстом
+            }
+        }
+        return text;
+    }
+
+    // Научная запись: у 1e999999 не строится миллион нулей
+    private static String canonicalNumber(BigDecimal number) {
+        return number.stripTrailingZeros().toString();
+    }
+
+    private static boolean isScalar(JsonNode node) {
+        return node.isValueNode() || node.isNull();
+    }
+
+    // Текст скаляра для отчета: как в документе
+    private static String scalarText(JsonNode node) {
+        return node.isNull() ? "" : node.asText();
+    }
+
+    private static String step(String field) {
+        return field.isEmpty() ? "/text()" : "/" + field;
+    }
+}
@@ -0,0 +1,143 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import org.xmlunit.XMLUnitException;
+import org.xmlunit.util.Convert;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import java.io.IOException;
+
+/**
+ * Общие, заранее настроенные экземпляры мапперов и фабрик для всех преобразований и сравнений в {@link Helpers}.
+ * <p>
+ * Создание {@link ObjectMapper}/{@link XmlMapper} обходится дорого, а их кэши сериализаторов
+ * прогреваются только при повторном использовании, поэтому экземпляры создаются один раз на JVM.
+ * Мапперы, читатели и писатели Jackson и фабрики StAX настроены в статической инициализации, далее только
+ * читаются и потокобезопасны. Менять их настройки после загрузки класса нельзя.
+ * <p>
+ * {@link DocumentBuilderFactory} и {@link DocumentBuilder} таких гарантий не дают, поэтому фабрика DOM закрыта,
+ * а документы разбираются через {@link #parseDocument(Source)} — парсером своего потока.
+ */
+public final class Mappers {
+
+    /**
+     * Маппер для чтения XML.
+     */
+    public static final XmlMapper XML_MAPPER = new XmlMapper();
+
+    /**
+     * Маппер для JSON.
+     */
+    public static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    /**
+     * Чтение XML в дерево {@link JsonNode}.
+     */
+    public static final ObjectReader XML_TREE_READER = XML_MAPPER.readerFor(JsonNode.class);
+
+    /**
+     * Чтение JSON в дерево {@link JsonNode}.
+     */
+    public static final ObjectReader JSON_TREE_READER = JSON_MAPPER.readerFor(JsonNode.class);
+
+    /**
+     * Запись JSON с форматированием (как {@code writerWithDefaultPrettyPrinter()}).
+     */
+    public static final ObjectWriter PRETTY_JSON_WRITER = JSON_MAPPER.writerWithDefaultPrettyPrinter();
+
+    /**
+     * Запись JSON в одну строку.
+     */
+    public static final ObjectWriter COMPACT_JSON_WRITER = JSON_MAPPER.writer();
+
+    /**
+     * Фабрика потоковых JSON-генераторов и парсеров.
+     */
+    public static final JsonFactory JSON_FACTORY = JSON_MAPPER.getFactory();
+
+    /**
+     * StAX-фабрика для потоковых режимов: склеивает текст, DTD и внешние сущности отключены.
+     */
+    public static final XMLInputFactory STAX_INPUT_FACTORY = createStaxInputFactory();
+
+    /**
+     * StAX-фабрика для записи XML (разрезание документов на фрагменты).
+     */
+    public static final XMLOutputFactory STAX_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    // Только под блокировкой самой фабрики: newDocumentBuilder() не потокобезопасен
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+
+    // Парсер DOM на поток: пакетные и фрагментные сравнения разбирают документы параллельно
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(Mappers::createDocumentBuilder);
+
+    private Mappers() {
+    }
+
+    /**
+     * Разбирает XML в DOM парсером текущего потока (настройки — как у XMLUnit по умолчанию, плюс защита от XXE).
+     *
+     * @param source Источник XML, например из {@code Input.from(...).build()}.
+     * @throws XMLUnitException Если XML некорректен или не читается, как {@code Convert.toDocument}.
+     */
+    public static Document parseDocument(Source source) {
+        if (source instanceof DOMSource dom && dom.getNode() instanceof Document document) {
+            return document;
+        }
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        builder.reset();
+        try {
+            return builder.parse(Convert.toInputSource(source));
+        } catch (SAXException | IOException e) {
+            throw new XMLUnitException(e);
+        }
+    }
+
+    private static XMLInputFactory createStaxInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static DocumentBuilder createDocumentBuilder() {
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            try {
+                return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException("Не удалось создать DocumentBuilder", e);
+            }
+        }
+    }
+
+    // Те же настройки, что XMLUnit применяет по умолчанию, плюс защита от XXE
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        factory.setXIncludeAware(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Не удалось настроить DocumentBuilderFactory", e);
+        }
+        return factory;
+    }
+}
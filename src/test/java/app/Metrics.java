@@ -0,0 +1,174 @@
+package app;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Замеры времени по фазам тестов (вход, действия, открытие страницы, вызовы page-объектов, разбор
+ * и сравнение XML) с гистограммами p50/p95/p99 и выгрузкой отчета в JSON и CSV.
+ * <p>
+ * Замер — {@code try (Metrics.Timer ignored = Metrics.start("ui.login")) { ... }} или
+ * {@link #time(String, Supplier)}. Запись идет в {@link LatencyHistogram} без блокировок,
+ * поэтому замеры можно делать из параллельных потоков. Отчет за прогон пишет {@link MetricsListener}
+ * в каталог {@value #DIR_KEY} (по умолчанию {@code build/metrics}).
+ * <p>
+ * Замеры отключаются настройкой {@value #ENABLED_KEY}{@code =false}.
+ */
+public final class Metrics {
+
+    public static final String DIR_KEY = "metrics.dir";
+    public static final String ENABLED_KEY = "metrics.enabled";
+
+    private static final boolean ENABLED = TestConfig.getBoolean(ENABLED_KEY, true);
+    private static final Map<String, LatencyHistogram> PHASES = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private Metrics() {
+    }
+
+    /**
+     * Начинает замер фазы; время записывается при закрытии таймера.
+     */
+    public static Timer start(String phase) {
+        return ENABLED ? new Timer(phase, System.nanoTime()) : Timer.DISABLED;
+    }
+
+    /**
+     * Выполняет {@code action} и записывает его время в фазу {@code phase} (в том числе при исключении).
+     */
+    public static <T> T time(String phase, Supplier<T> action) {
+        try (Timer ignored = start(phase)) {
+            return action.get();
+        }
+    }
+
+    public static void time(String phase, Runnable action) {
+        try (Timer ignored = start(phase)) {
+            action.run();
+        }
+    }
+
+    /**
+     * Записывает готовый замер.
+     */
+    public static void record(String phase, long nanos) {
+        if (ENABLED) {
+            PHASES.computeIfAbsent(phase, key -> new LatencyHistogram()).record(nanos);
+        }
+    }
+
+    /**
+     * Сводка по всем фазам, самые затратные по суммарному времени — первыми.
+     */
+    public static List<PhaseStats> snapshot() {
+        return PHASES.entrySet().stream()
+                .map(entry -> PhaseStats.of(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingDouble(PhaseStats::totalMs).reversed())
+                .toList();
+    }
+
+    /**
+     * Забывает все замеры.
+     */
+    public static void reset() {
+        PHASES.clear();
+    }
+
+    /**
+     * Пишет сводку в {@code <dir>/<name>-<время>.json} и {@code .csv}.
+     *
+     * @return Путь к JSON-отчету или {@code null}, если замеров не было.
+     */
+    public static Path export(Path dir, String name) throws IOException {
+        List<PhaseStats> phases = snapshot();
+        if (phases.isEmpty()) {
+            return null;
+        }
+        Files.createDirectories(dir);
+        String base = name + "-" + LocalDateTime.now().format(FILE_TIMESTAMP);
+
+        // 1. JSON: сведения о прогоне и фазы
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("run", name);
+        report.put("createdAt", LocalDateTime.now().toString());
+        report.put("phases", phases);
+        Path json = dir.resolve(base + ".json");
+        Mappers.PRETTY_JSON_WRITER.writeValue(json.toFile(), report);
+
+        // 2. CSV для таблиц и сравнения прогонов между собой
+        try (Writer out = Files.newBufferedWriter(dir.resolve(base + ".csv"), StandardCharsets.UTF_8)) {
+            out.write("phase,count,totalMs,meanMs,minMs,p50Ms,p95Ms,p99Ms,maxMs\n");
+            for (PhaseStats phase : phases) {
+                out.write(String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                        phase.phase(), phase.count(), phase.totalMs(), phase.meanMs(), phase.minMs(),
+                        phase.p50Ms(), phase.p95Ms(), phase.p99Ms(), phase.maxMs()));
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Каталог отчетов из настройки {@value #DIR_KEY}.
+     */
+    public static Path directory() {
+        return Path.of(TestConfig.get(DIR_KEY, "build/metrics"));
+    }
+
+    /**
+     * Незавершенный замер фазы.
+     */
+    public static final class Timer implements AutoCloseable {
+
+        private static final Timer DISABLED = new Timer(null, 0);
+
+        private final String phase;
+        private final long startNanos;
+
+        private Timer(String phase, long startNanos) {
+            this.phase = phase;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (phase != null) {
+                record(phase, System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Сводка по фазе; времена в миллисекундах.
+     */
+    public record PhaseStats(String phase, long count, double totalMs, double meanMs, double minMs,
+                             double p50Ms, double p95Ms, double p99Ms, double maxMs) {
+
+        static PhaseStats of(String phase, LatencyHistogram histogram) {
+            long count = histogram.count();
+            return new PhaseStats(phase, count,
+                    millis(histogram.sum()),
+                    count == 0 ? 0 : millis(histogram.sum()) / count,
+                    millis(histogram.min()),
+                    millis(histogram.percentile(0.50)),
+                    millis(histogram.percentile(0.95)),
+                    millis(histogram.percentile(0.99)),
+                    millis(histogram.max()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package app;
+
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Слушатель TestNG для {@link Metrics}: записывает время каждого тестового метода (фаза
+ * {@code test.<Класс>.<метод>}) и после набора выгружает отчет в {@link Metrics#directory()}.
+ * <p>
+ * Подключается автоматически через {@code META-INF/services/org.testng.ITestNGListener}.
+ */
+public class MetricsListener implements ISuiteListener, ITestListener {
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        record(result);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        record(result);
+    }
+
+    @Override
+    public void onFinish(ISuite suite) {
+        try {
+            Path report = Metrics.export(Metrics.directory(), "metrics-" + suite.getName().replaceAll("[^\\w.-]+", "_"));
+            if (report != null) {
+                System.out.println("Отчет по времени фаз: " + report.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчет по времени фаз: " + e.getMessage());
+        }
+        Metrics.reset();
+    }
+
+    private static void record(ITestResult result) {
+        String phase = "test." + result.getMethod().getRealClass().getSimpleName() + "." + result.getMethod().getMethodName();
+        Metrics.record(phase, (result.getEndMillis() - result.getStartMillis()) * 1_000_000L);
+    }
+}
@@ -0,0 +1,79 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Отличия в формате NDJSON: одна строка JSON на отличие. Такой файл дописывается по мере сравнения,
+ * читается построчно ({@code jq}, {@code grep}) и не требует закрывающих скобок, поэтому даже
+ * прерванный прогон оставляет пригодный отчет.
+ * <p>
+ * Поля строки: {@code kind}, {@code pattern}, {@code path}, {@code controlPath}, {@code testPath},
+ * {@code name}, {@code expected}, {@code found}, {@code message}; пустые поля не пишутся.
+ */
+public final class NdjsonDifferenceSink implements DifferenceSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final JsonGenerator generator;
+    private long count;
+
+    public NdjsonDifferenceSink(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        this.file = file;
+        this.generator = Mappers.JSON_FACTORY.createGenerator(
+                new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), JsonEncoding.UTF8);
+        // Разделитель строк пишем сами, после каждого объекта
+        generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void accept(XmlDifference difference) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("kind", difference.kind().name());
+            generator.writeStringField("pattern", difference.pattern());
+            writeIfPresent("path", difference.path());
+            writeIfPresent("controlPath", difference.controlPath());
+            writeIfPresent("testPath", difference.testPath());
+            writeIfPresent("name", difference.name());
+            writeIfPresent("expected", difference.expected());
+            writeIfPresent("found", difference.found());
+            generator.writeStringField("message", difference.format());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            count++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Отличие не записано в " + file, e);
+        }
+    }
+
+    private void writeIfPresent(String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public Path location() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,50 @@
+package app;
+
+import org.xmlunit.diff.DefaultNodeMatcher;
+import org.xmlunit.diff.ElementSelector;
+import org.xmlunit.diff.ElementSelectors;
+import org.xmlunit.diff.NodeMatcher;
+
+/**
+ * Способ сопоставления соседних узлов в {@link Helpers#compareUnorderedXml(String, String, NodeMatchStrategy)}.
+ */
+public enum NodeMatchStrategy {
+
+    /**
+     * {@code DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes)}: попарный перебор, O(n²) на родителя.
+     */
+    BY_NAME_AND_ALL_ATTRIBUTES {
+        @Override
+        NodeMatcher createMatcher(ElementSelector selector) {
+            return new DefaultNodeMatcher(selector);
+        }
+    },
+
+    /**
+     * {@link HashedNodeMatcher}: равные поддеревья через хэш-таблицу, перебор только по остатку.
+     */
+    HASHED {
+        @Override
+        NodeMatcher createMatcher(ElementSelector selector) {
+            return new HashedNodeMatcher(new DefaultNodeMatcher(selector));
+        }
+    };
+
+    /**
+     * Создает новый сопоставитель для одного сравнения.
+     */
+    public NodeMatcher createMatcher() {
+        return createMatcher(ElementSelectors.byNameAndAllAttributes);
+    }
+
+    /**
+     * Сопоставитель с учетом правил: игнорируемые атрибуты не мешают сопоставить элементы,
+     * а значения атрибутов сравниваются по правилам ({@link XmlRules#elementSelector()}).
+     */
+    public NodeMatcher createMatcher(XmlRules rules) {
+        return rules.isEmpty() ? createMatcher() : createMatcher(rules.elementSelector());
+    }
+
+    // Попарное сравнение элементов — через selector
+    abstract NodeMatcher createMatcher(ElementSelector selector);
+}
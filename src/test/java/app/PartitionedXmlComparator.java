@@ -0,0 +1,511 @@
+package app;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Параллельное сравнение одного большого документа: документ режется на поддеревья на заданной глубине,
+ * и пары поддеревьев сравниваются одновременно на {@link ForkJoinPool}.
+ * <p>
+ * Каждый документ один раз читается через StAX и раскладывается на "скелет" (все элементы выше глубины
+ * разреза) и фрагменты (поддеревья на глубине разреза). Фрагменты группируются по пути родителя и имени,
+ * а при заданном ключевом атрибуте — еще и по его значению. Фрагменты с равным каноническим хэшем
+ * ({@link CanonicalHash}) считаются совпавшими без сравнения. Остальные сравниваются обычным
+ * {@link Helpers#compareUnorderedXml(String, String, NodeMatchStrategy)} по группам, параллельно.
+ * XPath в отличиях пересчитываются в пути исходного документа.
+ * <p>
+ * Без ключевого атрибута все дети плоского корня попадают в одну группу. Поэтому группа, в которой после
+ * отсева равных осталось больше {@code batchSize} фрагментов, делится на пачки по хэшу первого атрибута
+ * фрагмента (обычно это идентификатор записи), и пачки тоже сравниваются параллельно. Фрагменты с разным
+ * первым атрибутом могут попасть в разные пачки и тогда показываются парой "отсутствует/лишний" — как и при
+ * сопоставлении по всем атрибутам. Фрагменты без атрибутов попадают в одну пачку: для них нужен ключевой
+ * атрибут или меньшая глубина разреза.
+ * <p>
+ * Родители фрагментов сопоставляются по позиции ({@code /root[1]/section[2]}). Поэтому режим рассчитан
+ * на документы, у которых неупорядоченная часть находится на глубине разреза, например {@code <root>}
+ * с миллионами записей при глубине 1.
+ */
+public class PartitionedXmlComparator {
+
+    // Обертка, в которую собираются фрагменты одной группы для сравнения
+    private static final String WRAPPER = "partition-group";
+    private static final String WRAPPER_STEP = "/" + WRAPPER + "[1]";
+
+    /**
+     * Сколько фрагментов одной стороны группы сравнивается одним DOM-сравнением по умолчанию.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final int splitDepth;
+    private final String keyAttribute;
+    private final int parallelism;
+    private final NodeMatchStrategy strategy;
+    private final int batchSize;
+
+    /**
+     * @param splitDepth   Глубина разреза: 1 — дети корня, 2 — внуки и т.д.
+     * @param keyAttribute Атрибут, по значению которого сопоставляются фрагменты, или {@code null}
+     *                     (тогда только по хэшу и имени, а большие группы делятся на пачки по первому атрибуту).
+     */
+    public PartitionedXmlComparator(int splitDepth, String keyAttribute) {
+        this(splitDepth, keyAttribute, Runtime.getRuntime().availableProcessors(), NodeMatchStrategy.HASHED);
+    }
+
+    public PartitionedXmlComparator(int splitDepth, String keyAttribute, int parallelism, NodeMatchStrategy strategy) {
+        this(splitDepth, keyAttribute, parallelism, strategy, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize Больше скольких фрагментов одной стороны группа делится на пачки.
+     */
+    public PartitionedXmlComparator(int splitDepth, String keyAttribute, int parallelism, NodeMatchStrategy strategy,
+                                    int batchSize) {
+        if (splitDepth < 1) {
+            throw new IllegalArgumentException("Глубина разреза должна быть не меньше 1: " + splitDepth);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пачки должен быть не меньше 1: " + batchSize);
+        }
+        this.splitDepth = splitDepth;
+        this.keyAttribute = keyAttribute;
+        this.parallelism = parallelism;
+        this.strategy = strategy;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Сравнивает документы и возвращает отличия в формате {@link Helpers#compareUnorderedXml(String, String)}
+     * с лимитом из {@link XmlCompareOptions#defaults()}.
+     */
+    public List<String> compare(XmlSource control, XmlSource test) throws IOException {
+        return compare(control, test, XmlCompareOptions.defaults().maxDifferences()).format();
+    }
+
+    /**
+     * Сравнивает документы. Как только группы вместе набрали {@code maxDifferences} отличий,
+     * еще не начатые группы пропускаются.
+     */
+    public DifferenceReport compare(XmlSource control, XmlSource test, int maxDifferences) throws IOException {
+        XmlCompareOptions options = new XmlCompareOptions(strategy, maxDifferences);
+        AtomicInteger found = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // 1. Режем оба документа одновременно
+            List<Split> splits = run(pool, List.<Task<Split>>of(() -> split(control), () -> split(test)));
+            Split controlSplit = splits.get(0);
+            Split testSplit = splits.get(1);
+
+            // 2. Группируем фрагменты, равные по хэшу отбрасываем
+            Map<String, Group> groups = new LinkedHashMap<>();
+            for (Partition partition : controlSplit.partitions) {
+                groups.computeIfAbsent(partition.groupKey(), k -> new Group()).control.add(partition);
+            }
+            for (Partition partition : testSplit.partitions) {
+                groups.computeIfAbsent(partition.groupKey(), k -> new Group()).test.add(partition);
+            }
+
+            List<Task<DifferenceReport>> tasks = new ArrayList<>();
+            tasks.add(() -> Helpers.diff(controlSplit.skeleton, testSplit.skeleton, options,
+                    new Helpers.CustomDifferenceCollector(options.newReport())));
+            for (Group group : groups.values()) {
+                group.removeEqual();
+                for (Group batch : group.batches()) {
+                    tasks.add(() -> batch.diff(options, found));
+                }
+            }
+
+            // 3. Сравниваем группы параллельно, порядок результатов — порядок групп в документе
+            DifferenceReport report = options.newReport();
+            for (DifferenceReport groupReport : run(pool, tasks)) {
+                report.addAll(groupReport);
+            }
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Разрезание документа
+    // ----------------------------------------------------------------------------------
+
+    private Split split(XmlSource source) throws IOException {
+        Split split = new Split();
+        ByteArrayOutputStream skeletonBytes = new ByteArrayOutputStream();
+
+        // Путь по скелету: XPath уровня и счетчики имен его детей
+        Deque<Level> path = new ArrayDeque<>();
+        Deque<HashFrame> hashes = new ArrayDeque<>();
+        int depth = 0;
+
+        XMLStreamWriter part = null;
+        ByteArrayOutputStream partBytes = null;
+        String partXPath = null;
+        String partKey = null;
+        long partBatchKey = 0;
+
+        try (InputStream in = source.open()) {
+            XMLStreamReader reader = Mappers.STAX_INPUT_FACTORY.createXMLStreamReader(in);
+            XMLStreamWriter skeleton = Mappers.STAX_OUTPUT_FACTORY.createXMLStreamWriter(skeletonBytes, "UTF-8");
+            skeleton.writeStartDocument("UTF-8", "1.0");
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                            if (depth < splitDepth) {
+                                Level parent = path.peek();
+                                String xpath = (parent == null ? "" : parent.xpath)
+                                        + "/" + name + "[" + (parent == null ? 1 : parent.nextIndex(name)) + "]";
+                                path.push(new Level(xpath));
+                                copyStartElement(reader, skeleton, false);
+                            } else {
+                                if (depth == splitDepth) {
+                                    Level parent = path.peek();
+                                    partXPath = parent.xpath + "/" + name + "[" + parent.nextIndex(name) + "]";
+                                    partKey = parent.xpath + "/" + name;
+                                    String key = keyAttribute == null ? null : reader.getAttributeValue(null, keyAttribute);
+                                    if (key != null) {
+                                        partKey += "[@" + keyAttribute + "='" + key + "']";
+                                    }
+                                    partBatchKey = reader.getAttributeCount() == 0 ? 0 : CanonicalHash.attribute(
+                                            qualifiedName(reader.getAttributePrefix(0), reader.getAttributeLocalName(0)),
+                                            reader.getAttributeValue(0));
+                                    partBytes = new ByteArrayOutputStream();
+                                    part = Mappers.STAX_OUTPUT_FACTORY.createXMLStreamWriter(partBytes, "UTF-8");
+                                    copyStartElement(reader, part, true);
+                                } else {
+                                    copyStartElement(reader, part, false);
+                                }
+                                if (!hashes.isEmpty()) {
+                                    hashes.peek().text.endNode();
+                                }
+                                HashFrame frame = new HashFrame(name);
+                                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                    frame.attributesSum += CanonicalHash.attribute(
+                                            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                            reader.getAttributeValue(i));
+                                }
+                                hashes.push(frame);
+                            }
+                            depth++;
+                            break;
+                        }
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (depth <= splitDepth) {
+                                // Пробелы вне корня не переносим
+                                if (depth > 0) {
+                                    skeleton.writeCharacters(reader.getText());
+                                }
+                            } else {
+                                part.writeCharacters(reader.getText());
+                                if (!reader.isWhiteSpace()) {
+                                    hashes.peek().text.append(reader.getText());
+                                }
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            depth--;
+                            if (depth < splitDepth) {
+                                skeleton.writeEndElement();
+                                path.pop();
+                            } else {
+                                part.writeEndElement();
+                                HashFrame frame = hashes.pop();
+                                long hash = frame.finish();
+                                if (!hashes.isEmpty()) {
+                                    hashes.peek().childrenSum += CanonicalHash.child(hash);
+                                }
+                                if (depth == splitDepth) {
+                                    part.close();
+                                    split.partitions.add(new Partition(partKey, partXPath, hash, partBatchKey, partBytes.toByteArray()));
+                                    part = null;
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                skeleton.writeEndDocument();
+                skeleton.close();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Ошибка разбора XML: " + e.getMessage(), e);
+        }
+
+        split.skeleton = skeletonBytes.toByteArray();
+        return split;
+    }
+
+    /**
+     * Копирует открывающий тег. Для корня фрагмента объявляет используемые пространства имен,
+     * которые в исходном документе были объявлены у предков.
+     */
+    private static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer, boolean fragmentRoot)
+            throws XMLStreamException {
+        String prefix = reader.getPrefix() == null ? "" : reader.getPrefix();
+        String uri = reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI();
+        writer.writeStartElement(prefix, reader.getLocalName(), uri);
+
+        Set<String> declared = new HashSet<>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String nsPrefix = reader.getNamespacePrefix(i) == null ? "" : reader.getNamespacePrefix(i);
+            declareNamespace(writer, nsPrefix, reader.getNamespaceURI(i), declared);
+        }
+        if (fragmentRoot) {
+            if (!uri.isEmpty()) {
+                declareNamespace(writer, prefix, uri, declared);
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String attrPrefix = reader.getAttributePrefix(i);
+                if (attrPrefix != null && !attrPrefix.isEmpty()) {
+                    declareNamespace(writer, attrPrefix, reader.getAttributeNamespace(i), declared);
+                }
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attrPrefix = reader.getAttributePrefix(i);
+            if (attrPrefix == null || attrPrefix.isEmpty()) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(attrPrefix, reader.getAttributeNamespace(i),
+                        reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static void declareNamespace(XMLStreamWriter writer, String prefix, String uri, Set<String> declared)
+            throws XMLStreamException {
+        if (!declared.add(prefix)) {
+            return;
+        }
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(uri);
+        } else {
+            writer.writeNamespace(prefix, uri);
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Сравнение групп
+    // ----------------------------------------------------------------------------------
+
+    private final class Group {
+        final List<Partition> control = new ArrayList<>();
+        final List<Partition> test = new ArrayList<>();
+
+        void removeEqual() {
+            Map<Long, Deque<Partition>> controlByHash = new HashMap<>();
+            for (Partition partition : control) {
+                controlByHash.computeIfAbsent(partition.hash(), h -> new ArrayDeque<>()).add(partition);
+            }
+            Set<Partition> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+            test.removeIf(partition -> {
+                Deque<Partition> candidates = controlByHash.get(partition.hash());
+                Partition pair = candidates == null ? null : candidates.poll();
+                return pair != null && matched.add(pair);
+            });
+            control.removeIf(matched::contains);
+        }
+
+        /**
+         * Оставшиеся фрагменты по пачкам не больше {@code batchSize} (в среднем): одинаковый первый атрибут
+         * в Control и Test дает одну пачку. Пустые пачки не возвращаются.
+         */
+        List<Group> batches() {
+            if (control.size() <= batchSize && test.size() <= batchSize) {
+                return control.isEmpty() && test.isEmpty() ? List.of() : List.of(this);
+            }
+            int count = (Math.max(control.size(), test.size()) + batchSize - 1) / batchSize;
+            List<Group> batches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batches.add(new Group());
+            }
+            for (Partition partition : control) {
+                batches.get(Math.floorMod(partition.batchKey(), count)).control.add(partition);
+            }
+            for (Partition partition : test) {
+                batches.get(Math.floorMod(partition.batchKey(), count)).test.add(partition);
+            }
+            batches.removeIf(batch -> batch.control.isEmpty() && batch.test.isEmpty());
+            return batches;
+        }
+
+        DifferenceReport diff(XmlCompareOptions options, AtomicInteger found) {
+            DifferenceReport differences = options.newReport();
+            if (found.get() >= options.maxDifferences()) {
+                // Лимит уже набран другими группами
+                differences.markLimitReached();
+                return differences;
+            }
+            if (test.isEmpty()) {
+                for (Partition partition : control) {
+                    differences.add(XmlDifference.missing(partition.xpath()));
+                }
+            } else if (control.isEmpty()) {
+                for (Partition partition : test) {
+                    differences.add(XmlDifference.extra(partition.xpath()));
+                }
+            } else {
+                differences = Helpers.diff(wrap(control), wrap(test), options,
+                        new Helpers.CustomDifferenceCollector(options.newReport(), rebase(control), rebase(test)));
+            }
+            found.addAndGet(differences.size());
+            return differences;
+        }
+    }
+
+    private static byte[] wrap(List<Partition> partitions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(("<" + WRAPPER + ">").getBytes(StandardCharsets.UTF_8));
+        for (Partition partition : partitions) {
+            out.writeBytes(partition.xml());
+        }
+        out.writeBytes(("</" + WRAPPER + ">").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /**
+     * Пересчет XPath внутри обертки в XPath исходного документа:
+     * {@code /partition-group[1]/item[2]/a[1]} -> {@code <XPath второго фрагмента группы>/a[1]}.
+     * Все фрагменты группы одноименны, поэтому индекс шага равен номеру фрагмента.
+     */
+    private static UnaryOperator<String> rebase(List<Partition> partitions) {
+        String first = partitions.get(0).xpath();
+        String parentXPath = first.substring(0, first.lastIndexOf('/'));
+        return xpath -> {
+            if (xpath == null || !xpath.startsWith(WRAPPER_STEP)) {
+                return xpath;
+            }
+            String rest = xpath.substring(WRAPPER_STEP.length());
+            int stepEnd = rest.indexOf('/', 1);
+            String step = stepEnd < 0 ? rest : rest.substring(0, stepEnd);
+            int open = step.lastIndexOf('[');
+            if (open < 0 || step.startsWith("/text()") || step.startsWith("/comment()")) {
+                return parentXPath + rest;
+            }
+            int index = Integer.parseInt(step.substring(open + 1, step.length() - 1));
+            String tail = stepEnd < 0 ? "" : rest.substring(stepEnd);
+            return partitions.get(index - 1).xpath() + tail;
+        };
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Выполнение задач
+    // ----------------------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface Task<T> {
+        T call() throws IOException;
+    }
+
+    private static <T> List<T> run(ForkJoinPool pool, List<Task<T>> tasks) throws IOException {
+        try {
+            return pool.submit(() -> tasks.parallelStream()
+                    .map(task -> {
+                        try {
+                            return task.call();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList())
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Сравнение прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Сбой параллельного сравнения", cause);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Данные
+    // ----------------------------------------------------------------------------------
+
+    private static final class Split {
+        byte[] skeleton;
+        final List<Partition> partitions = new ArrayList<>();
+    }
+
+    /**
+     * Фрагмент документа.
+     *
+     * @param groupKey Ключ группы: путь родителя + имя (+ значение ключевого атрибута).
+     * @param xpath    XPath фрагмента в исходном документе.
+     * @param hash     Канонический хэш поддерева.
+     * @param batchKey Хэш первого атрибута фрагмента (0 — атрибутов нет) для деления группы на пачки.
+     * @param xml      Фрагмент как самостоятельный XML (UTF-8, без объявления).
+     */
+    private record Partition(String groupKey, String xpath, long hash, long batchKey, byte[] xml) {
+    }
+
+    private static final class Level {
+        final String xpath;
+        private final Map<String, Integer> childNameCounts = new HashMap<>();
+
+        Level(String xpath) {
+            this.xpath = xpath;
+        }
+
+        int nextIndex(String name) {
+            return childNameCounts.merge(name, 1, Integer::sum);
+        }
+    }
+
+    // Хэш по тем же правилам, что в StreamingXmlComparator
+    private static final class HashFrame {
+        final String name;
+        final TextNodes text = new TextNodes();
+        long attributesSum;
+        long childrenSum;
+
+        HashFrame(String name) {
+            this.name = name;
+        }
+
+        long finish() {
+            return CanonicalHash.element(name, attributesSum, text.finish(), childrenSum);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Доступ к тестовым ресурсам в виде байтов, без промежуточной строки.
+ * <p>
+ * Ресурс ищется через ClassLoader и читается через его URL, поэтому работает и из каталога,
+ * и из JAR. Пути с пробелами и спецсимволами корректно переводятся в {@link Path} через URI.
+ * Ресурсы на файловой системе крупнее порога ({@value #MAPPING_THRESHOLD_PROPERTY},
+ * по умолчанию 16 МБ) отображаются в память, и парсер читает страницы файла напрямую.
+ * Сжатые gzip и zstd ресурсы распаковываются на лету (см. {@link Compression}).
+ */
+public final class Resources {
+
+    /**
+     * Порог размера (в байтах), начиная с которого файл отображается в память.
+     */
+    public static final String MAPPING_THRESHOLD_PROPERTY = "xml.resources.mapThreshold";
+
+    private static final long DEFAULT_MAPPING_THRESHOLD = 16L * 1024 * 1024;
+
+    private Resources() {
+    }
+
+    /**
+     * URL ресурса.
+     *
+     * @throws IOException Если ресурс не найден.
+     */
+    public static URL find(String resourcePath) throws IOException {
+        URL resourceUrl = Resources.class.getClassLoader().getResource(resourcePath);
+        if (resourceUrl == null) {
+            throw new IOException("Файл не найден в ресурсах: " + resourcePath);
+        }
+        return resourceUrl;
+    }
+
+    /**
+     * Путь к ресурсу на файловой системе или {@code null}, если ресурс лежит в JAR и т.п.
+     */
+    public static Path toPath(URL resourceUrl) {
+        if (!"file".equals(resourceUrl.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(resourceUrl.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Открывает поток чтения ресурса. Крупные файлы отображаются в память, сжатые — распаковываются.
+     */
+    public static InputStream openStream(String resourcePath) throws IOException {
+        return Compression.decode(openRawStream(resourcePath));
+    }
+
+    /**
+     * Открывает поток чтения ресурса как есть, без распаковки.
+     */
+    public static InputStream openRawStream(String resourcePath) throws IOException {
+        URL resourceUrl = find(resourcePath);
+        ByteBuffer mapped = map(resourceUrl);
+        return mapped != null ? new ByteBufferInputStream(mapped) : resourceUrl.openStream();
+    }
+
+    /**
+     * Открывает канал чтения ресурса как есть, без распаковки: для файлов — {@link FileChannel}, иначе канал поверх потока.
+     */
+    public static ReadableByteChannel openChannel(String resourcePath) throws IOException {
+        URL resourceUrl = find(resourcePath);
+        Path path = toPath(resourceUrl);
+        return path != null
+                ? FileChannel.open(path, StandardOpenOption.READ)
+                : Channels.newChannel(resourceUrl.openStream());
+    }
+
+    /**
+     * Отображает ресурс в память целиком, без распаковки.
+     *
+     * @return Буфер только для чтения или {@code null}, если ресурс не на файловой системе,
+     * меньше порога или больше 2 ГБ (ограничение одного отображения).
+     */
+    public static ByteBuffer map(String resourcePath) throws IOException {
+        return map(find(resourcePath));
+    }
+
+    private static ByteBuffer map(URL resourceUrl) throws IOException {
+        Path path = toPath(resourceUrl);
+        if (path == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Long.getLong(MAPPING_THRESHOLD_PROPERTY, DEFAULT_MAPPING_THRESHOLD) || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // Отображение остается действительным и после закрытия канала
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Источник для многократного чтения ресурса (потоковые режимы читают документ в несколько проходов).
+     */
+    public static XmlSource source(String resourcePath) throws IOException {
+        find(resourcePath);
+        return () -> openStream(resourcePath);
+    }
+
+    /**
+     * {@link InputStream} поверх {@link ByteBuffer}. Буфер не копируется, у каждого потока своя позиция.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Локальная замена тестируемого веб-приложения: статические страницы из ресурсов {@code standin/}
+ * на свободном порту {@code localhost}. Позволяет гонять UI-тесты и пул браузеров без внешней сети.
+ * <p>
+ * Как обычный сервер разработки, отвечает с {@code ETag} и {@code Cache-Control: no-cache}, а на совпавший
+ * {@code If-None-Match} — 304. Содержимое можно подменить ({@link #put(String, byte[], String)}), чтобы
+ * проверить, как кэш {@link CachingProxy} замечает изменение.
+ * <p>
+ * Общий экземпляр ({@link #shared()}) запускается при первом обращении и закрывается {@link #closeShared()}:
+ * поток диспетчера {@link HttpServer} не демон и иначе не даст JVM завершиться.
+ */
+public final class StandInServer implements AutoCloseable {
+
+    private static final String ROOT = "standin";
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "html", "text/html; charset=utf-8",
+            "js", "text/javascript; charset=utf-8",
+            "css", "text/css; charset=utf-8",
+            "json", "application/json",
+            "png", "image/png",
+            "svg", "image/svg+xml"
+    );
+
+    private static StandInServer shared;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // Подмененное содержимое: путь -> ответ
+    private final Map<String, Content> overrides = new ConcurrentHashMap<>();
+
+    private StandInServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Запускает сервер на свободном порту.
+     */
+    public static StandInServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8, task -> {
+            Thread thread = new Thread(task, "stand-in-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        StandInServer standIn = new StandInServer(server, executor);
+        server.createContext("/", standIn::serve);
+        server.start();
+        return standIn;
+    }
+
+    /**
+     * Общий сервер для всех тестов.
+     */
+    public static synchronized StandInServer shared() throws IOException {
+        if (shared == null) {
+            shared = start();
+        }
+        return shared;
+    }
+
+    /**
+     * Останавливает общий сервер, если он был запущен.
+     */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Адрес сервера со слешем на конце, например {@code http://localhost:51234/}.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Отдавать по пути {@code path} (например, {@code /app.js}) другое содержимое вместо ресурса.
+     *
+     * @param cacheControl Значение {@code Cache-Control} ответа.
+     */
+    public void put(String path, byte[] body, String cacheControl) {
+        overrides.put(path, new Content(body, cacheControl));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/")) {
+                path += "index.html";
+            }
+
+            Content content = overrides.get(path);
+            if (content == null) {
+                URL resource = path.contains("..") ? null : StandInServer.class.getClassLoader().getResource(ROOT + path);
+                if (resource == null) {
+                    send(exchange, 404, "text/plain; charset=utf-8", ("Не найдено: " + path).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                try (InputStream in = resource.openStream()) {
+                    content = new Content(in.readAllBytes(), "no-cache");
+                }
+            }
+
+            exchange.getResponseHeaders().set("ETag", content.etag());
+            exchange.getResponseHeaders().set("Cache-Control", content.cacheControl());
+            if (content.etag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            String extension = path.substring(path.lastIndexOf('.') + 1);
+            send(exchange, 200, CONTENT_TYPES.getOrDefault(extension, "application/octet-stream"), content.body());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private record Content(byte[] body, String cacheControl) {
+
+        String etag() {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            return "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"";
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,719 @@
+package app;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Потоковое (StAX) сравнение двух XML без учета порядка соседних элементов.
+ * <p>
+ * В отличие от {@link Helpers#compareUnorderedXml(String, String)} документы не загружаются в DOM.
+ * Сравнение идет в три прохода:
+ * <ol>
+ *     <li>Test читается целиком, в фильтр Блума складываются канонические хэши всех его поддеревьев;</li>
+ *     <li>Control читается в "свернутое" дерево: поддерево, хэш которого есть в Test, хранится только
+ *     как хэш + имя + индекс; попутно собирается фильтр хэшей Control;</li>
+ *     <li>Test читается так же, сворачиваясь по хэшам Control.</li>
+ * </ol>
+ * Подробно в памяти остаются только участки, которые действительно отличаются. Свернутые поддеревья
+ * занимают компактную запись (16 байт) в массивах родителя, а фильтры — около 3 байт на элемент, поэтому
+ * память остается линейной по числу элементов, но в разы меньше DOM: плоский корень с миллионами записей
+ * обходится десятками мегабайт. Фильтры растут вместе с числом хэшей (фильтр Control сразу получает
+ * размер по числу элементов Test из первого прохода), и доля ложных срабатываний не превышает долей
+ * процента при любом размере документа. Ложное срабатывание сворачивает отличающееся поддерево, и отличие
+ * будет показано уровнем выше как отсутствующий/лишний узел.
+ * <p>
+ * Сопоставление детей повторяет {@code DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes)}:
+ * сначала равные по хэшу, затем по имени и всем атрибутам, затем по одному имени (чтобы показать
+ * конкретное отличие атрибута вместо пары "отсутствует/лишний"). Пробелы игнорируются, комментарии
+ * и инструкции обработки не сравниваются.
+ * <p>
+ * Правила {@link XmlRules} применяются при чтении, до подсчета хэшей: игнорируемые элементы
+ * пропускаются вместе с поддеревом, игнорируемые атрибуты не читаются, значения нормализуются.
+ * Поэтому поддеревья, равные по правилам, сворачиваются так же, как равные буквально; погрешность
+ * чисел проверяется при сравнении подробных узлов. В отчете — нормализованные значения.
+ */
+public class StreamingXmlComparator {
+
+    /**
+     * Начальный размер фильтра хэшей по умолчанию: 2^20 бит (128 КБ) на документ, дальше фильтр растет.
+     */
+    public static final int DEFAULT_FILTER_BITS_LOG2 = 20;
+
+    private final int filterBitsLog2;
+    private final XmlRules rules;
+
+    // Таблица имен для свернутых узлов: в массивах хранится только номер имени
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    public StreamingXmlComparator() {
+        this(DEFAULT_FILTER_BITS_LOG2);
+    }
+
+    public StreamingXmlComparator(XmlRules rules) {
+        this(DEFAULT_FILTER_BITS_LOG2, rules);
+    }
+
+    /**
+     * @param filterBitsLog2 Двоичный логарифм начального размера фильтра хэшей в битах (от 10 до 34).
+     */
+    public StreamingXmlComparator(int filterBitsLog2) {
+        this(filterBitsLog2, XmlRules.NONE);
+    }
+
+    /**
+     * @param filterBitsLog2 Двоичный логарифм начального размера фильтра хэшей в битах (от 10 до 34).
+     * @param rules          Что не сравнивать и как нормализовать значения.
+     */
+    public StreamingXmlComparator(int filterBitsLog2, XmlRules rules) {
+        if (filterBitsLog2 < 10 || filterBitsLog2 > 34) {
+            throw new IllegalArgumentException("Недопустимый размер фильтра: 2^" + filterBitsLog2);
+        }
+        this.filterBitsLog2 = filterBitsLog2;
+        this.rules = rules;
+    }
+
+    /**
+     * Сравнивает два документа и возвращает описания отличий в том же формате, что и
+     * {@link Helpers#compareUnorderedXml(String, String)}, с лимитом из {@link XmlCompareOptions#defaults()}.
+     */
+    public List<String> compare(XmlSource control, XmlSource test) throws IOException {
+        return compare(control, test, XmlCompareOptions.defaults().maxDifferences()).format();
+    }
+
+    /**
+     * Сравнивает два документа. Сравнение свернутых деревьев прекращается, как только собрано
+     * {@code maxDifferences} отличий (проходы чтения выполняются полностью).
+     */
+    public DifferenceReport compare(XmlSource control, XmlSource test, int maxDifferences) throws IOException {
+        return compare(control, test, new DifferenceReport(maxDifferences));
+    }
+
+    /**
+     * Сравнивает два документа и складывает отличия в {@code differences}, например в отчет
+     * с {@link DifferenceSink}, который пишет их на диск по мере нахождения.
+     *
+     * @return Тот же {@code differences}.
+     */
+    public DifferenceReport compare(XmlSource control, XmlSource test, DifferenceReport differences) throws IOException {
+
+        // 1. Хэши всех поддеревьев Test
+        HashFilter testHashes = new HashFilter(filterBitsLog2);
+        Element testSummary = read(test, null, testHashes);
+
+        // 2. Свернутое дерево Control + хэши Control (фильтр — по числу элементов Test)
+        HashFilter controlHashes = HashFilter.forCount(testHashes.size(), filterBitsLog2);
+        Element controlRoot = read(control, testHashes, controlHashes);
+
+        if (controlRoot.hash == testSummary.hash) {
+            // Документы равны без учета порядка — третий проход не нужен
+            return differences;
+        }
+
+        // 3. Свернутое дерево Test
+        Element testRoot = read(test, controlHashes, null);
+
+        compareRoots(controlRoot, testRoot, differences);
+        return differences;
+    }
+
+    /**
+     * Сравнивает документ Test с эталоном из {@link ControlIndex}: Control не разбирается, а воспроизводится
+     * из индекса, причем поддеревья, равные по хэшу поддеревьям Test, пропускаются целиком.
+     * Результат тот же, что у {@link #compare(XmlSource, XmlSource, int)}.
+     *
+     * @throws IllegalStateException Если заданы правила: индекс хранит хэши исходного документа, без правил.
+     */
+    public DifferenceReport compare(ControlIndex control, XmlSource test, int maxDifferences) throws IOException {
+        if (!rules.isEmpty()) {
+            throw new IllegalStateException("Сравнение с индексом эталона не поддерживает правила " + XmlRules.FILE_KEY);
+        }
+
+        // 1. Хэши всех поддеревьев Test
+        HashFilter testHashes = new HashFilter(filterBitsLog2);
+        Element testSummary = read(test, null, testHashes);
+
+        DifferenceReport differences = new DifferenceReport(maxDifferences);
+        if (control.rootHash() == testSummary.hash) {
+            // Документы равны — индекс дерева даже не открывается
+            return differences;
+        }
+
+        // 2. Хэши Control — из индекса, свернутое дерево Control — воспроизведением индекса
+        HashFilter controlHashes = HashFilter.forCount(testHashes.size(), filterBitsLog2);
+        control.forEachHash(controlHashes::add);
+        Element controlRoot = replay(control, testHashes);
+
+        // 3. Свернутое дерево Test
+        Element testRoot = read(test, controlHashes, null);
+
+        compareRoots(controlRoot, testRoot, differences);
+        return differences;
+    }
+
+    private void compareRoots(Element controlRoot, Element testRoot, DifferenceReport differences) {
+        try (Metrics.Timer ignored = Metrics.start("xml.stream.diff")) {
+            if (controlRoot.name.equals(testRoot.name)) {
+                compareElements(controlRoot, testRoot, differences);
+            } else {
+                differences.add(XmlDifference.missing(controlRoot.xpath()));
+                differences.add(XmlDifference.extra(testRoot.xpath()));
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Чтение документа
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Читает документ, вычисляя хэши всех поддеревьев.
+     *
+     * @param collapseIf Хэши, при наличии в которых поддерево сворачивается. {@code null} — ничего не
+     *                   сохранять (возвращается только корень с хэшем).
+     * @param record     Куда складывать хэши всех поддеревьев (может быть {@code null}).
+     */
+    private Element read(XmlSource source, HashFilter collapseIf, HashFilter record) throws IOException {
+        boolean retain = collapseIf != null;
+        Deque<Element> stack = new ArrayDeque<>();
+        Element root = null;
+
+        try (Metrics.Timer ignored = Metrics.start("xml.stream.read");
+             InputStream in = source.open()) {
+            XMLStreamReader reader = Mappers.STAX_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            Element parent = stack.peek();
+                            if (parent != null) {
+                                // Дочерний элемент (даже игнорируемый) завершает текстовый узел родителя, как в DOM
+                                parent.textNodes().endNode();
+                            }
+                            String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                            XmlRules.Scope scope = (parent == null ? rules.root() : parent.scope).child(name);
+                            if (parent != null && scope.ignored()) {
+                                // Игнорируемое поддерево не хэшируется и не занимает номер среди соседей
+                                skipSubtree(reader);
+                                break;
+                            }
+                            Element element = new Element(parent, name, parent == null ? 1 : parent.nextIndex(name));
+                            element.scope = scope;
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                String attrName = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                                XmlRules.ValueRule rule = scope.attribute(attrName);
+                                if (rule == null) {
+                                    element.addAttribute(attrName, reader.getAttributeValue(i));
+                                } else if (!rule.ignored()) {
+                                    element.addAttribute(attrName, rule.normalize(reader.getAttributeValue(i)));
+                                }
+                            }
+                            stack.push(element);
+                            break;
+                        }
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA: {
+                            Element current = stack.peek();
+                            if (current != null && !reader.isWhiteSpace()) {
+                                current.textNodes().append(reader.getText());
+                            }
+                            break;
+                        }
+                        case XMLStreamConstants.END_ELEMENT: {
+                            Element element = stack.pop();
+                            element.finish();
+                            if (record != null) {
+                                record.add(element.hash);
+                            }
+                            Element parent = stack.peek();
+                            if (parent == null) {
+                                root = element;
+                            } else {
+                                parent.childrenSum += CanonicalHash.child(element.hash);
+                                if (retain) {
+                                    if (collapseIf.mightContain(element.hash)) {
+                                        parent.addCollapsed(element.hash, nameId(element.name), element.index);
+                                    } else {
+                                        parent.children.add(element);
+                                    }
+                                }
+                            }
+                            break;
+                        }
+                        default:
+                            // Комментарии, инструкции обработки и пр. не сравниваются
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Ошибка разбора XML: " + e.getMessage(), e);
+        }
+
+        if (root == null) {
+            throw new IOException("В документе нет корневого элемента");
+        }
+        return root;
+    }
+
+    /**
+     * Строит свернутое дерево из индекса. Хэши уже посчитаны, поэтому решение о свертке принимается
+     * в начале элемента, и свернутое поддерево пропускается без чтения.
+     */
+    private Element replay(ControlIndex index, HashFilter collapseIf) throws IOException {
+        Deque<Element> stack = new ArrayDeque<>();
+        Element root = null;
+
+        try (Metrics.Timer ignored = Metrics.start("xml.index.replay");
+             ControlIndex.Cursor cursor = index.tree()) {
+            int event;
+            while ((event = cursor.next()) != ControlIndex.Cursor.EOF) {
+                if (event == ControlIndex.START) {
+                    Element parent = stack.peek();
+                    String name = cursor.name();
+                    int elementIndex = parent == null ? 1 : parent.nextIndex(name);
+                    if (parent != null && collapseIf.mightContain(cursor.hash())) {
+                        parent.addCollapsed(cursor.hash(), nameId(name), elementIndex);
+                        cursor.skipSubtree();
+                        continue;
+                    }
+                    Element element = new Element(parent, name, elementIndex);
+                    element.hash = cursor.hash();
+                    cursor.readAttributes(element.attributes::put);
+                    stack.push(element);
+                } else {
+                    Element element = stack.pop();
+                    element.finish(cursor.text(), element.hash);
+                    Element parent = stack.peek();
+                    if (parent == null) {
+                        root = element;
+                    } else {
+                        parent.children.add(element);
+                    }
+                }
+            }
+        }
+
+        if (root == null) {
+            throw new IOException("В индексе нет корневого элемента: " + index.file());
+        }
+        return root;
+    }
+
+    private static void skipSubtree(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private int nameId(String name) {
+        return nameIds.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Сравнение свернутых деревьев
+    // ----------------------------------------------------------------------------------
+
+    private void compareElements(Element control, Element test, DifferenceReport differences) {
+        String controlPath = control.xpath();
+        String testPath = test.xpath();
+        // Правила одни для обоих: элементы сопоставлены на одном пути. Test всегда прочитан с правилами
+        XmlRules.Scope scope = test.scope;
+
+        // Атрибуты
+        for (Map.Entry<String, String> attr : control.attributes.entrySet()) {
+            String testValue = test.attributes.get(attr.getKey());
+            if (testValue == null || !XmlRules.equivalent(scope.attribute(attr.getKey()), attr.getValue(), testValue)) {
+                differences.add(XmlDifference.attribute(controlPath + "/@" + attr.getKey(), testPath + "/@" + attr.getKey(),
+                        attr.getKey(), attr.getValue(), testValue));
+            }
+        }
+        for (Map.Entry<String, String> attr : test.attributes.entrySet()) {
+            if (!control.attributes.containsKey(attr.getKey())) {
+                differences.add(XmlDifference.attribute(controlPath + "/@" + attr.getKey(), testPath + "/@" + attr.getKey(),
+                        attr.getKey(), null, attr.getValue()));
+            }
+        }
+
+        // Текст: узлы сравниваются по порядку, как text()[1], text()[2]... в DOM
+        if (!Objects.equals(control.text, test.text)) {
+            String[] controlNodes = TextNodes.split(control.text);
+            String[] testNodes = TextNodes.split(test.text);
+            for (int i = 0; i < Math.max(controlNodes.length, testNodes.length); i++) {
+                String step = "/text()[" + (i + 1) + "]";
+                if (i >= testNodes.length) {
+                    differences.add(XmlDifference.missing(controlPath + step));
+                } else if (i >= controlNodes.length) {
+                    differences.add(XmlDifference.extra(testPath + step));
+                } else if (!XmlRules.equivalent(scope.text(), controlNodes[i], testNodes[i])) {
+                    differences.add(XmlDifference.textValue(controlPath + step, testPath + step, controlNodes[i], testNodes[i]));
+                }
+            }
+        }
+
+        if (!differences.isLimitReached()) {
+            compareChildren(control, test, differences);
+        }
+    }
+
+    private void compareChildren(Element control, Element test, DifferenceReport differences) {
+        int controlDetailed = control.children.size();
+        int testDetailed = test.children.size();
+        boolean[] controlMatched = new boolean[controlDetailed + control.collapsedCount];
+        boolean[] testMatched = new boolean[testDetailed + test.collapsedCount];
+
+        // 1. Равные поддеревья — по хэшу: слияние отсортированных массивов хэшей без упаковки в объекты
+        CommonHashes common = commonHashes(control.childHashes(), test.childHashes());
+        markCommon(control, controlMatched, common);
+        markCommon(test, testMatched, common);
+
+        // 2. Оставшиеся подробные узлы — по имени и всем атрибутам, 3. затем по одному имени
+        Map<String, Deque<Integer>> controlByKey = new HashMap<>();
+        for (int i = 0; i < controlDetailed; i++) {
+            if (!controlMatched[i]) {
+                controlByKey.computeIfAbsent(control.children.get(i).matchKey(), k -> new ArrayDeque<>()).add(i);
+            }
+        }
+        pairDetailed(control, test, controlMatched, testMatched, controlByKey, true, differences);
+
+        Map<String, Deque<Integer>> controlByName = new HashMap<>();
+        for (int i = 0; i < controlDetailed; i++) {
+            if (!controlMatched[i]) {
+                controlByName.computeIfAbsent(control.children.get(i).name, k -> new ArrayDeque<>()).add(i);
+            }
+        }
+        pairDetailed(control, test, controlMatched, testMatched, controlByName, false, differences);
+
+        // 4. Все, что осталось, — отсутствующие и лишние узлы
+        for (int i = 0; i < controlMatched.length; i++) {
+            if (!controlMatched[i] && !differences.add(XmlDifference.missing(control.childXPath(i, names)))) {
+                return;
+            }
+        }
+        for (int i = 0; i < testMatched.length; i++) {
+            if (!testMatched[i] && !differences.add(XmlDifference.extra(test.childXPath(i, names)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Пересечение мультимножеств хэшей детей: сортирует оба массива на месте и сливает их.
+     * Результат — различные общие хэши по возрастанию в {@code distinct} и число общих повторов
+     * каждого в {@code copies}.
+     */
+    private static CommonHashes commonHashes(long[] control, long[] test) {
+        Arrays.sort(control);
+        Arrays.sort(test);
+        int capacity = Math.min(control.length, test.length);
+        long[] distinct = new long[capacity];
+        int[] copies = new int[capacity];
+        int size = 0;
+        int c = 0;
+        int t = 0;
+        while (c < control.length && t < test.length) {
+            if (control[c] < test[t]) {
+                c++;
+            } else if (control[c] > test[t]) {
+                t++;
+            } else {
+                if (size > 0 && distinct[size - 1] == control[c]) {
+                    copies[size - 1]++;
+                } else {
+                    distinct[size] = control[c];
+                    copies[size] = 1;
+                    size++;
+                }
+                c++;
+                t++;
+            }
+        }
+        return new CommonHashes(Arrays.copyOf(distinct, size), Arrays.copyOf(copies, size));
+    }
+
+    /**
+     * Отмечает детей, чей хэш общий, — не больше числа общих повторов хэша, первых по порядку.
+     */
+    private static void markCommon(Element element, boolean[] matched, CommonHashes common) {
+        if (common.distinct.length == 0) {
+            return;
+        }
+        int[] remaining = common.copies.clone();
+        for (int i = 0; i < matched.length; i++) {
+            int found = Arrays.binarySearch(common.distinct, element.childHash(i));
+            if (found >= 0 && remaining[found] > 0) {
+                remaining[found]--;
+                matched[i] = true;
+            }
+        }
+    }
+
+    private static final class CommonHashes {
+        final long[] distinct;
+        final int[] copies;
+
+        CommonHashes(long[] distinct, int[] copies) {
+            this.distinct = distinct;
+            this.copies = copies;
+        }
+    }
+
+    private void pairDetailed(Element control, Element test, boolean[] controlMatched, boolean[] testMatched,
+                              Map<String, Deque<Integer>> controlIndex, boolean byKey, DifferenceReport differences) {
+        if (controlIndex.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < test.children.size() && !differences.isLimitReached(); i++) {
+            if (testMatched[i]) {
+                continue;
+            }
+            Element testChild = test.children.get(i);
+            Deque<Integer> candidates = controlIndex.get(byKey ? testChild.matchKey() : testChild.name);
+            if (candidates != null && !candidates.isEmpty()) {
+                int c = candidates.poll();
+                controlMatched[c] = true;
+                testMatched[i] = true;
+                compareElements(control.children.get(c), testChild, differences);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Свернутое дерево
+    // ----------------------------------------------------------------------------------
+
+    private static final class Element {
+        final Element parent;
+        final String name;
+        final int index;
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        final List<Element> children = new ArrayList<>();
+        // Текстовые узлы через CanonicalHash.TEXT_NODE_SEPARATOR (см. TextNodes)
+        String text;
+        long hash;
+        // Правила пути элемента (при воспроизведении индекса — пустые)
+        XmlRules.Scope scope = XmlRules.NONE.root();
+
+        // Свернутые дети: хэш, номер имени, индекс среди одноименных соседей
+        long[] collapsedHashes = new long[0];
+        int[] collapsedNames = new int[0];
+        int[] collapsedIndexes = new int[0];
+        int collapsedCount;
+
+        // Состояние на время чтения элемента
+        long attributesSum;
+        long childrenSum;
+        private TextNodes textNodes;
+        private Map<String, Integer> childNameCounts;
+
+        Element(Element parent, String name, int index) {
+            this.parent = parent;
+            this.name = name;
+            this.index = index;
+        }
+
+        int nextIndex(String childName) {
+            if (childNameCounts == null) {
+                childNameCounts = new HashMap<>();
+            }
+            return childNameCounts.merge(childName, 1, Integer::sum);
+        }
+
+        void addAttribute(String attrName, String value) {
+            attributes.put(attrName, value);
+            attributesSum += CanonicalHash.attribute(attrName, value);
+        }
+
+        TextNodes textNodes() {
+            if (textNodes == null) {
+                textNodes = new TextNodes();
+            }
+            return textNodes;
+        }
+
+        void finish() {
+            text = textNodes == null ? null : textNodes.finish();
+            XmlRules.ValueRule textRule = scope.text();
+            if (textRule != null && text != null) {
+                if (textRule.ignored()) {
+                    text = null;
+                } else {
+                    // Нормализуется каждый текстовый узел отдельно, как в DOM
+                    String[] nodes = TextNodes.split(text);
+                    for (int i = 0; i < nodes.length; i++) {
+                        nodes[i] = textRule.normalize(nodes[i]);
+                    }
+                    text = TextNodes.join(nodes);
+                }
+            }
+            hash = CanonicalHash.element(name, attributesSum, text, childrenSum);
+            textNodes = null;
+            childNameCounts = null;
+        }
+
+        // Завершение элемента с заранее известным хэшем (воспроизведение индекса)
+        void finish(String elementText, long elementHash) {
+            text = elementText;
+            hash = elementHash;
+            textNodes = null;
+            childNameCounts = null;
+        }
+
+        void addCollapsed(long childHash, int nameId, int childIndex) {
+            if (collapsedCount == collapsedHashes.length) {
+                int capacity = Math.max(8, collapsedCount * 2);
+                collapsedHashes = Arrays.copyOf(collapsedHashes, capacity);
+                collapsedNames = Arrays.copyOf(collapsedNames, capacity);
+                collapsedIndexes = Arrays.copyOf(collapsedIndexes, capacity);
+            }
+            collapsedHashes[collapsedCount] = childHash;
+            collapsedNames[collapsedCount] = nameId;
+            collapsedIndexes[collapsedCount] = childIndex;
+            collapsedCount++;
+        }
+
+        /**
+         * Хэши всех детей в порядке общих номеров (новый массив).
+         */
+        long[] childHashes() {
+            long[] hashes = new long[children.size() + collapsedCount];
+            for (int i = 0; i < children.size(); i++) {
+                hashes[i] = children.get(i).hash;
+            }
+            System.arraycopy(collapsedHashes, 0, hashes, children.size(), collapsedCount);
+            return hashes;
+        }
+
+        /**
+         * Хэш ребенка с общим номером {@code i}: сначала подробные дети, затем свернутые.
+         */
+        long childHash(int i) {
+            return i < children.size() ? children.get(i).hash : collapsedHashes[i - children.size()];
+        }
+
+        String childXPath(int i, List<String> names) {
+            if (i < children.size()) {
+                return children.get(i).xpath();
+            }
+            int c = i - children.size();
+            return xpath() + "/" + names.get(collapsedNames[c]) + "[" + collapsedIndexes[c] + "]";
+        }
+
+        String matchKey() {
+            return attributes.isEmpty() ? name : name + new TreeMap<>(attributes);
+        }
+
+        String xpath() {
+            String step = "/" + name + "[" + index + "]";
+            return parent == null ? step : parent.xpath() + step;
+        }
+    }
+
+    /**
+     * Растущий фильтр Блума для 64-битных хэшей. Когда в текущую ступень добавлено столько хэшей, что на
+     * каждый приходится {@value #BITS_PER_HASH} бит, открывается следующая ступень вдвое больше. Доля
+     * ложных срабатываний заполненной ступени около 0,01%, поэтому и сумма по ступеням не зависит от
+     * размера документа.
+     */
+    private static final class HashFilter {
+        private static final int BITS_PER_HASH = 24;
+        private static final int HASH_FUNCTIONS = 6;
+        private static final int MAX_BITS_LOG2 = 34;
+
+        private final List<long[]> stages = new ArrayList<>();
+        private long[] bits;
+        private long mask;
+        private long stageCapacity;
+        private long stageSize;
+        private long size;
+
+        HashFilter(int bitsLog2) {
+            addStage(bitsLog2);
+        }
+
+        /**
+         * Фильтр, первая ступень которого вмещает {@code expectedHashes} хэшей.
+         */
+        static HashFilter forCount(long expectedHashes, int minBitsLog2) {
+            int bitsLog2 = 64 - Long.numberOfLeadingZeros(Math.max(1, expectedHashes * BITS_PER_HASH - 1));
+            return new HashFilter(Math.min(MAX_BITS_LOG2, Math.max(minBitsLog2, bitsLog2)));
+        }
+
+        private void addStage(int bitsLog2) {
+            bits = new long[1 << (bitsLog2 - 6)];
+            mask = (1L << bitsLog2) - 1;
+            stageCapacity = (1L << bitsLog2) / BITS_PER_HASH;
+            stageSize = 0;
+            stages.add(bits);
+        }
+
+        /**
+         * Сколько хэшей добавлено (с повторами).
+         */
+        long size() {
+            return size;
+        }
+
+        void add(long hash) {
+            if (stageSize == stageCapacity) {
+                addStage(Math.min(MAX_BITS_LOG2, Long.numberOfTrailingZeros(mask + 1) + 1));
+            }
+            long h2 = CanonicalHash.mix(hash) | 1;
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                long bit = (hash + i * h2) & mask;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            stageSize++;
+            size++;
+        }
+
+        boolean mightContain(long hash) {
+            long h2 = CanonicalHash.mix(hash) | 1;
+            for (long[] stage : stages) {
+                long stageMask = ((long) stage.length << 6) - 1;
+                if (contains(stage, stageMask, hash, h2)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(long[] stage, long stageMask, long hash, long h2) {
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                long bit = (hash + i * h2) & stageMask;
+                if ((stage[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
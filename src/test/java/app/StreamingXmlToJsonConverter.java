@@ -0,0 +1,362 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Потоковое преобразование XML в JSON без построения дерева {@code JsonNode}.
+ * <p>
+ * Результат совпадает с {@code XmlMapper.readTree} + {@code ObjectMapper.writeValueAsString}:
+ * корневой элемент становится объектом, атрибуты и дочерние элементы — полями, элемент только с текстом —
+ * строкой, пустой элемент — "", смешанный текст — полем "", повторяющиеся имена — массивом на месте
+ * первого вхождения.
+ * <p>
+ * Документ читается дважды. Первый проход находит элементы с повторяющимися именами детей
+ * и запоминает только их (номер элемента + общий для одинаковых наборов набор повторов). Второй проход
+ * пишет токены прямо в {@link JsonGenerator}. Если повторы идут подряд (обычный случай: список
+ * {@code <item>}), массив открывается на первом и закрывается после последнего.
+ * Если одноименные элементы перемежаются с другими, поля такого элемента приходится
+ * буферизовать до его конца, и память растет на размер этого элемента.
+ * <p>
+ * Память не постоянна: таблица первого прохода держит запись (около 50 байт) на каждый элемент
+ * с повторяющимися детьми. Для списка {@code <item>} это одна запись, но в документе из миллиона
+ * записей, у каждой из которых есть повторы (несколько {@code <phone>} и т.п.), таблица займет
+ * десятки мегабайт — все равно много меньше дерева {@code JsonNode}.
+ */
+public class StreamingXmlToJsonConverter {
+
+    private final boolean pretty;
+
+    /**
+     * @param pretty {@code true} — форматировать как {@code writerWithDefaultPrettyPrinter()}.
+     */
+    public StreamingXmlToJsonConverter(boolean pretty) {
+        this.pretty = pretty;
+    }
+
+    /**
+     * Преобразует XML в JSON и пишет результат в UTF-8. Поток {@code out} не закрывается.
+     */
+    public void convert(XmlSource xml, OutputStream out) throws IOException {
+
+        // 1. Какие элементы содержат повторяющиеся имена
+        Map<Long, Repeats> repeats = findRepeats(xml);
+
+        // 2. Пишем JSON
+        try (JsonGenerator generator = Mappers.JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (pretty) {
+                generator.useDefaultPrettyPrinter();
+            }
+            write(xml, repeats, generator);
+        }
+    }
+
+    /**
+     * Преобразует XML и передает токены JSON в {@code generator}, например в {@link TokenBuffer}, чтобы
+     * прочитать результат без промежуточного текста (см. {@link JsonTreeComparator}). Генератор не закрывается.
+     */
+    public void convert(XmlSource xml, JsonGenerator generator) throws IOException {
+        write(xml, findRepeats(xml), generator);
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Проход 1: поиск повторяющихся имен
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Номера элементов с повторяющимися детьми — по записи на каждый такой элемент.
+     */
+    private Map<Long, Repeats> findRepeats(XmlSource xml) throws IOException {
+        Map<Long, Repeats> result = new HashMap<>();
+        Map<Repeats, Repeats> interned = new HashMap<>();
+        Deque<KeyScan> stack = new ArrayDeque<>();
+        long ordinal = 0;
+
+        try (InputStream in = xml.open()) {
+            XMLStreamReader reader = Mappers.STAX_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            KeyScan parent = stack.peek();
+                            if (parent != null) {
+                                parent.beforeChild();
+                                parent.key(reader.getLocalName());
+                            }
+                            KeyScan scan = new KeyScan(ordinal++, reader.getAttributeCount() > 0);
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                scan.key(reader.getAttributeLocalName(i));
+                            }
+                            stack.push(scan);
+                            break;
+                        }
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA: {
+                            KeyScan current = stack.peek();
+                            if (current != null && !reader.isWhiteSpace()) {
+                                current.pendingText = true;
+                            }
+                            break;
+                        }
+                        case XMLStreamConstants.END_ELEMENT: {
+                            KeyScan scan = stack.pop();
+                            Repeats found = scan.finish(stack.isEmpty());
+                            if (found != null) {
+                                result.put(scan.ordinal, interned.computeIfAbsent(found, r -> r));
+                            }
+                            break;
+                        }
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Ошибка разбора XML: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Повторяющиеся имена полей одного элемента.
+     *
+     * @param names      Имена, встречающиеся больше одного раза.
+     * @param contiguous {@code true}, если все вхождения каждого повторяющегося имени идут подряд.
+     */
+    private record Repeats(Set<String> names, boolean contiguous) {
+    }
+
+    private static final class KeyScan {
+        final long ordinal;
+        final boolean hasAttributes;
+        final Map<String, int[]> keys = new HashMap<>(); // имя -> {количество, позиция последнего}
+        int position;
+        int children;
+        boolean pendingText;
+
+        KeyScan(long ordinal, boolean hasAttributes) {
+            this.ordinal = ordinal;
+            this.hasAttributes = hasAttributes;
+        }
+
+        void beforeChild() {
+            if (pendingText) {
+                key("");
+                pendingText = false;
+            }
+            children++;
+        }
+
+        void key(String name) {
+            int[] state = keys.get(name);
+            if (state == null) {
+                keys.put(name, new int[]{1, position});
+            } else {
+                // Разрыв серии отмечаем отрицательным счетчиком
+                state[0] = state[1] == position - 1 && state[0] > 0 ? state[0] + 1 : -(Math.abs(state[0]) + 1);
+                state[1] = position;
+            }
+            position++;
+        }
+
+        Repeats finish(boolean root) {
+            if (pendingText && (hasAttributes || children > 0 || root)) {
+                key("");
+            }
+            Set<String> names = null;
+            boolean contiguous = true;
+            for (Map.Entry<String, int[]> entry : keys.entrySet()) {
+                int count = entry.getValue()[0];
+                if (count > 1 || count < 0) {
+                    if (names == null) {
+                        names = new TreeSet<>();
+                    }
+                    names.add(entry.getKey());
+                    contiguous &= count > 0;
+                }
+            }
+            return names == null ? null : new Repeats(names, contiguous);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Проход 2: запись JSON
+    // ----------------------------------------------------------------------------------
+
+    private void write(XmlSource xml, Map<Long, Repeats> repeats, JsonGenerator generator) throws IOException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        long ordinal = 0;
+
+        try (InputStream in = xml.open()) {
+            XMLStreamReader reader = Mappers.STAX_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            Frame parent = stack.peek();
+                            JsonGenerator target;
+                            if (parent == null) {
+                                target = generator;
+                            } else {
+                                parent.beforeChild();
+                                target = parent.member(reader.getLocalName());
+                            }
+                            Frame frame = new Frame(target, repeats.get(ordinal++), parent == null);
+                            if (parent == null || reader.getAttributeCount() > 0) {
+                                frame.startObject();
+                            }
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                frame.member(reader.getAttributeLocalName(i)).writeString(reader.getAttributeValue(i));
+                            }
+                            stack.push(frame);
+                            break;
+                        }
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE: {
+                            Frame current = stack.peek();
+                            if (current != null) {
+                                current.text.append(reader.getText());
+                            }
+                            break;
+                        }
+                        case XMLStreamConstants.END_ELEMENT:
+                            stack.pop().end();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Ошибка разбора XML: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Открытый элемент при записи.
+     */
+    private static final class Frame {
+        final JsonGenerator out;
+        final Repeats repeats;
+        final boolean root;
+        final StringBuilder text = new StringBuilder();
+        boolean object;
+
+        // Повторы подряд: имя открытого массива
+        String openArray;
+
+        // Повторы вразброс: значения по именам в порядке первого вхождения
+        Map<String, TokenBuffer> buffers;
+        Map<String, Integer> counts;
+
+        Frame(JsonGenerator out, Repeats repeats, boolean root) {
+            this.out = out;
+            this.repeats = repeats;
+            this.root = root;
+            if (repeats != null && !repeats.contiguous()) {
+                buffers = new LinkedHashMap<>();
+                counts = new HashMap<>();
+            }
+        }
+
+        void startObject() throws IOException {
+            if (!object) {
+                out.writeStartObject();
+                object = true;
+            }
+        }
+
+        /**
+         * Текст перед дочерним элементом: объект начинается, непробельный текст уходит в поле "".
+         */
+        void beforeChild() throws IOException {
+            startObject();
+            flushText();
+        }
+
+        private void flushText() throws IOException {
+            String value = text.toString();
+            if (!value.isBlank()) {
+                member("").writeString(value);
+            }
+            text.setLength(0);
+        }
+
+        /**
+         * Начинает поле {@code name} и возвращает генератор, в который нужно записать его значение.
+         */
+        JsonGenerator member(String name) throws IOException {
+            boolean repeated = repeats != null && repeats.names().contains(name);
+
+            if (buffers != null) {
+                TokenBuffer buffer = buffers.get(name);
+                if (buffer == null) {
+                    buffer = new TokenBuffer(null, false);
+                    buffers.put(name, buffer);
+                }
+                counts.merge(name, 1, Integer::sum);
+                return buffer;
+            }
+
+            if (openArray != null && !openArray.equals(name)) {
+                out.writeEndArray();
+                openArray = null;
+            }
+            if (openArray == null) {
+                out.writeFieldName(name);
+                if (repeated) {
+                    out.writeStartArray();
+                    openArray = name;
+                }
+            }
+            return out;
+        }
+
+        void end() throws IOException {
+            if (!object) {
+                // Лист без атрибутов — строка
+                out.writeString(text.toString());
+                return;
+            }
+            flushText();
+            if (openArray != null) {
+                out.writeEndArray();
+            }
+            if (buffers != null) {
+                for (Map.Entry<String, TokenBuffer> entry : buffers.entrySet()) {
+                    out.writeFieldName(entry.getKey());
+                    boolean array = counts.get(entry.getKey()) > 1;
+                    if (array) {
+                        out.writeStartArray();
+                    }
+                    entry.getValue().serialize(out);
+                    if (array) {
+                        out.writeEndArray();
+                    }
+                }
+            }
+            out.writeEndObject();
+        }
+    }
+}
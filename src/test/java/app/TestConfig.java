@@ -0,0 +1,60 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Настройки тестов из {@code config.properties} (из ресурсов).
+ * <p>
+ * Загружаются один раз на JVM и доступны из любого потока, поэтому параллельные тестовые классы
+ * видят одну и ту же конфигурацию. Системное свойство с тем же ключом ({@code -Dheadless=true})
+ * имеет приоритет над файлом.
+ */
+public final class TestConfig {
+
+    private static final String CONFIG_RESOURCE = "config.properties";
+    private static final Properties PROPERTIES = load();
+
+    private TestConfig() {
+    }
+
+    private static Properties load() {
+        Properties config = new Properties();
+        try (InputStream in = Resources.openStream(CONFIG_RESOURCE)) {
+            config.load(in);
+        } catch (IOException e) {
+            System.err.println("Ошибка при загрузке файла конфигурации: " + CONFIG_RESOURCE);
+            e.printStackTrace();
+        }
+        return config;
+    }
+
+    /**
+     * Значение настройки или {@code null}, если она не задана.
+     */
+    public static String get(String key) {
+        String value = System.getProperty(key, PROPERTIES.getProperty(key));
+        return value == null ? null : value.trim();
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
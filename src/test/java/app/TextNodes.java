@@ -0,0 +1,69 @@
+package app;
+
+/**
+ * Собственный текст элемента, собираемый при потоковом чтении, — последовательность текстовых узлов,
+ * как ее видит DOM с {@code ignoreWhitespace}: узлы разделяются дочерними элементами, каждый обрезается
+ * по краям, пустые отбрасываются. Узлы хранятся одной строкой через {@link CanonicalHash#TEXT_NODE_SEPARATOR},
+ * поэтому {@code <r>a<b/>c</r>} и {@code <r>ac<b/></r>} не сливаются в один текст.
+ */
+final class TextNodes {
+
+    private static final String SEPARATOR = String.valueOf(CanonicalHash.TEXT_NODE_SEPARATOR);
+
+    private StringBuilder nodes;
+    private StringBuilder node;
+
+    /**
+     * Очередной фрагмент текущего узла: парсер может выдать один узел несколькими событиями.
+     */
+    void append(String chunk) {
+        if (node == null) {
+            node = new StringBuilder();
+        }
+        node.append(chunk);
+    }
+
+    /**
+     * Закрывает текущий узел — перед дочерним элементом и в конце элемента.
+     */
+    void endNode() {
+        if (node == null || node.length() == 0) {
+            return;
+        }
+        String value = node.toString().trim();
+        node.setLength(0);
+        if (value.isEmpty()) {
+            return;
+        }
+        if (nodes == null) {
+            nodes = new StringBuilder(value.length());
+        } else {
+            nodes.append(CanonicalHash.TEXT_NODE_SEPARATOR);
+        }
+        nodes.append(value);
+    }
+
+    /**
+     * Закрывает последний узел и возвращает все узлы одной строкой.
+     *
+     * @return {@code null}, если непустых узлов нет.
+     */
+    String finish() {
+        endNode();
+        return nodes == null ? null : nodes.toString();
+    }
+
+    /**
+     * Разбивает строку из {@link #finish()} на узлы по порядку.
+     */
+    static String[] split(String text) {
+        return text == null ? new String[0] : text.split(SEPARATOR, -1);
+    }
+
+    /**
+     * Обратное к {@link #split(String)}.
+     */
+    static String join(String[] nodes) {
+        return nodes.length == 0 ? null : String.join(SEPARATOR, nodes);
+    }
+}
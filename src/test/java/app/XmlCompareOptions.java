@@ -0,0 +1,71 @@
+package app;
+
+import java.util.Objects;
+
+/**
+ * Настройки сравнения XML.
+ *
+ * @param strategy       Способ сопоставления соседних узлов.
+ * @param maxDifferences Сколько отличий собрать, прежде чем остановить сравнение. Сильно испорченный файл
+ *                       иначе дает миллионы отличий и исчерпывает память.
+ * @param sink           Куда писать отличия по мере нахождения вместо списка в памяти или {@code null}
+ *                       (см. {@link DifferenceSink}). Закрывает приемник тот, кто его открыл.
+ * @param rules          Что не сравнивать и как нормализовать значения ({@link XmlRules}).
+ */
+public record XmlCompareOptions(NodeMatchStrategy strategy, int maxDifferences, DifferenceSink sink, XmlRules rules) {
+
+    /**
+     * Лимит отличий по умолчанию (по умолчанию 100 000).
+     */
+    public static final String MAX_DIFFERENCES_PROPERTY = "xml.compare.maxDifferences";
+
+    public XmlCompareOptions {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("Лимит отличий должен быть положительным: " + maxDifferences);
+        }
+        Objects.requireNonNull(rules, "rules");
+    }
+
+    /**
+     * Без приемника и без правил.
+     */
+    public XmlCompareOptions(NodeMatchStrategy strategy, int maxDifferences) {
+        this(strategy, maxDifferences, null, XmlRules.NONE);
+    }
+
+    /**
+     * {@link NodeMatchStrategy#BY_NAME_AND_ALL_ATTRIBUTES}, лимит из {@value #MAX_DIFFERENCES_PROPERTY},
+     * правила из {@value XmlRules#FILE_KEY}.
+     */
+    public static XmlCompareOptions defaults() {
+        return new XmlCompareOptions(
+                NodeMatchStrategy.BY_NAME_AND_ALL_ATTRIBUTES,
+                Integer.getInteger(MAX_DIFFERENCES_PROPERTY, 100_000),
+                null,
+                XmlRules.fromConfig()
+        );
+    }
+
+    public XmlCompareOptions withStrategy(NodeMatchStrategy strategy) {
+        return new XmlCompareOptions(strategy, maxDifferences, sink, rules);
+    }
+
+    public XmlCompareOptions withMaxDifferences(int maxDifferences) {
+        return new XmlCompareOptions(strategy, maxDifferences, sink, rules);
+    }
+
+    public XmlCompareOptions withSink(DifferenceSink sink) {
+        return new XmlCompareOptions(strategy, maxDifferences, sink, rules);
+    }
+
+    public XmlCompareOptions withRules(XmlRules rules) {
+        return new XmlCompareOptions(strategy, maxDifferences, sink, rules);
+    }
+
+    /**
+     * Пустой отчет с лимитом и приемником этих настроек.
+     */
+    public DifferenceReport newReport() {
+        return new DifferenceReport(maxDifferences, sink);
+    }
+}
@@ -0,0 +1,116 @@
+package app;
+
+import java.util.regex.Pattern;
+
+/**
+ * Одно найденное отличие двух XML в компактном виде.
+ * <p>
+ * Хранятся только тип, пути и значения. Текст сообщения собирается в {@link #format()} только при выводе,
+ * поэтому тысячи отличий не превращаются в тысячи длинных строк.
+ *
+ * @param kind        Тип отличия.
+ * @param controlPath XPath в Control или {@code null}.
+ * @param testPath    XPath в Test или {@code null}.
+ * @param name        Имя атрибута ({@link Kind#ATTRIBUTE}) или описание сравнения ({@link Kind#OTHER}).
+ * @param expected    Значение в Control.
+ * @param found       Значение в Test.
+ */
+public record XmlDifference(Kind kind, String controlPath, String testPath, String name, String expected, String found) {
+
+    private static final Pattern INDEX = Pattern.compile("\\[\\d+]");
+
+    public enum Kind {
+        /** Отличается, отсутствует или лишний атрибут. */
+        ATTRIBUTE,
+        /** Отличается текст элемента. */
+        TEXT_VALUE,
+        /** Узел есть в Control, но не найден в Test. */
+        MISSING_NODE,
+        /** Узел есть в Test, но не найден в Control. */
+        EXTRA_NODE,
+        /** Узел найден в обоих документах, но сопоставитель не смог связать его (обычно из-за атрибута). */
+        BROKEN_MATCH,
+        /** Не удалось сопоставить узлы. */
+        UNMATCHED,
+        /** Прочие структурные отличия (имя элемента, пространство имен и т.п.). */
+        OTHER
+    }
+
+    public static XmlDifference attribute(String controlPath, String testPath, String name, String expected, String found) {
+        return new XmlDifference(Kind.ATTRIBUTE, controlPath, testPath, name, expected, found);
+    }
+
+    public static XmlDifference textValue(String controlPath, String testPath, String expected, String found) {
+        return new XmlDifference(Kind.TEXT_VALUE, controlPath, testPath, null, expected, found);
+    }
+
+    public static XmlDifference missing(String controlPath) {
+        return new XmlDifference(Kind.MISSING_NODE, controlPath, null, null, null, null);
+    }
+
+    public static XmlDifference extra(String testPath) {
+        return new XmlDifference(Kind.EXTRA_NODE, null, testPath, null, null, null);
+    }
+
+    /**
+     * Основной путь отличия — тот, что выводится в сообщении первым.
+     */
+    public String path() {
+        return switch (kind) {
+            case ATTRIBUTE, TEXT_VALUE, EXTRA_NODE -> testPath;
+            case MISSING_NODE, UNMATCHED, OTHER -> controlPath;
+            case BROKEN_MATCH -> controlPath != null ? controlPath : testPath;
+        };
+    }
+
+    /**
+     * Путь без номеров шагов: {@code /root[1]/item[25]/@id} -> {@code /root/item/@id}.
+     * Одинаковые отличия в повторяющихся элементах дают один шаблон (см. {@link DifferenceReport#groups()}).
+     */
+    public String pattern() {
+        String path = path();
+        return path == null ? "" : INDEX.matcher(path).replaceAll("");
+    }
+
+    /**
+     * Текст отличия в формате, который исторически выдает {@link Helpers#compareUnorderedXml(String, String)}.
+     */
+    public String format() {
+        return switch (kind) {
+            case ATTRIBUTE -> String.format(
+                    "Отличие АТРИБУТА: Путь: %s, Атрибут: '%s', Ожидалось: '%s', Найдено: '%s'",
+                    testPath, name, expected, found
+            );
+            case TEXT_VALUE -> String.format(
+                    "Отличие ЗНАЧЕНИЯ: Путь: %s, Ожидалось: '%s', Найдено: '%s'",
+                    testPath, expected, found
+            );
+            case MISSING_NODE -> String.format(
+                    "Отличие СТРУКТУРЫ (УЗЕЛ ОТСУТСТВУЕТ в Test): Путь Control: %s",
+                    controlPath
+            );
+            case EXTRA_NODE -> String.format(
+                    "Отличие СТРУКТУРЫ (ЛИШНИЙ УЗЕЛ в Test): Путь Test: %s",
+                    testPath
+            );
+            case BROKEN_MATCH -> String.format(
+                    "Отличие ЗНАЧЕНИЯ/АТРИБУТА (Сломано сопоставление): Путь: %s\n" +
+                            "Проверьте, не отличаются ли атрибуты, которые ломают сопоставитель (value)",
+                    path()
+            );
+            case UNMATCHED -> String.format(
+                    "Отличие СТРУКТУРЫ (Не удалось сопоставить): Control: %s, Test: %s",
+                    controlPath, testPath
+            );
+            case OTHER -> String.format(
+                    "Отличие СТРУКТУРЫ (%s): Путь Control: %s, Путь Test: %s",
+                    name, controlPath, testPath
+            );
+        };
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
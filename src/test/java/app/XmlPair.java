@@ -0,0 +1,19 @@
+package app;
+
+import java.nio.file.Path;
+
+/**
+ * Пара файлов для сравнения: эталон (control) и проверяемый (test).
+ *
+ * @param name    Имя пары в отчетах (обычно относительный путь файла).
+ * @param control Эталонный файл.
+ * @param test    Проверяемый файл.
+ */
+public record XmlPair(String name, Path control, Path test) {
+
+    // Короткое имя — его TestNG показывает как параметр теста
+    @Override
+    public String toString() {
+        return name;
+    }
+}
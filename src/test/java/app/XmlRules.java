@@ -0,0 +1,597 @@
+package app;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xmlunit.diff.ElementSelector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Правила сравнения XML: какие узлы не сравнивать и как приводить значения к общему виду.
+ * <p>
+ * Файл правил — по правилу в строке, строки с {@code #} в начале — комментарии:
+ * <pre>
+ * ignore    //@generatedId                         атрибут на любой глубине
+ * ignore    /order/meta                            элемент вместе с поддеревом
+ * ignore    /order/comment/text()                  только текст элемента
+ * normalize /order/customer/@name  case whitespace регистр и пробелы
+ * tolerance /order/items/item/price  0.01          числа с погрешностью
+ * date      /order/@created  iso | dd.MM.yyyy HH:mm  даты в любом из форматов
+ * </pre>
+ * Путь — подмножество XPath: шаги от корня через {@code /}, {@code //} — любая глубина, {@code *} — любое
+ * имя, последний шаг может быть {@code @имя}, {@code @*} или {@code text()}. Номера шагов ({@code [2]})
+ * не поддерживаются: правило относится ко всем одноименным элементам. Правила normalize, tolerance и date
+ * для элемента относятся к его тексту. Если к значению подходят несколько правил, они объединяются.
+ * <p>
+ * Правила компилируются в префиксное дерево шагов. Каждому элементу документа соответствует {@link Scope} —
+ * узлы дерева, достижимые по его пути. Переход к ребенку запоминается, поэтому правила узла находятся
+ * за O(глубины), а на повторяющихся путях — за O(1). Игнорируемые узлы отбрасываются до сравнения
+ * (фильтры {@code DiffBuilder}, пропуск при потоковом чтении), а не отсевом готовых отличий.
+ */
+public final class XmlRules {
+
+    /**
+     * Файл правил: путь в ресурсах или на диске; пусто — без правил.
+     */
+    public static final String FILE_KEY = "xml.rules";
+
+    /**
+     * Без правил: все узлы сравниваются как есть.
+     */
+    public static final XmlRules NONE = new XmlRules(new Step(false), 0);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Map<String, XmlRules> LOADED = new ConcurrentHashMap<>();
+
+    private final Step root;
+    private final int size;
+    private final Scope rootScope;
+
+    private XmlRules(Step root, int size) {
+        this.root = root;
+        this.size = size;
+        this.rootScope = size == 0 ? Scope.EMPTY : new Scope(closure(List.of(root)));
+    }
+
+    /**
+     * Правила из строк файла.
+     *
+     * @param source Имя файла для сообщений об ошибках.
+     * @throws IllegalArgumentException Если правило записано неверно.
+     */
+    public static XmlRules parse(List<String> lines, String source) {
+        Step root = new Step(false);
+        int size = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                addRule(root, line);
+                size++;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(source + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return size == 0 ? NONE : new XmlRules(root, size);
+    }
+
+    /**
+     * Правила из файла на диске или, если такого файла нет, из ресурсов.
+     */
+    public static XmlRules load(String path) throws IOException {
+        Path file = Path.of(path);
+        try (InputStream in = Files.isRegularFile(file) ? Files.newInputStream(file) : Resources.openStream(path);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return parse(reader.lines().toList(), path);
+        }
+    }
+
+    /**
+     * Правила из файла {@value #FILE_KEY}. Файл читается один раз на JVM.
+     */
+    public static XmlRules fromConfig() {
+        String path = TestConfig.get(FILE_KEY, "").trim();
+        if (path.isEmpty()) {
+            return NONE;
+        }
+        return LOADED.computeIfAbsent(path, p -> {
+            try {
+                return load(p);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось прочитать правила сравнения " + p + " (" + FILE_KEY + ")", e);
+            }
+        });
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Область над корнем документа: {@code root().child(имя корня)} — область корневого элемента.
+     */
+    public Scope root() {
+        return rootScope;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // DOM (XMLUnit)
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Область элемента DOM: путь от корня проходится по запомненным переходам, O(глубины).
+     */
+    public Scope scope(Node element) {
+        if (isEmpty()) {
+            return Scope.EMPTY;
+        }
+        Deque<String> names = new ArrayDeque<>();
+        for (Node node = element; node != null && node.getNodeType() == Node.ELEMENT_NODE; node = node.getParentNode()) {
+            names.push(node.getNodeName());
+        }
+        Scope scope = rootScope;
+        for (String name : names) {
+            scope = scope.child(name);
+        }
+        return scope;
+    }
+
+    /**
+     * Узел не сравнивается: элемент целиком или текст элемента. Для {@code DiffBuilder.withNodeFilter}.
+     */
+    public boolean ignores(Node node) {
+        if (isEmpty()) {
+            return false;
+        }
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                return scope(node).ignored();
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                ValueRule text = scope(node.getParentNode()).text();
+                return text != null && text.ignored();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Атрибут не сравнивается. Для {@code DiffBuilder.withAttributeFilter}.
+     */
+    public boolean ignores(Attr attr) {
+        if (isEmpty()) {
+            return false;
+        }
+        ValueRule rule = scope(attr.getOwnerElement()).attribute(attr.getNodeName());
+        return rule != null && rule.ignored();
+    }
+
+    /**
+     * Правило значения узла DOM: атрибута или текста элемента; {@code null} — сравнивать как есть.
+     */
+    public ValueRule rule(Node target) {
+        if (isEmpty() || target == null) {
+            return null;
+        }
+        switch (target.getNodeType()) {
+            case Node.ATTRIBUTE_NODE:
+                return scope(((Attr) target).getOwnerElement()).attribute(target.getNodeName());
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                return scope(target.getParentNode()).text();
+            case Node.ELEMENT_NODE:
+                return scope(target).text();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Аналог {@code ElementSelectors.byNameAndAllAttributes}, который не учитывает игнорируемые атрибуты
+     * и сравнивает значения по правилам. Иначе элементы, отличающиеся, например, сгенерированным
+     * идентификатором, не сопоставились бы вовсе. Экземпляр рассчитан на одно сравнение.
+     */
+    public ElementSelector elementSelector() {
+        Map<Node, Scope> scopes = new IdentityHashMap<>();
+        return (control, test) -> {
+            if (!control.getNodeName().equals(test.getNodeName())) {
+                return false;
+            }
+            Scope scope = scopes.computeIfAbsent(test, this::scope);
+            Map<String, String> controlAttributes = attributes(control, scope);
+            Map<String, String> testAttributes = attributes(test, scope);
+            if (controlAttributes.size() != testAttributes.size()) {
+                return false;
+            }
+            for (Map.Entry<String, String> attr : controlAttributes.entrySet()) {
+                String testValue = testAttributes.get(attr.getKey());
+                if (testValue == null || !equivalent(scope.attribute(attr.getKey()), attr.getValue(), testValue)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    // Атрибуты, которые сравниваются по правилам (без xmlns и игнорируемых)
+    private static Map<String, String> attributes(Element element, Scope scope) {
+        NamedNodeMap attributes = element.getAttributes();
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attr = attributes.item(i);
+            String name = attr.getNodeName();
+            if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+                continue;
+            }
+            ValueRule rule = scope.attribute(name);
+            if (rule == null || !rule.ignored()) {
+                result.put(name, attr.getNodeValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Равны ли значения по правилу; без правила — точное сравнение.
+     */
+    public static boolean equivalent(ValueRule rule, String control, String test) {
+        return rule == null ? Objects.equals(control, test) : rule.equivalent(control, test);
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Разбор правил
+    // ----------------------------------------------------------------------------------
+
+    private static void addRule(Step root, String line) {
+        String[] parts = line.split("\\s+", 3);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Нужно действие и путь: '" + line + "'");
+        }
+        String options = parts.length == 3 ? parts[2].trim() : "";
+        ValueRule rule = switch (parts[0].toLowerCase(Locale.ROOT)) {
+            case "ignore" -> ValueRule.IGNORE;
+            case "normalize" -> ValueRule.normalization(options);
+            case "tolerance" -> ValueRule.tolerance(options);
+            case "date" -> ValueRule.dates(options);
+            default -> throw new IllegalArgumentException("Неизвестное действие '" + parts[0]
+                    + "': нужно ignore, normalize, tolerance или date");
+        };
+        compile(root, parts[1], rule);
+    }
+
+    // Путь -> шаги префиксного дерева; правило вешается на последний шаг
+    private static void compile(Step root, String path, ValueRule rule) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Путь должен начинаться с '/': " + path);
+        }
+        Step step = root;
+        int i = 0;
+        while (i < path.length()) {
+            boolean deep = path.startsWith("//", i);
+            i += deep ? 2 : 1;
+            int end = path.indexOf('/', i);
+            if (end < 0) {
+                end = path.length();
+            }
+            String name = path.substring(i, end);
+            i = end;
+            if (name.isEmpty() || name.contains("[")) {
+                throw new IllegalArgumentException("Недопустимый шаг '" + name + "' в пути " + path
+                        + ": поддерживаются имена, '*', '@имя' и 'text()' без условий в []");
+            }
+            if (deep) {
+                step = step.descendant();
+            }
+            boolean last = end == path.length();
+            if (name.startsWith("@") || name.equals("text()")) {
+                if (!last) {
+                    throw new IllegalArgumentException("Шаг '" + name + "' может быть только последним: " + path);
+                }
+                if (name.startsWith("@")) {
+                    step.attributes.merge(name.substring(1), rule, ValueRule::merge);
+                } else {
+                    step.text = ValueRule.merge(step.text, rule);
+                }
+            } else {
+                step = step.children.computeIfAbsent(name, n -> new Step(false));
+                if (last) {
+                    if (rule.ignored()) {
+                        step.ignore = true;
+                    } else {
+                        step.text = ValueRule.merge(step.text, rule);
+                    }
+                }
+            }
+        }
+    }
+
+    // Шаги плюс узлы после "//", достижимые из них без перехода
+    private static Step[] closure(List<Step> steps) {
+        List<Step> result = new ArrayList<>();
+        for (Step step : steps) {
+            addWithDescendant(result, step);
+        }
+        return result.toArray(new Step[0]);
+    }
+
+    private static void addWithDescendant(List<Step> steps, Step step) {
+        if (step != null && !steps.contains(step)) {
+            steps.add(step);
+            addWithDescendant(steps, step.descendant);
+        }
+    }
+
+    /**
+     * Узел префиксного дерева.
+     */
+    private static final class Step {
+        // "*" — любое имя
+        final Map<String, Step> children = new HashMap<>();
+        final Map<String, ValueRule> attributes = new HashMap<>();
+        // Узел после "//": остается активным на любой глубине
+        final boolean loop;
+        Step descendant;
+        boolean ignore;
+        ValueRule text;
+
+        Step(boolean loop) {
+            this.loop = loop;
+        }
+
+        Step descendant() {
+            if (descendant == null) {
+                descendant = new Step(true);
+            }
+            return descendant;
+        }
+    }
+
+    /**
+     * Правила, действующие для одного пути элементов. Области общие для всех элементов с одним путем
+     * и потокобезопасны.
+     */
+    public static final class Scope {
+
+        static final Scope EMPTY = new Scope(new Step[0]);
+
+        private static final ValueRule NO_RULE = new ValueRule(false, false, false, Double.NaN, List.of());
+
+        private final Step[] steps;
+        private final boolean ignored;
+        private final ValueRule text;
+        private final Map<String, Scope> children = new ConcurrentHashMap<>();
+        private final Map<String, ValueRule> attributes = new ConcurrentHashMap<>();
+
+        private Scope(Step[] steps) {
+            this.steps = steps;
+            boolean ignore = false;
+            ValueRule textRule = null;
+            for (Step step : steps) {
+                ignore |= step.ignore;
+                textRule = ValueRule.merge(textRule, step.text);
+            }
+            this.ignored = ignore;
+            this.text = textRule;
+        }
+
+        /**
+         * Область ребенка с именем {@code name}.
+         */
+        public Scope child(String name) {
+            if (steps.length == 0) {
+                return this;
+            }
+            return children.computeIfAbsent(name, n -> {
+                List<Step> next = new ArrayList<>();
+                for (Step step : steps) {
+                    add(next, step.children.get(n));
+                    add(next, step.children.get("*"));
+                    if (step.loop) {
+                        add(next, step);
+                    }
+                }
+                return next.isEmpty() ? EMPTY : new Scope(closure(next));
+            });
+        }
+
+        private static void add(List<Step> steps, Step step) {
+            if (step != null) {
+                steps.add(step);
+            }
+        }
+
+        /**
+         * Элемент не сравнивается вместе с поддеревом.
+         */
+        public boolean ignored() {
+            return ignored;
+        }
+
+        /**
+         * Правило текста элемента или {@code null}.
+         */
+        public ValueRule text() {
+            return text;
+        }
+
+        /**
+         * Правило атрибута или {@code null}.
+         */
+        public ValueRule attribute(String name) {
+            if (steps.length == 0) {
+                return null;
+            }
+            ValueRule rule = attributes.computeIfAbsent(name, n -> {
+                ValueRule merged = null;
+                for (Step step : steps) {
+                    merged = ValueRule.merge(merged, step.attributes.get(n));
+                    merged = ValueRule.merge(merged, step.attributes.get("*"));
+                }
+                return merged == null ? NO_RULE : merged;
+            });
+            return rule == NO_RULE ? null : rule;
+        }
+    }
+
+    /**
+     * Как сравнивать одно значение: атрибут или текст элемента.
+     *
+     * @param ignore             Значение не сравнивается.
+     * @param caseInsensitive    Без учета регистра.
+     * @param collapseWhitespace Пробелы по краям отбрасываются, подряд идущие — сводятся к одному.
+     * @param epsilon            Допустимая разница чисел или {@code NaN}.
+     * @param dateFormats        Форматы дат: дата в любом из них приводится к ISO-виду.
+     */
+    public record ValueRule(boolean ignore, boolean caseInsensitive, boolean collapseWhitespace, double epsilon,
+                            List<DateTimeFormatter> dateFormats) {
+
+        static final ValueRule IGNORE = new ValueRule(true, false, false, Double.NaN, List.of());
+
+        static ValueRule normalization(String options) {
+            boolean caseInsensitive = false;
+            boolean whitespace = false;
+            for (String option : options.split("[\\s,]+")) {
+                switch (option.toLowerCase(Locale.ROOT)) {
+                    case "case" -> caseInsensitive = true;
+                    case "whitespace" -> whitespace = true;
+                    default -> throw new IllegalArgumentException("Неизвестная нормализация '" + option
+                            + "': нужно case и/или whitespace");
+                }
+            }
+            return new ValueRule(false, caseInsensitive, whitespace, Double.NaN, List.of());
+        }
+
+        static ValueRule tolerance(String options) {
+            try {
+                double epsilon = Double.parseDouble(options);
+                if (!(epsilon >= 0)) {
+                    throw new IllegalArgumentException("Погрешность должна быть неотрицательной: " + options);
+                }
+                return new ValueRule(false, false, true, epsilon, List.of());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Нужна погрешность числом: '" + options + "'", e);
+            }
+        }
+
+        static ValueRule dates(String options) {
+            List<DateTimeFormatter> formats = new ArrayList<>();
+            for (String format : options.split("\\|")) {
+                String pattern = format.trim();
+                if (pattern.equalsIgnoreCase("iso")) {
+                    formats.add(DateTimeFormatter.ISO_DATE_TIME);
+                    formats.add(DateTimeFormatter.ISO_DATE);
+                } else if (!pattern.isEmpty()) {
+                    formats.add(DateTimeFormatter.ofPattern(pattern, Locale.ROOT));
+                }
+            }
+            if (formats.isEmpty()) {
+                throw new IllegalArgumentException("Нужен хотя бы один формат даты");
+            }
+            return new ValueRule(false, false, true, Double.NaN, List.copyOf(formats));
+        }
+
+        static ValueRule merge(ValueRule first, ValueRule second) {
+            if (first == null) {
+                return second;
+            }
+            if (second == null) {
+                return first;
+            }
+            List<DateTimeFormatter> formats = new ArrayList<>(first.dateFormats);
+            formats.addAll(second.dateFormats);
+            double epsilon = Double.isNaN(first.epsilon) ? second.epsilon
+                    : Double.isNaN(second.epsilon) ? first.epsilon : Math.max(first.epsilon, second.epsilon);
+            return new ValueRule(first.ignore || second.ignore,
+                    first.caseInsensitive || second.caseInsensitive,
+                    first.collapseWhitespace || second.collapseWhitespace,
+                    epsilon, List.copyOf(formats));
+        }
+
+        public boolean ignored() {
+            return ignore;
+        }
+
+        /**
+         * Значение в общем виде: одинаковые по правилу значения дают одну строку. Погрешность здесь
+         * не учитывается — она не сводится к равенству строк (см. {@link #equivalent(String, String)}).
+         */
+        public String normalize(String value) {
+            if (value == null) {
+                return null;
+            }
+            String result = collapseWhitespace ? WHITESPACE.matcher(value.trim()).replaceAll(" ") : value;
+            if (!dateFormats.isEmpty()) {
+                result = normalizeDate(result);
+            }
+            return caseInsensitive ? result.toLowerCase(Locale.ROOT) : result;
+        }
+
+        /**
+         * Равны ли значения по правилу.
+         */
+        public boolean equivalent(String control, String test) {
+            if (ignore) {
+                return true;
+            }
+            String normalizedControl = normalize(control);
+            String normalizedTest = normalize(test);
+            if (Objects.equals(normalizedControl, normalizedTest)) {
+                return true;
+            }
+            if (Double.isNaN(epsilon) || normalizedControl == null || normalizedTest == null) {
+                return false;
+            }
+            try {
+                return Math.abs(Double.parseDouble(normalizedControl) - Double.parseDouble(normalizedTest)) <= epsilon;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private String normalizeDate(String value) {
+            for (DateTimeFormatter format : dateFormats) {
+                try {
+                    TemporalAccessor parsed = format.parseBest(value, OffsetDateTime::from, LocalDateTime::from, LocalDate::from);
+                    if (parsed instanceof OffsetDateTime dateTime) {
+                        return dateTime.toInstant().toString();
+                    }
+                    return parsed.toString();
+                } catch (DateTimeParseException e) {
+                    // Не этот формат — пробуем следующий
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Источник XML, который можно открыть повторно (каждый вызов возвращает новый поток с начала документа).
+ */
+@FunctionalInterface
+public interface XmlSource {
+    InputStream open() throws IOException;
+}
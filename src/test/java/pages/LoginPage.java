@@ -1,25 +1,31 @@
 package pages;
 
-import com.codeborne.selenide.Condition;
+import app.DomWait;
+import app.Metrics;
 
 import static com.codeborne.selenide.Selenide.$x;
+import static app.DomWait.present;
 import static app.UI._$;
 
 public class LoginPage {
 
-    private final String loginL = "";
-    private final String passwordL = "";
-    private final String loginBtnL = "";
+    private final String loginL = "//input[@id='login']";
+    private final String passwordL = "//input[@id='password']";
+    private final String loginBtnL = "//button[@id='login-btn']";
 
 
     /**
      *
      */
     public MainPage performLogin(String login, String password) {
-        $x(loginL).shouldBe(Condition.exist).setValue(login);
-        $x(passwordL).shouldBe(Condition.exist).setValue(password);
-        $x(loginBtnL).shouldBe(Condition.exist).click();
-        return _$(MainPage.class);
+        try (Metrics.Timer ignored = Metrics.start("page.LoginPage.performLogin")) {
+            // Все поля формы — одним ожиданием
+            DomWait.await(present(loginL), present(passwordL), present(loginBtnL));
+            $x(loginL).setValue(login);
+            $x(passwordL).setValue(password);
+            $x(loginBtnL).click();
+            return _$(MainPage.class);
+        }
     }
 
 
@@ -1,24 +1,56 @@
 package pages;
 
-import com.codeborne.selenide.Condition;
+import app.DomWait;
+import app.Metrics;
 
+import java.time.Duration;
+
+import static app.DomWait.absent;
+import static app.DomWait.present;
+import static app.DomWait.visible;
 import static app.UI._$;
 import static com.codeborne.selenide.Selenide.$x;
 
 public class MainPage {
-    private final String menuL = "";
-    private final String logoutL = "";
-    private final String clientBtnL = "";
+    private final String menuL = "//button[@id='menu']";
+    private final String logoutL = "//a[@id='logout']";
+    private final String clientBtnL = "//button[@id='client-btn']";
+
+    /**
+     * Ждет открытия главной страницы (вход выполнен).
+     */
+    public MainPage waitOpened() {
+        try (Metrics.Timer ignored = Metrics.start("page.MainPage.waitOpened")) {
+            DomWait.await(present(menuL));
+            return this;
+        }
+    }
+
+    /**
+     * Открыта ли главная страница, с ожиданием не дольше {@code timeout}.
+     */
+    public boolean isOpened(Duration timeout) {
+        try (Metrics.Timer ignored = Metrics.start("page.MainPage.isOpened")) {
+            return DomWait.within(timeout, present(menuL));
+        }
+    }
 
     public void performLogout() {
-        $x(menuL).shouldBe(Condition.exist).click();
-        $x(logoutL).shouldBe(Condition.exist).click();
-        $x(menuL).shouldNotBe(Condition.exist);
+        try (Metrics.Timer ignored = Metrics.start("page.MainPage.performLogout")) {
+            DomWait.await(present(menuL));
+            $x(menuL).click();
+            DomWait.await(visible(logoutL));
+            $x(logoutL).click();
+            DomWait.await(absent(menuL));
+        }
     }
 
     public ClientPage goToClientPage(){
-        $x(clientBtnL).shouldBe(Condition.exist).click();
-        return _$(ClientPage.class);
+        try (Metrics.Timer ignored = Metrics.start("page.MainPage.goToClientPage")) {
+            DomWait.await(present(clientBtnL));
+            $x(clientBtnL).click();
+            return _$(ClientPage.class);
+        }
     }
 
 }
@@ -0,0 +1,39 @@
+package tests;
+
+import app.StandInServer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static com.codeborne.selenide.Condition.text;
+import static com.codeborne.selenide.Selenide.$;
+import static com.codeborne.selenide.Selenide.open;
+
+/**
+ * Кэш входа против локальной заглушки приложения: второй вход того же пользователя идет из снимка.
+ * Кэш включается для этих вызовов явно, независимо от {@code auth.cache}.
+ * <p>
+ * Запуск: {@code ./gradlew test -Pui -Dheadless=true}.
+ */
+public class AuthStateCacheTest extends BaseTest {
+
+    @Override
+    protected String baseUrl() throws IOException {
+        return StandInServer.shared().baseUrl();
+    }
+
+    @Test(groups = "ui")
+    public void secondLoginIsRestoredFromSnapshot() throws IOException {
+        String login = "cached-" + System.nanoTime();
+
+        doAsUser(login, "secret", true, () -> $("#user").shouldHave(text(login)));
+        Assert.assertTrue(AUTH_STATE.contains(login), "После входа через форму снимок должен сохраниться");
+
+        // Новый "тест" на том же браузере: снова страница входа, но форма уже не нужна
+        open(baseUrl());
+        long hits = AUTH_STATE.hits();
+        doAsUser(login, "secret", true, () -> $("#user").shouldHave(text(login)));
+        Assert.assertTrue(AUTH_STATE.hits() > hits, "Второй вход должен быть восстановлен из снимка");
+    }
+}
@@ -1,83 +1,162 @@
 package tests;
 
+import app.AuthStateCache;
+import app.CachingProxy;
+import app.DriverPool;
 import app.LoginLogout;
+import app.Metrics;
+import app.StandInServer;
+import app.TestConfig;
 import com.codeborne.selenide.Configuration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeMethod;
-import org.testng.annotations.BeforeSuite;
 import pages.LoginPage;
 import pages.MainPage;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Properties;
+import java.time.Duration;
 
 import static app.UI._$;
 import static com.codeborne.selenide.Selenide.open;
 
 public class BaseTest {
 
-
-    private static final String CONFIG_FILE_PATH = "src/test/resources/config.properties";
-    private static final String FILE_STORAGE = "src/test/resources";
     private static final String BASE_URL_KEY = "baseUrl";
     private static final String TIMEOUT_KEY = "timeout";
     private static final String BROWSER_KEY = "browser";
     private static final String BROWSER_SIZE_KEY = "browserSize";
-    private Properties config;
+    // Значение baseUrl, при котором тесты идут в локальную заглушку приложения (StandInServer)
+    private static final String STAND_IN_URL = "standin";
+
+    private static final String AUTH_VERIFY_TIMEOUT_KEY = "auth.verifyTimeout";
 
     /**
-     * Загружает конфигурацию из config.properties перед запуском всех тестов.
+     * Снимки входа пользователей, общие для всех тестов и потоков. Снимок считается принятым,
+     * если после подстановки открылась главная страница.
      */
-    @BeforeSuite
-    public void setupConfig() {
-        config = new Properties();
-        try (FileInputStream fis = new FileInputStream(CONFIG_FILE_PATH)) {
-            config.load(fis);
-            System.out.println("Конфигурация успешно загружена.");
-        } catch (IOException e) {
-            System.err.println("Ошибка при загрузке файла конфигурации: " + CONFIG_FILE_PATH);
-            e.printStackTrace();
-            // Можно добавить тут проброс исключения, чтобы тесты не запускались
-        }
+    protected static final AuthStateCache AUTH_STATE = AuthStateCache.fromConfig(() ->
+            _$(MainPage.class).isOpened(Duration.ofMillis(TestConfig.getLong(AUTH_VERIFY_TIMEOUT_KEY, 3000))));
+
+    private static boolean configured;
 
+    /**
+     * Один раз на JVM настраивает Selenide из config.properties, запускает прокси (если включен)
+     * и заранее запускает браузеры пула.
+     * Настройки общие для всех потоков, поэтому методы можно запускать с parallel="methods".
+     */
+    private static synchronized void setupConfig() throws IOException {
+        if (configured) {
+            return;
+        }
         // Настройка Selenide из проперти
-        Configuration.browser = config.getProperty(BROWSER_KEY);
-        Configuration.timeout = Long.parseLong(config.getProperty(TIMEOUT_KEY));
-        Configuration.browserSize = config.getProperty(BROWSER_SIZE_KEY);
+        Configuration.browser = TestConfig.get(BROWSER_KEY);
+        Configuration.timeout = Long.parseLong(TestConfig.get(TIMEOUT_KEY));
+        Configuration.browserSize = TestConfig.get(BROWSER_SIZE_KEY);
+
+        // Прокси с кэшем статики: до запуска браузеров, чтобы пул сразу настроил их на него
+        if (CachingProxy.isEnabled()) {
+            CachingProxy.shared();
+            CachingProxy.warnIfNotCacheable(TestConfig.get(BASE_URL_KEY));
+        }
+
+        DriverPool.getInstance().warmUp();
+        configured = true;
     }
 
     /**
-     * Открывает базовый URL перед выполнением каждого тестового метода.
+     * Берет браузер из пула для текущего потока и открывает базовый URL перед каждым тестовым методом.
+     * alwaysRun — чтобы метод выполнялся и при запуске по группам (например, только "ui").
      */
-    @BeforeMethod
-    public void openBaseUrl() {
-        String baseUrl = config.getProperty(BASE_URL_KEY);
+    @BeforeMethod(alwaysRun = true)
+    public void openBaseUrl() throws IOException {
+        setupConfig();
+        try (Metrics.Timer ignored = Metrics.start("ui.acquire")) {
+            DriverPool.getInstance().acquire();
+        }
+
+        String baseUrl = baseUrl();
         if (baseUrl != null && !baseUrl.isEmpty()) {
-            open(baseUrl);
+            Metrics.time("ui.open", () -> open(baseUrl));
             System.out.println("Переход по URL: " + baseUrl);
         } else {
             System.err.println("Базовый URL не найден в файле конфигурации!");
         }
     }
 
+    /**
+     * Очищает браузер (cookies, хранилища, окна) и возвращает его в пул вместо перезапуска.
+     */
+    @AfterMethod(alwaysRun = true)
+    public void releaseBrowser() {
+        DriverPool.getInstance().release();
+    }
+
+    @AfterSuite(alwaysRun = true)
+    public void shutdownBrowsers() {
+        System.out.println(AUTH_STATE.summary());
+        DriverPool.shutdownInstance();
+        CachingProxy.closeShared();
+        StandInServer.closeShared();
+    }
+
+    /**
+     * Адрес, который открывается перед каждым тестом: {@code baseUrl} из конфигурации,
+     * а при {@code baseUrl=standin} — локальная заглушка приложения.
+     */
+    protected String baseUrl() throws IOException {
+        String baseUrl = TestConfig.get(BASE_URL_KEY);
+        return STAND_IN_URL.equals(baseUrl) ? StandInServer.shared().baseUrl() : baseUrl;
+    }
+
 
     /**
      * Выполняет логин, запускает переданные действия и выполняет разлогин.
+     * <p>
+     * Если включен кэш входа ({@code auth.cache=true}), вход идет как в {@link #doAsUser(String, String, boolean, LoginLogout)}
+     * с {@code reuseLogin=true}; по умолчанию — через форму входа и выход через меню.
      * * @param login Логин пользователя
      *
      * @param password Пароль пользователя
      * @param actions  Блок кода (лямбда), содержащий действия пользователя
      */
     protected void doAsUser(String login, String password, LoginLogout actions) {
+        doAsUser(login, password, AuthStateCache.isEnabled(), actions);
+    }
+
+    /**
+     * Выполняет логин, запускает переданные действия и выполняет разлогин.
+     * <p>
+     * С {@code reuseLogin} форма входа заполняется только при первом входе пользователя: дальше в браузер
+     * подставляются сохраненные cookies и хранилища, а разлогин просто их очищает (выход через меню
+     * закрыл бы сессию снимка). Без него — обычный вход через форму и выход через меню.
+     *
+     * @param login      Логин пользователя
+     * @param password   Пароль пользователя
+     * @param reuseLogin Использовать кэш входа {@link #AUTH_STATE}
+     * @param actions    Блок кода (лямбда), содержащий действия пользователя
+     */
+    protected void doAsUser(String login, String password, boolean reuseLogin, LoginLogout actions) {
         System.out.println("--- Запуск блока 'doAsUser' ---");
         try {
-            // 1. **ЛОГИН**
-            System.out.println("Попытка логина под пользователем: " + login);
-            _$(LoginPage.class).performLogin(login, password);
+            // 1. **ЛОГИН** (из сохраненного состояния, если оно есть и принято приложением)
+            try (Metrics.Timer ignored = Metrics.start("ui.login")) {
+                if (reuseLogin && AUTH_STATE.restore(login)) {
+                    System.out.println("Вход под пользователем " + login + " восстановлен из кэша");
+                } else {
+                    System.out.println("Попытка логина под пользователем: " + login);
+                    _$(LoginPage.class).performLogin(login, password).waitOpened();
+                    if (reuseLogin) {
+                        AUTH_STATE.capture(login);
+                    }
+                }
+            }
 
             // 2. **ДЕЙСТВИЯ ПОЛЬЗОВАТЕЛЯ**
             System.out.println("Выполнение пользовательских действий...");
-            actions.execute(); // Выполняется лямбда-выражение из теста
+            try (Metrics.Timer ignored = Metrics.start("ui.actions")) {
+                actions.execute(); // Выполняется лямбда-выражение из теста
+            }
 
         } catch (Exception e) {
             System.err.println("Ошибка во время выполнения действий пользователя: " + e.getMessage());
@@ -86,9 +165,14 @@ public class BaseTest {
         } finally {
             // 3. **РАЗЛОГИН** (Выполняется в любом случае, даже если действия упали)
             System.out.println("Выполнение разлогина.");
-            _$(MainPage.class).performLogout();
+            try (Metrics.Timer ignored = Metrics.start("ui.logout")) {
+                if (reuseLogin) {
+                    AUTH_STATE.logout();
+                } else {
+                    _$(MainPage.class).performLogout();
+                }
+            }
         }
         System.out.println("--- Блок 'doAsUser' завершен ---");
     }
 }
-
@@ -0,0 +1,143 @@
+package tests;
+
+import app.CachingProxy;
+import app.StandInServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Прокси с кэшем статики против локальной заглушки приложения, без браузера.
+ */
+public class CachingProxyTest {
+
+    private StandInServer server;
+    private CachingProxy proxy;
+    private HttpClient client;
+
+    @BeforeClass
+    public void startProxy() throws IOException {
+        server = StandInServer.start();
+        proxy = CachingProxy.start(Files.createTempDirectory("proxy-cache"), 1024 * 1024, Set.of("tracker.example"));
+        client = HttpClient.newBuilder()
+                .proxy(ProxySelector.of(new InetSocketAddress("localhost", proxy.port())))
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopProxy() {
+        proxy.close();
+        server.close();
+    }
+
+    @Test
+    public void staticAssetIsServedFromCacheOnSecondRequest() throws Exception {
+        HttpResponse<String> first = get(server.baseUrl() + "app.js");
+        long hits = proxy.hits();
+        long revalidated = proxy.revalidated();
+        HttpResponse<String> second = get(server.baseUrl() + "app.js");
+
+        Assert.assertEquals(first.statusCode(), 200);
+        Assert.assertEquals(second.statusCode(), 200);
+        Assert.assertEquals(second.body(), first.body());
+        // Заглушка отвечает с no-cache: кэш отдается после 304 на условный запрос
+        Assert.assertEquals(proxy.hits(), hits + 1, proxy.summary());
+        Assert.assertEquals(proxy.revalidated(), revalidated + 1, proxy.summary());
+    }
+
+    @Test
+    public void changedAssetReplacesCachedCopy() throws Exception {
+        String url = server.baseUrl() + "changing.js";
+        server.put("/changing.js", "var version = 1;".getBytes(StandardCharsets.UTF_8), "no-cache");
+        Assert.assertEquals(get(url).body(), "var version = 1;");
+
+        server.put("/changing.js", "var version = 2;".getBytes(StandardCharsets.UTF_8), "no-cache");
+        long misses = proxy.misses();
+        HttpResponse<String> changed = get(url);
+        long hits = proxy.hits();
+        HttpResponse<String> again = get(url);
+
+        Assert.assertEquals(changed.statusCode(), 200);
+        Assert.assertEquals(changed.body(), "var version = 2;");
+        Assert.assertEquals(proxy.misses(), misses + 1, proxy.summary());
+        // В кэше теперь новая версия
+        Assert.assertEquals(again.body(), "var version = 2;");
+        Assert.assertEquals(proxy.hits(), hits + 1, proxy.summary());
+    }
+
+    @Test
+    public void freshAssetIsServedWithoutRevalidation() throws Exception {
+        String url = server.baseUrl() + "fresh.js";
+        server.put("/fresh.js", "var fresh = 1;".getBytes(StandardCharsets.UTF_8), "max-age=3600");
+        get(url);
+        long revalidated = proxy.revalidated();
+
+        // Пока срок max-age не истек, прокси не спрашивает сервер и изменения не видит
+        server.put("/fresh.js", "var fresh = 2;".getBytes(StandardCharsets.UTF_8), "max-age=3600");
+        HttpResponse<String> cached = get(url);
+
+        Assert.assertEquals(cached.body(), "var fresh = 1;");
+        Assert.assertEquals(proxy.revalidated(), revalidated, proxy.summary());
+    }
+
+    @Test
+    public void httpsBaseUrlIsReportedAsNotCacheable() {
+        Assert.assertFalse(CachingProxy.warnIfNotCacheable("https://example.com/"));
+        Assert.assertTrue(CachingProxy.warnIfNotCacheable(server.baseUrl()));
+        Assert.assertTrue(CachingProxy.warnIfNotCacheable(null));
+    }
+
+    @Test
+    public void pagesAreNotCached() throws Exception {
+        long hits = proxy.hits();
+        get(server.baseUrl() + "main.html");
+        HttpResponse<String> page = get(server.baseUrl() + "main.html");
+
+        Assert.assertEquals(page.statusCode(), 200);
+        Assert.assertTrue(page.body().contains("id=\"menu\""));
+        Assert.assertEquals(proxy.hits(), hits, proxy.summary());
+    }
+
+    @Test
+    public void blockedHostIsRejectedWithoutNetwork() throws Exception {
+        HttpResponse<String> response = get("http://cdn.tracker.example/pixel.js");
+
+        Assert.assertEquals(response.statusCode(), 403);
+        Assert.assertTrue(proxy.blocked() > 0);
+    }
+
+    @Test
+    public void cacheIsEvictedBeyondSizeLimit() throws Exception {
+        Path dir = Files.createTempDirectory("proxy-cache");
+        // Лимит меньше двух файлов: после второго ответа первый вытесняется
+        long limit = Files.size(Path.of(getClass().getClassLoader().getResource("standin/app.js").toURI())) + 200;
+        try (CachingProxy small = CachingProxy.start(dir, limit, Set.of())) {
+            HttpClient viaSmall = HttpClient.newBuilder()
+                    .proxy(ProxySelector.of(new InetSocketAddress("localhost", small.port())))
+                    .build();
+            viaSmall.send(HttpRequest.newBuilder(URI.create(server.baseUrl() + "app.js")).build(), HttpResponse.BodyHandlers.discarding());
+            viaSmall.send(HttpRequest.newBuilder(URI.create(server.baseUrl() + "app.js?v=2")).build(), HttpResponse.BodyHandlers.discarding());
+
+            try (var files = Files.list(dir)) {
+                Assert.assertEquals(files.filter(file -> file.toString().endsWith(".bin")).count(), 1L);
+            }
+        }
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,122 @@
+package tests;
+
+import app.Compression;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Распаковка на лету: форматы, обрезанные данные и остановка потока распаковки,
+ * с опережающей распаковкой и без нее ({@value Compression#PIPELINE_PROPERTY}).
+ */
+public class CompressionTest {
+
+    @AfterMethod(alwaysRun = true)
+    public void resetPipeline() {
+        System.clearProperty(Compression.PIPELINE_PROPERTY);
+    }
+
+    @DataProvider
+    public Object[][] pipeline() {
+        return new Object[][]{{true}, {false}};
+    }
+
+    @Test(dataProvider = "pipeline")
+    public void zstdFramesAreReadInSequence(boolean pipeline) throws Exception {
+        System.setProperty(Compression.PIPELINE_PROPERTY, String.valueOf(pipeline));
+        byte[] data = document(20_000);
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(zstd(Arrays.copyOfRange(data, 0, data.length / 3)));
+        frames.write(zstd(Arrays.copyOfRange(data, data.length / 3, data.length)));
+
+        try (InputStream in = Compression.decode(new ByteArrayInputStream(frames.toByteArray()))) {
+            Assert.assertEquals(in.readAllBytes(), data);
+        }
+    }
+
+    @Test(dataProvider = "pipeline")
+    public void plainAndGzipDataAreReadAsIs(boolean pipeline) throws Exception {
+        System.setProperty(Compression.PIPELINE_PROPERTY, String.valueOf(pipeline));
+        byte[] data = document(20_000);
+
+        try (InputStream in = Compression.decode(new ByteArrayInputStream(data))) {
+            Assert.assertEquals(in.readAllBytes(), data);
+        }
+        try (InputStream in = Compression.decode(new ByteArrayInputStream(gzip(data)))) {
+            // Без опережающей распаковки читатель получает сам GZIPInputStream
+            Assert.assertEquals(in instanceof GZIPInputStream, !pipeline, in.getClass().getName());
+            Assert.assertEquals(in.readAllBytes(), data);
+        }
+    }
+
+    @Test(dataProvider = "pipeline")
+    public void truncatedGzipFailsWithIOException(boolean pipeline) throws Exception {
+        System.setProperty(Compression.PIPELINE_PROPERTY, String.valueOf(pipeline));
+        byte[] compressed = gzip(document(20_000));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        try (InputStream in = Compression.decode(new ByteArrayInputStream(truncated))) {
+            Assert.expectThrows(IOException.class, in::readAllBytes);
+        }
+    }
+
+    @Test
+    public void earlyCloseStopsInflaterThread() throws Exception {
+        // Распакованных данных много больше очереди: без закрытия поток распаковки ждал бы читателя
+        byte[] compressed = gzip(document(1_000_000));
+        CountDownLatch sourceClosed = new CountDownLatch(1);
+        InputStream source = new FilterInputStream(new ByteArrayInputStream(compressed)) {
+            @Override
+            public void close() throws IOException {
+                sourceClosed.countDown();
+                super.close();
+            }
+        };
+
+        InputStream in = Compression.decode(source);
+        Assert.assertEquals(in.read(), '<');
+        in.close();
+
+        Assert.assertTrue(sourceClosed.await(5, TimeUnit.SECONDS), "Поток распаковки не закрыл источник");
+        Assert.expectThrows(IOException.class, in::read);
+    }
+
+    private static byte[] document(int items) {
+        StringBuilder sb = new StringBuilder("<root>");
+        for (int i = 0; i < items; i++) {
+            sb.append("<item id=\"").append(i).append("\">значение ").append(i).append("</item>");
+        }
+        return sb.append("</root>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zstd(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
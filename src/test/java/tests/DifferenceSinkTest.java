@@ -0,0 +1,98 @@
+package tests;
+
+import app.HtmlDifferenceSink;
+import app.JUnitXmlDifferenceSink;
+import app.XmlDifference;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Отчеты об отличиях на диске: после закрытия приемника файлы должны быть полными и согласованными.
+ */
+public class DifferenceSinkTest {
+
+    private static final List<XmlDifference> DIFFERENCES = List.of(
+            XmlDifference.textValue("/root[1]/a[1]/text()[1]", "/root[1]/a[1]/text()[1]", "1 < 2", "1 & 2"),
+            XmlDifference.attribute("/root[1]/b[1]", "/root[1]/b[1]", "id", "\"x\"", "'y'"),
+            XmlDifference.missing("/root[1]/c[1]")
+    );
+
+    @Test
+    public void junitHeaderCountsArePatchedOnClose() throws Exception {
+        Path file = Files.createTempDirectory("junit-sink").resolve("report.xml");
+        // Кириллица и кавычки в имени: смещения чисел в заголовке считаются в байтах
+        try (JUnitXmlDifferenceSink sink = new JUnitXmlDifferenceSink(file, "Сравнение \"заказов\"")) {
+            DIFFERENCES.forEach(sink::accept);
+            Assert.assertEquals(sink.count(), 3);
+        }
+
+        Element suite = parse(file).getDocumentElement();
+        Assert.assertEquals(suite.getTagName(), "testsuite");
+        Assert.assertEquals(suite.getAttribute("name"), "Сравнение \"заказов\"");
+        Assert.assertEquals(Integer.parseInt(suite.getAttribute("tests")), 3);
+        Assert.assertEquals(Integer.parseInt(suite.getAttribute("failures")), 3);
+
+        NodeList testcases = suite.getElementsByTagName("testcase");
+        Assert.assertEquals(testcases.getLength(), 3);
+        Element first = (Element) testcases.item(0);
+        Assert.assertEquals(first.getAttribute("classname"), "Сравнение \"заказов\".TEXT_VALUE");
+        Assert.assertEquals(first.getAttribute("name"), "/root[1]/a[1]/text()[1]");
+        Element failure = (Element) first.getElementsByTagName("failure").item(0);
+        Assert.assertEquals(failure.getAttribute("message"), "/root/a/text()");
+        Assert.assertEquals(failure.getTextContent(), DIFFERENCES.get(0).format());
+        Assert.assertEquals(suite.getElementsByTagName("failure").getLength(), 3);
+    }
+
+    @Test
+    public void emptyJunitReportIsValid() throws Exception {
+        Path file = Files.createTempDirectory("junit-sink").resolve("empty.xml");
+        new JUnitXmlDifferenceSink(file, "empty").close();
+
+        Element suite = parse(file).getDocumentElement();
+        Assert.assertEquals(Integer.parseInt(suite.getAttribute("tests")), 0);
+        Assert.assertEquals(Integer.parseInt(suite.getAttribute("failures")), 0);
+        Assert.assertEquals(suite.getElementsByTagName("testcase").getLength(), 0);
+    }
+
+    @Test
+    public void htmlStartsNewPageAfterPageSize() throws Exception {
+        Path dir = Files.createTempDirectory("html-sink");
+        try (HtmlDifferenceSink sink = new HtmlDifferenceSink(dir, 2)) {
+            DIFFERENCES.forEach(sink::accept);
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(files.map(path -> path.getFileName().toString()).sorted().toList(),
+                    List.of("index.html", "page-00001.html", "page-00002.html"));
+        }
+        String index = Files.readString(dir.resolve("index.html"), StandardCharsets.UTF_8);
+        Assert.assertTrue(index.contains("<h1>Отличий: 3</h1>"), index);
+        Assert.assertTrue(index.contains("<a href=\"page-00001.html\">1&ndash;2</a>"), index);
+        Assert.assertTrue(index.contains("<a href=\"page-00002.html\">3&ndash;3</a>"), index);
+        Assert.assertTrue(index.contains("<tr><td>TEXT_VALUE</td><td>1</td></tr>"), index);
+
+        String first = Files.readString(dir.resolve("page-00001.html"), StandardCharsets.UTF_8);
+        Assert.assertTrue(first.contains("<a href=\"page-00002.html\">дальше &rarr;</a>"), first);
+        Assert.assertFalse(first.contains("назад"), first);
+        Assert.assertTrue(first.contains("1 &lt; 2"), first);
+
+        String last = Files.readString(dir.resolve("page-00002.html"), StandardCharsets.UTF_8);
+        Assert.assertTrue(last.contains("<a href=\"page-00001.html\">&larr; назад</a>"), last);
+        Assert.assertFalse(last.contains("дальше"), last);
+        Assert.assertTrue(last.contains("/root[1]/c[1]"), last);
+    }
+
+    private static Document parse(Path file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+    }
+}
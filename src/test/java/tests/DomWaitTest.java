@@ -0,0 +1,45 @@
+package tests;
+
+import app.DomWait;
+import org.openqa.selenium.JavascriptException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Какие ошибки скрипта ожидания {@link DomWait} повторяет: только прерванные переходом на другую страницу.
+ */
+public class DomWaitTest {
+
+    @DataProvider
+    public Object[][] scriptErrors() {
+        return new Object[][]{
+                // Chrome
+                {"javascript error: document unloaded while waiting for result", true},
+                // Firefox
+                {"Document was unloaded", true},
+                // Chrome через CDP
+                {"Execution context was destroyed, most likely because of a navigation.", true},
+                {"javascript error: Failed to execute 'evaluate' on 'Document': The string '//div[' is not a valid XPath expression.", false},
+                {"javascript error: Cannot read properties of null (reading 'offsetWidth')", false},
+                {"TypeError: document.evaluate is not a function", false},
+                {"", false},
+                {null, false},
+        };
+    }
+
+    @Test(dataProvider = "scriptErrors")
+    public void onlyNavigationErrorsAreRetried(String message, boolean retried) {
+        Assert.assertEquals(DomWait.isInterruptedByNavigation(new JavascriptException(message)), retried, String.valueOf(message));
+    }
+
+    @Test
+    public void seleniumSystemInfoDoesNotCount() {
+        // getMessage() дописывает версии и сведения о драйвере; решение — только по тексту браузера
+        JavascriptException e = new JavascriptException("javascript error: missing ) after argument list");
+        e.addInfo("Navigation", "document unloaded");
+
+        Assert.assertTrue(e.getMessage().contains("document unloaded"), e.getMessage());
+        Assert.assertFalse(DomWait.isInterruptedByNavigation(e));
+    }
+}
@@ -0,0 +1,33 @@
+package tests;
+
+import app.StandInServer;
+import com.codeborne.selenide.WebDriverRunner;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static com.codeborne.selenide.Selenide.executeJavaScript;
+
+/**
+ * Пул браузеров против локальной заглушки приложения: браузеры переиспользуются между тестами,
+ * но каждый тест начинает с чистого состояния.
+ * <p>
+ * Запуск: {@code ./gradlew test -Pui -Dheadless=true -Dpool.size=2}.
+ */
+public class DriverPoolTest extends BaseTest {
+
+    @Override
+    protected String baseUrl() throws IOException {
+        return StandInServer.shared().baseUrl();
+    }
+
+    @Test(groups = "ui", invocationCount = 6, threadPoolSize = 3)
+    public void browserStartsWithCleanState() {
+        Assert.assertNull(WebDriverRunner.getWebDriver().manage().getCookieNamed("session"));
+        Assert.assertNull(executeJavaScript("return window.localStorage.getItem('user');"));
+
+        // Оставляем "мусор": следующий тест на этом же браузере не должен его увидеть
+        executeJavaScript("document.cookie = 'session=dirty; path=/'; window.localStorage.setItem('user', 'dirty');");
+    }
+}
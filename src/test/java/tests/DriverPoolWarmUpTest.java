@@ -0,0 +1,61 @@
+package tests;
+
+import app.DriverPool;
+import org.openqa.selenium.WebDriver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Прогрев пула без настоящего браузера: ошибки запуска должны всплывать из {@link DriverPool#warmUp()},
+ * а не позже тайм-аутом {@link DriverPool#acquire()}.
+ */
+public class DriverPoolWarmUpTest {
+
+    @Test
+    public void warmUpRethrowsBrowserStartFailure() {
+        AtomicInteger started = new AtomicInteger();
+        DriverPool pool = new DriverPool(3, 1, () -> {
+            if (started.incrementAndGet() == 2) {
+                throw new IllegalStateException("браузер не найден");
+            }
+            return fakeDriver();
+        });
+
+        IllegalStateException e = Assert.expectThrows(IllegalStateException.class, pool::warmUp);
+        Assert.assertEquals(e.getCause().getMessage(), "браузер не найден");
+        Assert.assertEquals(started.get(), 3);
+
+        // Запущенные браузеры остались в пуле: повторный прогрев запускает только недостающий
+        pool.warmUp();
+        Assert.assertEquals(started.get(), 4);
+        pool.shutdown();
+    }
+
+    @Test
+    public void warmUpStartsEveryBrowserOnce() {
+        AtomicInteger started = new AtomicInteger();
+        DriverPool pool = new DriverPool(2, 1, () -> {
+            started.incrementAndGet();
+            return fakeDriver();
+        });
+
+        pool.warmUp();
+        pool.warmUp();
+
+        Assert.assertEquals(started.get(), 2);
+        pool.shutdown();
+    }
+
+    private static WebDriver fakeDriver() {
+        return (WebDriver) Proxy.newProxyInstance(WebDriver.class.getClassLoader(), new Class<?>[]{WebDriver.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "fake-driver";
+                    default -> null;
+                });
+    }
+}
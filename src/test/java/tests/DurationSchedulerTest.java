@@ -0,0 +1,127 @@
+package tests;
+
+import app.DurationHistory;
+import app.DurationScheduler;
+import app.DurationScheduler.Shard;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Шарды по истории длительностей: разбор {@code -Dshard}, раскладка строк и слияние истории при сохранении.
+ */
+public class DurationSchedulerTest {
+
+    private static final String METHOD = "row";
+    private static final String METHOD_KEY = DurationHistory.key(DurationSchedulerTest.class, METHOD);
+
+    @Test
+    public void shardIsParsedFromConfigValue() {
+        Assert.assertEquals(Shard.parse(null), Shard.ALL);
+        Assert.assertEquals(Shard.parse("  "), Shard.ALL);
+        Assert.assertEquals(Shard.parse("2/3"), new Shard(2, 3));
+        Assert.assertEquals(Shard.parse(" 1 / 4 "), new Shard(1, 4));
+    }
+
+    @Test
+    public void malformedShardIsRejected() {
+        for (String value : List.of("3", "0/3", "4/3", "1/0", "1/2/3", "a/b")) {
+            Assert.expectThrows(IllegalArgumentException.class, () -> Shard.parse(value));
+        }
+    }
+
+    @Test
+    public void snapshotSplitCoversEveryRowOnce() throws Exception {
+        List<String> rows = IntStream.rangeClosed(1, 10).mapToObj(i -> "pair-" + i).toList();
+        StringBuilder history = new StringBuilder();
+        for (int i = 1; i <= rows.size(); i++) {
+            history.append(key("pair-" + i)).append('=').append(i * 100).append('\n');
+        }
+        Path file = Files.createTempFile("test-history", ".properties");
+        Files.writeString(file, history, StandardCharsets.UTF_8);
+        DurationHistory snapshot = DurationHistory.snapshot(file);
+
+        List<List<String>> shards = split(rows, 3, snapshot);
+
+        assertPartition(rows, shards);
+        // LPT по 1000..100 мс: 1000+500+400, 900+600+300, 800+700+200+100
+        Assert.assertEquals(shards.get(0), List.of("pair-10", "pair-5", "pair-4"));
+        Assert.assertEquals(shards.get(1), List.of("pair-9", "pair-6", "pair-3"));
+        Assert.assertEquals(shards.get(2), List.of("pair-8", "pair-7", "pair-2", "pair-1"));
+        // Раскладка зависит только от снимка: повтор в другой "JVM" дает те же шарды
+        Assert.assertEquals(split(rows, 3, DurationHistory.snapshot(file)), shards);
+    }
+
+    @Test
+    public void hashSplitWithoutSnapshotCoversEveryRowOnce() {
+        List<String> rows = IntStream.range(0, 50).mapToObj(i -> "pair-" + i).toList();
+
+        List<List<String>> shards = split(rows, 4, null);
+
+        assertPartition(rows, shards);
+        for (List<String> shard : shards) {
+            Assert.assertFalse(shard.isEmpty(), shards.toString());
+        }
+    }
+
+    @Test
+    public void saveMergesHistoryOfOtherShards() throws Exception {
+        Path file = Files.createTempDirectory("test-history").resolve("history.properties");
+        Files.writeString(file, "old=50\n", StandardCharsets.UTF_8);
+
+        // Оба шарда прочитали историю до того, как кто-то из них ее сохранил
+        DurationHistory first = DurationHistory.load(file);
+        DurationHistory second = DurationHistory.load(file);
+        first.record("first", 100);
+        first.record("common", 100);
+        second.record("second", 200);
+        second.record("common", 300);
+        first.save();
+        second.save();
+
+        DurationHistory merged = DurationHistory.load(file);
+        Assert.assertEquals(merged.estimate("old"), 50.0);
+        Assert.assertEquals(merged.estimate("first"), 100.0);
+        Assert.assertEquals(merged.estimate("second"), 200.0);
+        // Второй шард сгладил свой замер с уже сохраненным первым
+        Assert.assertEquals(merged.estimate("common"), 200.0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void snapshotIsReadOnly() throws Exception {
+        Path file = Files.createTempFile("test-history", ".properties");
+        DurationHistory snapshot = DurationHistory.snapshot(file);
+        snapshot.record(METHOD_KEY, 10);
+
+        snapshot.save();
+    }
+
+    private static List<List<String>> split(List<String> rows, int count, DurationHistory snapshot) {
+        List<List<String>> shards = new ArrayList<>();
+        for (int index = 1; index <= count; index++) {
+            shards.add(DurationScheduler.rowsForShard(DurationSchedulerTest.class, METHOD, rows,
+                    new Shard(index, count), snapshot));
+        }
+        return shards;
+    }
+
+    private static void assertPartition(List<String> rows, List<List<String>> shards) {
+        List<String> all = shards.stream().flatMap(List::stream).collect(Collectors.toList());
+        Set<String> unique = new HashSet<>(all);
+        Assert.assertEquals(all.size(), unique.size(), "Шарды пересекаются: " + shards);
+        Assert.assertEquals(unique, new HashSet<>(rows), "Шарды покрывают не все строки: " + shards);
+    }
+
+    private static String key(String row) {
+        return DurationHistory.rowKey(METHOD_KEY, new Object[]{row});
+    }
+}
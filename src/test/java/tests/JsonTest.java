@@ -0,0 +1,101 @@
+package tests;
+
+import app.DifferenceReport;
+import app.Helpers;
+import app.JsonTreeComparator;
+import app.Mappers;
+import app.Resources;
+import app.XmlCompareOptions;
+import app.XmlSource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Сравнение JSON без учета порядка и XML-эталона с JSON.
+ */
+public class JsonTest {
+
+    private static final String CONTROL_FILE_PATH = "control.xml";
+    private static final String TEST_FILE_PATH = "test.xml";
+    // Все значения XML — текст; в JSON те же значения с типами и в другом порядке
+    private static final String TYPED_XML = "<order><id>42</id><paid>true</paid><note/>"
+            + "<item><sku>a</sku><price>5.50</price><qty>2</qty></item>"
+            + "<item><sku>b</sku><price>10</price><qty>1</qty></item>"
+            + "<item><sku>c</sku><price>0.50</price><qty>3</qty></item>"
+            + "<tag>x</tag><tag>y</tag></order>";
+
+    @Test
+    public void arraysAreComparedWithoutOrder() throws Exception {
+        List<String> differences = new JsonTreeComparator().compare(
+                Mappers.JSON_TREE_READER.readTree("{\"items\": [1, {\"id\": \"a\", \"tags\": [\"x\", \"y\"]}, 2], \"name\": \"n\"}"),
+                Mappers.JSON_TREE_READER.readTree("{\"name\": \"n\", \"items\": [2, {\"tags\": [\"y\", \"x\"], \"id\": \"a\"}, 1]}"));
+
+        Assert.assertTrue(differences.isEmpty(), "Отличия: " + differences);
+    }
+
+    @Test
+    public void valueDifferenceIsReportedInXmlStyle() throws Exception {
+        List<String> differences = new JsonTreeComparator().compare(
+                Mappers.JSON_TREE_READER.readTree("{\"items\": [{\"id\": \"a\", \"price\": 10}, {\"id\": \"b\", \"price\": 20}]}"),
+                Mappers.JSON_TREE_READER.readTree("{\"items\": [{\"id\": \"b\", \"price\": 20}, {\"id\": \"a\", \"price\": 11}]}"));
+
+        Assert.assertEquals(differences, List.of(
+                "Отличие ЗНАЧЕНИЯ: Путь: /items[2]/price, Ожидалось: '10', Найдено: '11'"));
+    }
+
+    @Test
+    public void xmlControlMatchesJsonOfSameDocument() throws Exception {
+        XmlSource json = json(Helpers.convertXmlFileToJson(CONTROL_FILE_PATH));
+
+        DifferenceReport report = Helpers.compareXmlToJsonReport(Resources.source(CONTROL_FILE_PATH), json,
+                XmlCompareOptions.defaults());
+
+        Assert.assertTrue(report.isEmpty(), report.summary());
+    }
+
+    @Test
+    public void xmlControlFindsDifferenceInJson() throws Exception {
+        XmlSource json = json(Helpers.convertXmlFileToJson(TEST_FILE_PATH));
+
+        DifferenceReport report = Helpers.compareXmlToJsonReport(Resources.source(CONTROL_FILE_PATH), json,
+                XmlCompareOptions.defaults());
+
+        Assert.assertEquals(report.size(), 1, report.summary());
+        Assert.assertTrue(report.getDifferences().get(0).path().endsWith("/sell"), report.summary());
+    }
+
+    @Test
+    public void xmlControlMatchesTypedJson() throws Exception {
+        DifferenceReport report = Helpers.compareXmlToJsonReport(json(TYPED_XML), json(String.join("\n",
+                        "{\"tag\": [\"y\", \"x\"], \"note\": null, \"paid\": true, \"id\": 42,",
+                        " \"item\": [{\"sku\": \"c\", \"qty\": 3, \"price\": 0.5},",
+                        "          {\"price\": 5.5, \"sku\": \"a\", \"qty\": 2},",
+                        "          {\"qty\": 1, \"sku\": \"b\", \"price\": 1e1}]}")),
+                XmlCompareOptions.defaults());
+
+        Assert.assertTrue(report.isEmpty(), report.summary());
+    }
+
+    @Test
+    public void typedJsonDifferenceKeepsDocumentText() throws Exception {
+        DifferenceReport report = Helpers.compareXmlToJsonReport(json(TYPED_XML), json(String.join("\n",
+                        "{\"tag\": [\"x\", \"y\"], \"note\": null, \"paid\": false, \"id\": 42,",
+                        " \"item\": [{\"sku\": \"b\", \"qty\": 1, \"price\": 10},",
+                        "          {\"sku\": \"c\", \"qty\": 3, \"price\": 0.5},",
+                        "          {\"sku\": \"a\", \"qty\": 2, \"price\": 5.25}]}")),
+                XmlCompareOptions.defaults());
+
+        Assert.assertEquals(report.format(), List.of(
+                "Отличие ЗНАЧЕНИЯ: Путь: /paid, Ожидалось: 'true', Найдено: 'false'",
+                "Отличие ЗНАЧЕНИЯ: Путь: /item[3]/price, Ожидалось: '5.50', Найдено: '5.25'"), report.summary());
+    }
+
+    private static XmlSource json(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return () -> new ByteArrayInputStream(bytes);
+    }
+}
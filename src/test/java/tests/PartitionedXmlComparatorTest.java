@@ -0,0 +1,93 @@
+package tests;
+
+import app.NodeMatchStrategy;
+import app.PartitionedXmlComparator;
+import app.XmlDifference;
+import app.XmlSource;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Сравнение по фрагментам: пересчет XPath из обертки группы в пути документа, фрагменты без пары
+ * и деление большой группы на пачки.
+ */
+public class PartitionedXmlComparatorTest {
+
+    @DataProvider
+    public Object[][] batchSizes() {
+        return new Object[][]{{PartitionedXmlComparator.DEFAULT_BATCH_SIZE}, {1}};
+    }
+
+    @Test(dataProvider = "batchSizes")
+    public void differencesAreRebasedToFragmentPaths(int batchSize) throws Exception {
+        // После отсева равных в группе остаются id=2 и id=3 в разном порядке: номер шага в обертке
+        // должен превратиться в XPath своего фрагмента, а не первого
+        String control = "<r><i id=\"1\"><v>1</v></i><i id=\"2\"><v>2</v></i><i id=\"3\"><v>3</v></i></r>";
+        String test = "<r><i id=\"3\"><v>y</v></i><i id=\"2\"><v>x</v></i><i id=\"1\"><v>1</v></i></r>";
+
+        Set<XmlDifference> differences = compare(control, test, null, batchSize);
+
+        Assert.assertEquals(differences, Set.of(
+                XmlDifference.textValue("/r[1]/i[2]/v[1]/text()[1]", "/r[1]/i[2]/v[1]/text()[1]", "2", "x"),
+                XmlDifference.textValue("/r[1]/i[3]/v[1]/text()[1]", "/r[1]/i[1]/v[1]/text()[1]", "3", "y")));
+    }
+
+    @Test
+    public void fragmentsWithoutPairAreMissingOrExtra() throws Exception {
+        String control = "<r><a>1</a><b>2</b><i id=\"1\"/><i id=\"2\"/><i id=\"3\"/></r>";
+        String test = "<r><i id=\"1\"/><d/><a>1</a></r>";
+
+        Set<XmlDifference> differences = compare(control, test, "id", PartitionedXmlComparator.DEFAULT_BATCH_SIZE);
+
+        Assert.assertEquals(differences, Set.of(
+                XmlDifference.missing("/r[1]/b[1]"),
+                XmlDifference.missing("/r[1]/i[2]"),
+                XmlDifference.missing("/r[1]/i[3]"),
+                XmlDifference.extra("/r[1]/d[1]")));
+    }
+
+    @Test
+    public void largeGroupWithoutKeyIsSplitIntoBatches() throws Exception {
+        // Меняется каждый десятый: после отсева равных в группе по 50 фрагментов, при пачке 16 — четыре пачки
+        int items = 500;
+        StringBuilder control = new StringBuilder("<r>");
+        StringBuilder test = new StringBuilder("<r>");
+        for (int i = 0; i < items; i++) {
+            control.append("<i id=\"").append(i).append("\"><v>").append(i).append("</v></i>");
+            int j = items - 1 - i;
+            test.append("<i id=\"").append(j).append("\"><v>").append(j % 10 == 7 ? "x" : String.valueOf(j))
+                    .append("</v></i>");
+        }
+        control.append("</r>");
+        test.append("</r>");
+
+        Set<XmlDifference> whole = compare(control.toString(), test.toString(), null, items);
+        Set<XmlDifference> batched = compare(control.toString(), test.toString(), null, 16);
+
+        Assert.assertEquals(whole.size(), 50, whole.toString());
+        Assert.assertEquals(batched, whole);
+        Assert.assertTrue(whole.contains(XmlDifference.textValue(
+                "/r[1]/i[108]/v[1]/text()[1]", "/r[1]/i[393]/v[1]/text()[1]", "107", "x")), whole.toString());
+    }
+
+    private static Set<XmlDifference> compare(String control, String test, String keyAttribute, int batchSize)
+            throws Exception {
+        List<XmlDifference> differences = new PartitionedXmlComparator(1, keyAttribute, 4, NodeMatchStrategy.HASHED, batchSize)
+                .compare(source(control), source(test), 100).getDifferences();
+        Set<XmlDifference> unique = new HashSet<>(differences);
+        Assert.assertEquals(unique.size(), differences.size(), "Повторы в отчете: " + differences);
+        return unique;
+    }
+
+    private static XmlSource source(String xml) {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        return () -> new ByteArrayInputStream(bytes);
+    }
+}
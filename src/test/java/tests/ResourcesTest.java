@@ -0,0 +1,103 @@
+package tests;
+
+import app.Helpers;
+import app.Resources;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Чтение ресурсов байтами: отображение в память, каналы и пути с пробелами.
+ */
+public class ResourcesTest {
+
+    private static final String CONTROL_FILE_PATH = "control.xml";
+    private static final String SPACED_FILE_PATH = "папка с пробелами/маленький документ.xml";
+
+    @AfterMethod(alwaysRun = true)
+    public void resetThreshold() {
+        System.clearProperty(Resources.MAPPING_THRESHOLD_PROPERTY);
+    }
+
+    @Test
+    public void smallFilesAreNotMappedByDefault() throws Exception {
+        Assert.assertNull(Resources.map(CONTROL_FILE_PATH));
+    }
+
+    @Test
+    public void filesAboveThresholdAreMappedAndReadAsStream() throws Exception {
+        System.setProperty(Resources.MAPPING_THRESHOLD_PROPERTY, "1");
+        byte[] expected = Files.readAllBytes(Resources.toPath(Resources.find(CONTROL_FILE_PATH)));
+
+        ByteBuffer mapped = Resources.map(CONTROL_FILE_PATH);
+        Assert.assertNotNull(mapped);
+        Assert.assertTrue(mapped.isReadOnly());
+        Assert.assertEquals(mapped.remaining(), expected.length);
+
+        try (InputStream in = Resources.openRawStream(CONTROL_FILE_PATH)) {
+            Assert.assertEquals(in.available(), expected.length);
+            Assert.assertEquals(in.read(), expected[0] & 0xFF);
+            Assert.assertEquals(in.skip(9), 9);
+            Assert.assertEquals(in.read(new byte[4], 0, 0), 0);
+            Assert.assertEquals(in.readAllBytes(), Arrays.copyOfRange(expected, 10, expected.length));
+            Assert.assertEquals(in.read(), -1);
+            Assert.assertEquals(in.read(new byte[4], 0, 4), -1);
+            Assert.assertEquals(in.skip(5), 0);
+        }
+
+        // У каждого потока своя позиция в общем отображении
+        try (InputStream first = Resources.openRawStream(CONTROL_FILE_PATH);
+             InputStream second = Resources.openRawStream(CONTROL_FILE_PATH)) {
+            first.readAllBytes();
+            Assert.assertEquals(second.readAllBytes(), expected);
+        }
+    }
+
+    @Test
+    public void mappedResourcesGiveSameComparison() throws Exception {
+        String expected = Helpers.convertXmlFileToJson(CONTROL_FILE_PATH);
+
+        System.setProperty(Resources.MAPPING_THRESHOLD_PROPERTY, "1");
+        Assert.assertEquals(Helpers.convertXmlFileToJson(CONTROL_FILE_PATH), expected);
+    }
+
+    @Test
+    public void pathsWithSpacesAreResolved() throws Exception {
+        URL url = Resources.find(SPACED_FILE_PATH);
+        Path path = Resources.toPath(url);
+
+        Assert.assertNotNull(path, url.toString());
+        Assert.assertTrue(Files.isRegularFile(path), path.toString());
+        Assert.assertEquals(path.getFileName().toString(), "маленький документ.xml");
+
+        System.setProperty(Resources.MAPPING_THRESHOLD_PROPERTY, "1");
+        Assert.assertNotNull(Resources.map(SPACED_FILE_PATH));
+        Assert.assertTrue(Helpers.compareUnorderedXmlStreaming(SPACED_FILE_PATH, SPACED_FILE_PATH).isEmpty());
+        Assert.assertTrue(Helpers.convertXmlFileToJson(SPACED_FILE_PATH).contains("один"));
+    }
+
+    @Test
+    public void resourcesOutsideFileSystemHaveNoPath() throws Exception {
+        Assert.assertNull(Resources.toPath(new URL("jar:file:/tmp/tests.jar!/control.xml")));
+    }
+
+    @Test
+    public void channelReadsFileResourceAsIs() throws Exception {
+        byte[] expected = Files.readAllBytes(Resources.toPath(Resources.find(SPACED_FILE_PATH)));
+
+        try (ReadableByteChannel channel = Resources.openChannel(SPACED_FILE_PATH)) {
+            Assert.assertTrue(channel instanceof FileChannel, channel.getClass().getName());
+            Assert.assertEquals(Channels.newInputStream(channel).readAllBytes(), expected);
+        }
+    }
+}
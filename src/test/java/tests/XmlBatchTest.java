@@ -0,0 +1,239 @@
+package tests;
+
+import app.BatchXmlComparator;
+import app.DifferenceReport;
+import app.DifferenceSink;
+import app.DurationScheduler;
+import app.Helpers;
+import app.NodeMatchStrategy;
+import app.Resources;
+import app.XmlCompareOptions;
+import app.XmlPair;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Пакетное сравнение XML: каждая пара — отдельный тест, пары выполняются параллельно.
+ * <p>
+ * Пары задаются системными свойствами, например:
+ * {@code gradle test -Dxml.batch.control=data/control -Dxml.batch.test=data/test}
+ * или {@code -Dxml.batch.manifest=data/pairs.txt}. Если ничего не задано, {@code compareXmlPair} не
+ * выполняется, а источники пар и сам пакет проверяются на временном каталоге из ресурсов.
+ */
+public class XmlBatchTest {
+
+    private static final int SUMMARY_GROUPS = 20;
+
+    // Строки data provider'а выполняются параллельно на одном экземпляре
+    private final Queue<Path> temporary = new ConcurrentLinkedQueue<>();
+
+    @DataProvider(name = "xmlPairs", parallel = true)
+    public Object[][] xmlPairs() throws Exception {
+        // Только пары своего шарда (-Dshard=i/n), самые долгие по прошлым прогонам — первыми
+        List<XmlPair> pairs = DurationScheduler.rowsForShard(
+                XmlBatchTest.class, "compareXmlPair", BatchXmlComparator.pairsFromSystemProperties());
+        return BatchXmlComparator.asDataProvider(pairs);
+    }
+
+    @Test(dataProvider = "xmlPairs")
+    public void compareXmlPair(XmlPair pair) throws Exception {
+
+        // 1. Отличия пары — в свой отчет на диске (xml.report.format, xml.report.dir), как в XmlTest
+        DifferenceReport report;
+        try (DifferenceSink sink = DifferenceSink.fromConfig(reportName(pair))) {
+            report = Helpers.compareUnorderedXmlReport(pair.control(), pair.test(),
+                    XmlCompareOptions.defaults().withStrategy(NodeMatchStrategy.HASHED).withSink(sink));
+        }
+
+        // 2. Сводка по группам и ссылка на полный отчет. Одним блоком, чтобы выводы параллельных тестов не перемешивались
+        if (!report.isEmpty()) {
+            System.err.print("\n!!! " + pair + ": обнаружены отличия (Всего: " + report.size() + ") !!!\n"
+                    + report.summary(SUMMARY_GROUPS));
+
+            throw new AssertionError("Обнаружены отличия в XML " + pair + ": " + report.size() + ". Отчет: "
+                    + report.getSink().location().toAbsolutePath().toUri());
+        }
+    }
+
+    // Имя отчета без разделителей каталогов: пары из вложенных каталогов пишут отчеты рядом
+    private static String reportName(XmlPair pair) {
+        return "compareXmlPair-" + pair.name().replaceAll("[^\\w.-]", "_");
+    }
+
+    @Test
+    public void directoryPairsReportDifferencesAndErrorsPerPair() throws Exception {
+        Path root = temporary(Files.createTempDirectory("xml-batch"));
+        Path controlDir = root.resolve("control");
+        Path testDir = root.resolve("test");
+        copyFixture("control.xml", controlDir.resolve("nested/equal.xml"));
+        copyFixture("control.xml", testDir.resolve("nested/equal.xml"));
+        copyFixture("control.xml", controlDir.resolve("different.xml"));
+        copyFixture("test.xml", testDir.resolve("different.xml"));
+        copyFixture("control.xml", controlDir.resolve("broken.xml"));
+        Files.createDirectories(testDir);
+        Files.writeString(testDir.resolve("broken.xml"), "<root><unclosed></root>", StandardCharsets.UTF_8);
+        copyFixture("control.xml", controlDir.resolve("only-control.xml"));
+        Files.writeString(testDir.resolve("ignored.txt"), "не XML", StandardCharsets.UTF_8);
+
+        List<XmlPair> pairs = BatchXmlComparator.pairsFromDirectories(controlDir, testDir);
+        Assert.assertEquals(pairs.stream().map(XmlPair::name).collect(Collectors.toList()),
+                List.of("broken.xml", "different.xml", "nested/equal.xml", "only-control.xml"));
+
+        List<BatchXmlComparator.PairResult> seen = new ArrayList<>();
+        BatchXmlComparator.BatchReport report = new BatchXmlComparator().compare(pairs, seen::add);
+
+        Assert.assertEquals(seen.size(), 4);
+        Assert.assertEquals(report.getTotal(), 4);
+        Assert.assertEquals(report.getPassed(), 1, report.summary());
+        Map<String, BatchXmlComparator.PairResult> failures = report.getFailures().stream()
+                .collect(Collectors.toMap(r -> r.pair().name(), Function.identity()));
+        Assert.assertEquals(failures.keySet(), Set.of("broken.xml", "different.xml", "only-control.xml"));
+        Assert.assertNull(failures.get("different.xml").error());
+        Assert.assertFalse(failures.get("different.xml").differences().isEmpty());
+        Assert.assertNotNull(failures.get("broken.xml").error(), report.summary());
+        Assert.assertNotNull(failures.get("only-control.xml").error(), report.summary());
+        Assert.assertTrue(failures.get("only-control.xml").error() instanceof IOException, report.summary());
+    }
+
+    @Test
+    public void compressedFilesArePairedByBaseName() throws Exception {
+        Path root = temporary(Files.createTempDirectory("xml-batch-compressed"));
+        Path controlDir = root.resolve("control");
+        Path testDir = root.resolve("test");
+        byte[] control = fixture("control.xml");
+        byte[] test = fixture("test.xml");
+        write(controlDir.resolve("equal.xml.gz"), gzip(control));
+        write(testDir.resolve("equal.xml"), control);
+        write(controlDir.resolve("nested/different.xml.zst"), zstd(control));
+        write(testDir.resolve("nested/different.xml.GZ"), gzip(test));
+
+        List<XmlPair> pairs = BatchXmlComparator.pairsFromDirectories(controlDir, testDir);
+        Assert.assertEquals(pairs.stream().map(XmlPair::name).collect(Collectors.toList()),
+                List.of("equal.xml", "nested/different.xml"));
+        Assert.assertEquals(pairs.get(0).control(), controlDir.resolve("equal.xml.gz"));
+        Assert.assertEquals(pairs.get(0).test(), testDir.resolve("equal.xml"));
+
+        BatchXmlComparator.BatchReport report = new BatchXmlComparator().compare(pairs, result -> {
+        });
+        Assert.assertEquals(report.getPassed(), 1, report.summary());
+        Assert.assertEquals(report.getFailures().size(), 1, report.summary());
+        BatchXmlComparator.PairResult different = report.getFailures().get(0);
+        Assert.assertNull(different.error(), report.summary());
+        Assert.assertEquals(new HashSet<>(different.differences()),
+                new HashSet<>(Helpers.compareUnorderedXml("control.xml", "test.xml")));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void plainAndCompressedCopiesOfOneFileAreRejected() throws Exception {
+        Path root = temporary(Files.createTempDirectory("xml-batch-ambiguous"));
+        byte[] control = fixture("control.xml");
+        write(root.resolve("control/a.xml"), control);
+        write(root.resolve("control/a.xml.gz"), gzip(control));
+        write(root.resolve("test/a.xml"), control);
+
+        BatchXmlComparator.pairsFromDirectories(root.resolve("control"), root.resolve("test"));
+    }
+
+    @Test
+    public void manifestPairsResolveRelativeToManifest() throws Exception {
+        Path root = temporary(Files.createTempDirectory("xml-batch-manifest"));
+        copyFixture("control.xml", root.resolve("a/control.xml"));
+        copyFixture("test.xml", root.resolve("b/test.xml"));
+        Path manifest = root.resolve("pairs.txt");
+        Files.writeString(manifest, String.join("\n",
+                "# эталон;проверяемый",
+                "",
+                "a/control.xml ; a/control.xml",
+                "a/control.xml;b/test.xml",
+                "a/control.xml;b/missing.xml"), StandardCharsets.UTF_8);
+
+        List<XmlPair> pairs = BatchXmlComparator.pairsFromManifest(manifest);
+        Assert.assertEquals(pairs.size(), 3);
+        Assert.assertEquals(pairs.get(1).test(), root.resolve("b/test.xml").toAbsolutePath());
+
+        BatchXmlComparator.BatchReport report = new BatchXmlComparator(2, pair ->
+                Helpers.compareUnorderedXml(pair.control(), pair.test(), NodeMatchStrategy.HASHED))
+                .compare(pairs, result -> {
+                });
+        Assert.assertEquals(report.getPassed(), 1, report.summary());
+        Assert.assertEquals(report.getFailures().size(), 2, report.summary());
+        Assert.assertTrue(report.summary().contains("ОШИБКА"), report.summary());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void malformedManifestLineIsRejected() throws Exception {
+        Path manifest = temporary(Files.createTempFile("pairs", ".txt"));
+        Files.writeString(manifest, "a.xml;b.xml;c.xml", StandardCharsets.UTF_8);
+
+        BatchXmlComparator.pairsFromManifest(manifest);
+    }
+
+    // Временный файл или каталог теста: удаляется после метода
+    private Path temporary(Path path) {
+        temporary.add(path);
+        return path;
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteTemporary() throws IOException {
+        for (Path root = temporary.poll(); root != null; root = temporary.poll()) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static byte[] fixture(String resource) throws IOException {
+        return Files.readAllBytes(Resources.toPath(Resources.find(resource)));
+    }
+
+    private static void write(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.write(target, data);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zstd(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void copyFixture(String resource, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.copy(Resources.toPath(Resources.find(resource)), target);
+    }
+}
@@ -0,0 +1,122 @@
+package tests;
+
+import app.DifferenceReport;
+import app.Helpers;
+import app.StreamingXmlComparator;
+import app.XmlCompareOptions;
+import app.XmlRules;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Правила сравнения {@link XmlRules}: одинаковый результат в DOM и потоковом сравнении и ошибки разбора.
+ */
+public class XmlRulesTest {
+
+    // Оставшиеся отличия — в тексте: отличие атрибута DOM показывает парой "отсутствует/лишний",
+    // а потоковое сравнение — самим атрибутом
+    @DataProvider
+    public Object[][] ruleCases() {
+        return new Object[][]{
+                {"регистр и пробелы атрибута", List.of("normalize /r/a/@name case whitespace"),
+                        "<r><a name=\"Иван  Петров\"/></r>", "<r><a name=\" иван петров \"/></r>", 0},
+                {"регистр текста", List.of("normalize /r/a case"),
+                        "<r><a>ABC</a></r>", "<r><a>abc</a></r>", 0},
+                {"нормализация только на своем пути", List.of("normalize /r/a case"),
+                        "<r><b>ABC</b></r>", "<r><b>abc</b></r>", 1},
+                {"дата в другом формате", List.of("date /r/@created iso | dd.MM.yyyy HH:mm"),
+                        "<r created=\"2024-03-01T10:15:00\"/>", "<r created=\"01.03.2024 10:15\"/>", 0},
+                {"другая дата", List.of("date /r/created iso | dd.MM.yyyy HH:mm"),
+                        "<r><created>2024-03-01T10:15:00</created></r>", "<r><created>01.03.2024 10:16</created></r>", 1},
+                {"игнорируемый text()", List.of("ignore /r/comment/text()"),
+                        "<r><comment>a</comment><note>x</note></r>", "<r><note>x</note><comment>b</comment></r>", 0},
+                {"text() не скрывает соседей", List.of("ignore /r/comment/text()"),
+                        "<r><comment>a</comment><note>x</note></r>", "<r><comment>b</comment><note>y</note></r>", 1},
+                {"игнорируемое поддерево", List.of("ignore /r/meta"),
+                        "<r><meta><id>1</id></meta><a>1</a></r>", "<r><a>1</a><meta><id>2</id><x/></meta></r>", 0},
+                {"игнорируемое поддерево отсутствует", List.of("ignore /r/meta"),
+                        "<r><meta><id>1</id></meta><a>1</a></r>", "<r><a>1</a></r>", 0},
+                {"шаг *", List.of("ignore /r/*/@id"),
+                        "<r><a id=\"1\">x</a><b id=\"2\"/></r>", "<r><b id=\"4\"/><a id=\"3\">x</a></r>", 0},
+                {"шаг * с текстом", List.of("normalize /r/* case"),
+                        "<r><a>X</a><b>Y</b></r>", "<r><b>y</b><a>x</a></r>", 0},
+                {"шаг * не уходит глубже", List.of("normalize /r/* case"),
+                        "<r><a><b>X</b></a></r>", "<r><a><b>x</b></a></r>", 1},
+                {"погрешность на любой глубине", List.of("tolerance //price 0.01"),
+                        "<r><i><price>1.000</price></i></r>", "<r><i><price>1.005</price></i></r>", 0},
+                {"погрешность превышена", List.of("tolerance //price 0.01"),
+                        "<r><i><price>1.000</price></i></r>", "<r><i><price>1.020</price></i></r>", 1},
+                {"два правила на одном пути", List.of("normalize /r/a case", "normalize /r/a whitespace"),
+                        "<r><a>Hello   World</a></r>", "<r><a> hello world </a></r>", 0},
+                {"правила через // и полный путь", List.of("normalize //@name case", "normalize /r/a/@name whitespace"),
+                        "<r><a name=\"A  B\"/></r>", "<r><a name=\"a b\"/></r>", 0},
+                {"правила через // и полный путь для текста", List.of("normalize //a case", "normalize /r/a whitespace"),
+                        "<r><a>A  B</a></r>", "<r><a>a b</a></r>", 0},
+                {"одно правило из двух не подходит", List.of("normalize //a case"),
+                        "<r><a>A  B</a></r>", "<r><a>a b</a></r>", 1},
+        };
+    }
+
+    @Test(dataProvider = "ruleCases")
+    public void rulesGiveSameResultInTreeAndStreamingCompare(String name, List<String> lines, String control, String test,
+                                                             int expected) throws Exception {
+        XmlCompareOptions options = XmlCompareOptions.defaults().withRules(XmlRules.parse(lines, name));
+        Path dir = Files.createTempDirectory("xml-rules");
+        try {
+            Path controlFile = Files.writeString(dir.resolve("control.xml"), control);
+            Path testFile = Files.writeString(dir.resolve("test.xml"), test);
+            DifferenceReport tree = Helpers.compareUnorderedXmlReport(controlFile, testFile, options);
+            DifferenceReport streaming = new StreamingXmlComparator(options.rules()).compare(
+                    () -> Files.newInputStream(controlFile), () -> Files.newInputStream(testFile), options.newReport());
+
+            Assert.assertEquals(tree.size(), expected, name + ": " + tree.format());
+            // Значения не сравниваются: потоковое сравнение показывает их уже нормализованными
+            Assert.assertEquals(locations(streaming), locations(tree), name);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static List<String> locations(DifferenceReport report) {
+        return report.getDifferences().stream()
+                .map(d -> d.kind() + " " + d.controlPath() + " " + d.testPath())
+                .toList();
+    }
+
+    @DataProvider
+    public Object[][] malformedRules() {
+        return new Object[][]{
+                {"ignore", "Нужно действие и путь"},
+                {"remove /r/a", "Неизвестное действие 'remove'"},
+                {"ignore r/a", "Путь должен начинаться с '/'"},
+                {"ignore /r/a[2]", "Недопустимый шаг 'a[2]'"},
+                {"ignore /r/a[@id='1']", "Недопустимый шаг"},
+                {"ignore /r/@id/b", "может быть только последним"},
+                {"normalize /r/a upper", "Неизвестная нормализация 'upper'"},
+                {"tolerance /r/a abc", "Нужна погрешность числом"},
+                {"tolerance /r/a -0.5", "Погрешность должна быть неотрицательной"},
+                {"tolerance /r/a NaN", "Погрешность должна быть неотрицательной"},
+                {"date /r/@created |", "Нужен хотя бы один формат даты"},
+        };
+    }
+
+    @Test(dataProvider = "malformedRules")
+    public void malformedRuleIsRejectedWithLineNumber(String rule, String message) {
+        IllegalArgumentException e = Assert.expectThrows(IllegalArgumentException.class,
+                () -> XmlRules.parse(List.of("# комментарий", "", rule), "rules.txt"));
+
+        Assert.assertTrue(e.getMessage().startsWith("rules.txt:3: "), e.getMessage());
+        Assert.assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+}
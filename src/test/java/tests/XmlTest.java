@@ -1,10 +1,41 @@
 package tests;
 
 
+import app.ControlIndex;
+import app.DifferenceReport;
+import app.DifferenceSink;
 import app.Helpers;
+import app.Mappers;
+import app.Metrics;
+import app.NodeMatchStrategy;
+import app.Resources;
+import app.StreamingXmlComparator;
+import app.StreamingXmlToJsonConverter;
+import app.XmlCompareOptions;
+import app.XmlDifference;
+import app.XmlRules;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 public class XmlTest {
 
@@ -12,36 +43,328 @@ public class XmlTest {
     private static final String CONTROL_FILE_PATH = "control.xml";
     private static final String TEST_FILE_PATH = "test.xml";
 
+    // Сколько самых частых групп отличий выводить в лог; все отличия — в файле отчета
+    private static final int SUMMARY_GROUPS = 20;
+
     @Test
     public void compareAndFailOnDifference() throws Exception {
 
-        // 1. Получаем список всех найденных отличий
-        List<String> differences = Helpers.compareUnorderedXml(
-                CONTROL_FILE_PATH,
-                TEST_FILE_PATH
-        );
+        // 1. Сравниваем, записывая отличия в отчет на диске по мере нахождения (xml.report.format, xml.report.dir)
+        DifferenceReport report;
+        try (DifferenceSink sink = DifferenceSink.fromConfig("compareAndFailOnDifference")) {
+            report = Helpers.compareUnorderedXmlReport(
+                    CONTROL_FILE_PATH,
+                    TEST_FILE_PATH,
+                    XmlCompareOptions.defaults().withSink(sink)
+            );
+        }
 
         // 2. Проверяем, есть ли отличия
-        if (!differences.isEmpty()) {
+        if (!report.isEmpty()) {
 
-            // 3. Вывод всех отличий перед падением
+            // 3. Вывод сводки по группам и ссылки на полный отчет
             System.err.println("\n=======================================================");
-            System.err.println("!!! СБОЙ ТЕСТА: Обнаружены отличия в XML-файлах (Всего: " + differences.size() + ") !!!");
+            System.err.println("!!! СБОЙ ТЕСТА: Обнаружены отличия в XML-файлах (Всего: " + report.size() + ") !!!");
             System.err.println("=======================================================");
-
-            for (String diff : differences) {
-                // Вывод каждого отличия для наглядности
-                System.err.println("- " + diff);
-            }
-
+            System.err.print(report.summary(SUMMARY_GROUPS));
             System.err.println("=======================================================\n");
 
             // 4. Тест падает с осмысленным сообщением
-            throw new AssertionError("Обнаружены отличия в XML: " + differences.size() + ". См. вывод выше.");
+            throw new AssertionError("Обнаружены отличия в XML: " + report.size() + ". Отчет: "
+                    + report.getSink().location().toAbsolutePath().toUri());
         } else {
             System.out.println("✅ XML-файлы идентичны (игнорируя порядок). Тест пройден.");
         }
     }
 
+    @Test
+    public void sinkReportMatchesInMemoryReport() throws Exception {
+        DifferenceReport expected = Helpers.compareUnorderedXmlReport(
+                CONTROL_FILE_PATH, TEST_FILE_PATH, XmlCompareOptions.defaults());
+
+        Path dir = Files.createTempDirectory("xml-diff");
+        DifferenceReport streamed;
+        try (DifferenceSink sink = DifferenceSink.open(dir, "report", "ndjson")) {
+            streamed = Helpers.compareUnorderedXmlReport(
+                    CONTROL_FILE_PATH, TEST_FILE_PATH, XmlCompareOptions.defaults().withSink(sink));
+        }
+
+        Assert.assertTrue(streamed.getDifferences().isEmpty());
+        Assert.assertEquals(streamed.size(), expected.size());
+        Assert.assertEquals(streamed.groups(), expected.groups());
+        Assert.assertEquals(Files.readAllLines(dir.resolve("report.ndjson")).size(), expected.size());
+    }
+
+    @Test
+    public void hashedMatcherReportsSameDifferences() throws Exception {
+        List<String> expected = Helpers.compareUnorderedXml(CONTROL_FILE_PATH, TEST_FILE_PATH);
+        List<String> actual = Helpers.compareUnorderedXml(CONTROL_FILE_PATH, TEST_FILE_PATH, NodeMatchStrategy.HASHED);
+
+        Assert.assertEquals(new HashSet<>(actual), new HashSet<>(expected));
+    }
+
+    @Test
+    public void comparisonRecordsParseAndDiffPhases() throws Exception {
+        // Пара с перемешанными соседями и одним отличием значения
+        StringBuilder control = new StringBuilder("<root>");
+        StringBuilder test = new StringBuilder("<root>");
+        for (int i = 0; i < 200; i++) {
+            control.append("<item id=\"").append(i).append("\">").append(i).append("</item>");
+            test.append("<item id=\"").append(199 - i).append("\">").append(i == 0 ? -1 : 199 - i).append("</item>");
+        }
+        Path controlFile = Files.createTempFile("control", ".xml");
+        Path testFile = Files.createTempFile("test", ".xml");
+        Files.writeString(controlFile, control.append("</root>"));
+        Files.writeString(testFile, test.append("</root>"));
+
+        Map<String, Metrics.PhaseStats> before = phaseStats();
+        DifferenceReport report = Helpers.compareUnorderedXmlReport(controlFile, testFile, XmlCompareOptions.defaults());
+        Map<String, Metrics.PhaseStats> after = phaseStats();
+
+        Assert.assertEquals(report.size(), 1, report.summary());
+        Assert.assertTrue(after.keySet().containsAll(List.of("xml.parse", "xml.diff")), after.keySet().toString());
+        Assert.assertEquals(after.get("xml.parse").count() - count(before, "xml.parse"), 1);
+        Assert.assertEquals(after.get("xml.diff").count() - count(before, "xml.diff"), 1);
+    }
+
+    private static Map<String, Metrics.PhaseStats> phaseStats() {
+        return Metrics.snapshot().stream().collect(Collectors.toMap(Metrics.PhaseStats::phase, Function.identity()));
+    }
+
+    private static long count(Map<String, Metrics.PhaseStats> stats, String phase) {
+        return stats.containsKey(phase) ? stats.get(phase).count() : 0;
+    }
+
+    @Test
+    public void reportStopsAtDifferenceLimit() throws Exception {
+        DifferenceReport report = Helpers.compareUnorderedXmlReport(
+                CONTROL_FILE_PATH, TEST_FILE_PATH, XmlCompareOptions.defaults().withMaxDifferences(1));
+
+        Assert.assertEquals(report.size(), 1, report.summary());
+        Assert.assertTrue(report.isLimitReached());
+        Assert.assertEquals(report.groups().get(0).count(), 1);
+        Assert.assertFalse(report.groups().get(0).pattern().contains("["), report.summary());
+        Assert.assertEquals(report.format().size(), 1, "Предупреждение о лимите не должно быть строкой отличий");
+    }
+
+    @Test
+    public void reportWithExactlyLimitDifferencesIsComplete() throws Exception {
+        int total = Helpers.compareUnorderedXmlReport(CONTROL_FILE_PATH, TEST_FILE_PATH, XmlCompareOptions.defaults()).size();
+
+        DifferenceReport report = Helpers.compareUnorderedXmlReport(
+                CONTROL_FILE_PATH, TEST_FILE_PATH, XmlCompareOptions.defaults().withMaxDifferences(total));
+
+        Assert.assertEquals(report.size(), total, report.summary());
+        Assert.assertFalse(report.isLimitReached(), report.summary());
+        Assert.assertFalse(report.summary().contains("Сравнение остановлено"), report.summary());
+    }
+
+    @Test
+    public void differencesKeepControlAndTestPaths() throws Exception {
+        XmlDifference attribute = Helpers.compareUnorderedXmlStreamingReport(CONTROL_FILE_PATH, TEST_FILE_PATH,
+                XmlCompareOptions.defaults()).getDifferences().get(0);
+        Assert.assertEquals(attribute.kind(), XmlDifference.Kind.ATTRIBUTE, attribute.toString());
+        Assert.assertNotNull(attribute.controlPath(), attribute.toString());
+        Assert.assertTrue(attribute.controlPath().endsWith("/@" + attribute.name()), attribute.controlPath());
+
+        Path control = Files.createTempFile("control", ".xml");
+        Path test = Files.createTempFile("test", ".xml");
+        Files.writeString(control, "<r><a>1</a><b>2</b></r>");
+        Files.writeString(test, "<r><b>2</b><a>3</a></r>");
+        List<XmlDifference> text = Helpers.compareUnorderedXmlReport(control, test, XmlCompareOptions.defaults())
+                .getDifferences();
+        Assert.assertEquals(text.size(), 1, text.toString());
+        Assert.assertEquals(text.get(0).controlPath(), "/r[1]/a[1]/text()[1]");
+        Assert.assertEquals(text.get(0).testPath(), "/r[1]/a[1]/text()[1]");
+    }
+
+    @Test
+    public void rulesSuppressIgnoredAndTolerantDifferences() throws Exception {
+        XmlRules ignore = XmlRules.parse(List.of("ignore //@sell"), "ignore");
+        XmlRules tolerance = XmlRules.parse(List.of("tolerance /project/component/option//option/@sell 1"), "tolerance");
+
+        for (XmlRules rules : List.of(ignore, tolerance)) {
+            XmlCompareOptions options = XmlCompareOptions.defaults().withRules(rules);
+            DifferenceReport tree = Helpers.compareUnorderedXmlReport(CONTROL_FILE_PATH, TEST_FILE_PATH, options);
+            DifferenceReport streaming = Helpers.compareUnorderedXmlStreamingReport(CONTROL_FILE_PATH, TEST_FILE_PATH, options);
+
+            Assert.assertTrue(tree.isEmpty(), tree.summary());
+            Assert.assertTrue(streaming.isEmpty(), streaming.summary());
+        }
+    }
+
+    @Test
+    public void compressedFilesAreComparedAsPlain() throws Exception {
+        List<String> expected = Helpers.compareUnorderedXmlStreaming(CONTROL_FILE_PATH, TEST_FILE_PATH);
+
+        // Эталон — gzip из двух членов, как у pigz; проверяемый файл — без сжатия
+        byte[] control = Files.readAllBytes(Resources.toPath(Resources.find(CONTROL_FILE_PATH)));
+        Path gzip = Files.createTempFile("control", ".xml.gz");
+        try (OutputStream out = Files.newOutputStream(gzip)) {
+            out.write(gzip(Arrays.copyOfRange(control, 0, control.length / 2)));
+            out.write(gzip(Arrays.copyOfRange(control, control.length / 2, control.length)));
+        }
+        Path test = Resources.toPath(Resources.find(TEST_FILE_PATH));
+
+        Assert.assertEquals(Helpers.compareUnorderedXmlStreaming(gzip, test), expected);
+        Assert.assertEquals(new HashSet<>(Helpers.compareUnorderedXml(gzip, test, NodeMatchStrategy.BY_NAME_AND_ALL_ATTRIBUTES)),
+                new HashSet<>(Helpers.compareUnorderedXml(CONTROL_FILE_PATH, TEST_FILE_PATH)));
+    }
+
+    @Test
+    public void partitionedCompareReportsSameDifferences() throws Exception {
+        List<String> expected = Helpers.compareUnorderedXml(CONTROL_FILE_PATH, TEST_FILE_PATH);
+        List<String> actual = Helpers.compareUnorderedXmlParallel(CONTROL_FILE_PATH, TEST_FILE_PATH, 1, "name");
+
+        Assert.assertEquals(new HashSet<>(actual), new HashSet<>(expected));
+    }
+
+    @Test
+    public void streamingConversionMatchesTreeConversion() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Helpers.convertXmlFileToJson(CONTROL_FILE_PATH, out);
+
+        Assert.assertEquals(out.toString(StandardCharsets.UTF_8), Helpers.convertXmlFileToJson(CONTROL_FILE_PATH));
+    }
+
+    @DataProvider
+    public Object[][] conversionCases() {
+        return new Object[][]{
+                {"повторы вразброс", "<r><a>1</a><b>2</b><a>3</a><c/><b>4</b></r>"},
+                {"повторы подряд и вразброс", "<r><a>1</a><a>2</a><b/><a>3</a><c><d>x</d><d>y</d></c></r>"},
+                {"смешанный текст", "<r>начало<b>x</b>середина<b>y</b>конец</r>"},
+                {"пустые элементы", "<r><a/><b></b><c>  </c><d><e/></d></r>"},
+                {"атрибуты и текст", "<r id=\"1\"><a x=\"1\" y=\"2\">текст</a><b z=\"3\"/><a x=\"4\">ещё</a></r>"},
+        };
+    }
+
+    @Test(dataProvider = "conversionCases")
+    public void streamingConversionMatchesTreeConversionOf(String name, String xml) throws Exception {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingXmlToJsonConverter(true).convert(() -> new ByteArrayInputStream(bytes), out);
+
+        String expected = Mappers.PRETTY_JSON_WRITER.writeValueAsString(
+                Mappers.XML_TREE_READER.readTree(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals(out.toString(StandardCharsets.UTF_8), expected, name);
+    }
+
+    @Test
+    public void streamingCompareFindsAttributeDifference() throws Exception {
+        List<String> differences = Helpers.compareUnorderedXmlStreaming(CONTROL_FILE_PATH, TEST_FILE_PATH);
+
+        Assert.assertEquals(differences.size(), 1, "Отличия: " + differences);
+        Assert.assertTrue(differences.get(0).contains("/@sell"), differences.get(0));
+    }
+
+    @Test
+    public void indexedCompareMatchesStreamingCompare() throws Exception {
+        List<String> expected = Helpers.compareUnorderedXmlStreaming(CONTROL_FILE_PATH, TEST_FILE_PATH);
+        // Свежий каталог: индекс из build/xml-index прошлых прогонов не должен подменить построение
+        Path dir = Files.createTempDirectory("xml-index");
+        System.setProperty(ControlIndex.DIR_PROPERTY, dir.toString());
+        try {
+            // Первый вызов строит индекс эталона
+            Assert.assertEquals(Helpers.compareUnorderedXmlIndexed(CONTROL_FILE_PATH, TEST_FILE_PATH), expected);
+            List<Path> built = indexFiles(dir);
+            Assert.assertEquals(built.size(), 1, built.toString());
+            // Сдвигаем время в прошлое: перестроенный файл получил бы новое время независимо от точности ФС
+            FileTime stamp = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+            Files.setLastModifiedTime(built.get(0), stamp);
+
+            // Второй читает готовый
+            Assert.assertEquals(Helpers.compareUnorderedXmlIndexed(CONTROL_FILE_PATH, TEST_FILE_PATH), expected);
+            Assert.assertEquals(indexFiles(dir), built);
+            Assert.assertEquals(Files.getLastModifiedTime(built.get(0)), stamp);
+        } finally {
+            System.clearProperty(ControlIndex.DIR_PROPERTY);
+            deleteRecursively(dir);
+        }
+    }
+
+    // Все файлы каталога индекса: временные .tmp после построения остаться не должны
+    private static List<Path> indexFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> all = files.sorted().toList();
+            Assert.assertTrue(all.stream().allMatch(file -> file.toString().endsWith(".xidx")), all.toString());
+            return all;
+        }
+    }
+
+    @Test
+    public void streamingCompareOfEqualFilesIsEmpty() throws Exception {
+        List<String> differences = Helpers.compareUnorderedXmlStreaming(CONTROL_FILE_PATH, CONTROL_FILE_PATH);
+
+        Assert.assertTrue(differences.isEmpty(), "Отличия: " + differences);
+    }
+
+    @DataProvider
+    public Object[][] compareCases() {
+        return new Object[][]{
+                {"перестановка", "<r><a>1</a><b x=\"1\"/></r>", "<r><b x=\"1\"/><a>1</a></r>", 0},
+                {"отсутствующий элемент", "<r><a>1</a><b>2</b></r>", "<r><a>1</a></r>", 1},
+                {"лишний элемент", "<r><a>1</a></r>", "<r><a>1</a><c/></r>", 1},
+                {"изменен текст", "<r><a>1</a><b>2</b></r>", "<r><b>2</b><a>3</a></r>", 1},
+                {"повторы вразброс с одним изменением",
+                        "<r><i id=\"1\">x</i><i id=\"2\">y</i><i id=\"1\">x</i><i id=\"3\">z</i></r>",
+                        "<r><i id=\"3\">z</i><i id=\"1\">x</i><i id=\"2\">Y</i><i id=\"1\">x</i></r>", 1},
+                {"границы текстовых узлов", "<r>a<b/>c</r>", "<r>ac<b/></r>", 2},
+                {"пробелы вокруг текстовых узлов", "<r>a<b/>c</r>", "<r> a <b/>\n c </r>", 0},
+        };
+    }
+
+    @Test(dataProvider = "compareCases")
+    public void streamingCompareMatchesTreeCompareOf(String name, String control, String test, int expected) throws Exception {
+        Path dir = Files.createTempDirectory("xml-compare");
+        try {
+            Path controlFile = Files.writeString(dir.resolve("control.xml"), control);
+            Path testFile = Files.writeString(dir.resolve("test.xml"), test);
+            List<String> tree = Helpers.compareUnorderedXml(controlFile, testFile, NodeMatchStrategy.BY_NAME_AND_ALL_ATTRIBUTES);
+            List<String> streaming = Helpers.compareUnorderedXmlStreaming(controlFile, testFile);
+
+            Assert.assertEquals(tree.size(), expected, name + ": " + tree);
+            Assert.assertEquals(new HashSet<>(streaming), new HashSet<>(tree), name);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void streamingCompareOfLargeFlatRootFindsSingleChange() throws Exception {
+        // Минимальный фильтр (2^10 бит, около 40 хэшей) растет много раз, пока читаются 5000 элементов
+        int items = 5000;
+        StringBuilder control = new StringBuilder("<r>");
+        StringBuilder test = new StringBuilder("<r>");
+        for (int i = 0; i < items; i++) {
+            control.append("<i id=\"").append(i).append("\">").append(i).append("</i>");
+            int j = items - 1 - i;
+            test.append("<i id=\"").append(j).append("\">").append(j == 1234 ? "x" : String.valueOf(j)).append("</i>");
+        }
+        byte[] controlBytes = control.append("</r>").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] testBytes = test.append("</r>").toString().getBytes(StandardCharsets.UTF_8);
+
+        List<XmlDifference> differences = new StreamingXmlComparator(10).compare(
+                () -> new ByteArrayInputStream(controlBytes), () -> new ByteArrayInputStream(testBytes), 100).getDifferences();
+
+        Assert.assertEquals(differences.size(), 1, differences.toString());
+        Assert.assertEquals(differences.get(0), XmlDifference.textValue(
+                "/r[1]/i[1235]/text()[1]", "/r[1]/i[3766]/text()[1]", "1234", "x"));
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+// Сессия заглушки: cookie "session" + имя пользователя в localStorage
+var standIn = {
+    login: function (form) {
+        var login = form.login.value;
+        document.cookie = 'session=' + encodeURIComponent(login) + '; path=/';
+        localStorage.setItem('user', login);
+        location.href = 'main.html';
+        return false;
+    },
+    logout: function () {
+        document.cookie = 'session=; path=/; max-age=0';
+        localStorage.removeItem('user');
+        location.href = 'index.html';
+        return false;
+    },
+    requireSession: function () {
+        if (document.cookie.indexOf('session=') < 0) {
+            location.href = 'index.html';
+            return;
+        }
+        document.getElementById('user').textContent = localStorage.getItem('user');
+    }
+};